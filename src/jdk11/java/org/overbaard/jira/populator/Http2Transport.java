@@ -0,0 +1,185 @@
+package org.overbaard.jira.populator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLContext;
+import javax.ws.rs.ProcessingException;
+
+import org.jboss.resteasy.client.jaxrs.ClientHttpEngine;
+import org.jboss.resteasy.client.jaxrs.internal.ClientInvocation;
+import org.jboss.resteasy.client.jaxrs.internal.ClientResponse;
+import org.jboss.resteasy.util.CaseInsensitiveMap;
+
+/**
+ * HTTP/2 over the java.net.http client. Concurrent requests to Jira are multiplexed as streams over one connection,
+ * rather than each needing a connection of its own, so we can have many more requests in flight than a load balancer
+ * capping connections per client would otherwise allow. The protocol is negotiated with ALPN for https, and with an
+ * h2c upgrade for plain http. If the server does not speak HTTP/2 the client falls back to HTTP/1.1.
+ * <p>
+ * The client is non-blocking underneath, so {@link #sendAsync} simply hands the request to it.
+ * <p>
+ * This is only compiled when building on Java 11 or later, and is loaded by {@link HttpTransport#load}.
+ *
+ * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
+ */
+class Http2Transport implements HttpTransport {
+
+    // The client sets these itself, and refuses to let us set them
+    private static final Set<String> RESTRICTED_HEADERS =
+            new HashSet<>(Arrays.asList("connection", "content-length", "expect", "host", "upgrade"));
+
+    private final ExecutorService executor;
+    private final HttpClient client;
+    private final int maxStreams;
+    private final Engine engine = new Engine();
+
+    Http2Transport(int maxStreams) {
+        this.maxStreams = maxStreams;
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "http2-client");
+            thread.setDaemon(true);
+            return thread;
+        });
+        client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .executor(executor)
+                .build();
+    }
+
+    @Override
+    public ClientHttpEngine getEngine() {
+        return engine;
+    }
+
+    @Override
+    public CompletableFuture<BufferedResponse> sendAsync(String method, URI uri, Map<String, String> headers, byte[] body) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri).method(method,
+                body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofByteArray(body));
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            builder.header(header.getKey(), header.getValue());
+        }
+        return client.sendAsync(builder.build(), HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(response -> new BufferedResponse(response.statusCode(), response.body(),
+                        response.headers().firstValue("Retry-After").orElse(null)));
+    }
+
+    /**
+     * The server decides how many streams it lets us have open at once, and tells the client. This is what we
+     * expect it to allow; Jira's Tomcat defaults to 100.
+     */
+    @Override
+    public int getMaxConcurrentRequests() {
+        return maxStreams;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private class Engine implements ClientHttpEngine {
+        @Override
+        public SSLContext getSslContext() {
+            return client.sslContext();
+        }
+
+        @Override
+        public HostnameVerifier getHostnameVerifier() {
+            return null;
+        }
+
+        @Override
+        public ClientResponse invoke(ClientInvocation request) {
+            final HttpResponse<InputStream> response;
+            try {
+                // The entity writer may add headers, so write the body before copying them
+                HttpRequest.BodyPublisher body = HttpRequest.BodyPublishers.noBody();
+                if (request.getEntity() != null) {
+                    BodyBuffer buffer = new BodyBuffer();
+                    request.getDelegatingOutputStream().setDelegate(buffer);
+                    request.writeRequestBody(request.getEntityStream());
+                    body = buffer.toPublisher();
+                }
+                HttpRequest.Builder builder = HttpRequest.newBuilder(request.getUri())
+                        .method(request.getMethod(), body);
+                for (Map.Entry<String, List<String>> header : request.getHeaders().asMap().entrySet()) {
+                    if (!RESTRICTED_HEADERS.contains(header.getKey().toLowerCase(Locale.ENGLISH))) {
+                        for (String value : header.getValue()) {
+                            builder.header(header.getKey(), value);
+                        }
+                    }
+                }
+                response = client.send(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+            } catch (IOException e) {
+                throw new ProcessingException("Unable to invoke request", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ProcessingException("Interrupted invoking request", e);
+            }
+
+            final InputStream in = response.body();
+            ClientResponse clientResponse = new ClientResponse(request.getClientConfiguration()) {
+                private InputStream stream = in;
+
+                @Override
+                protected InputStream getInputStream() {
+                    return stream;
+                }
+
+                @Override
+                protected void setInputStream(InputStream is) {
+                    stream = is;
+                }
+
+                @Override
+                public void releaseConnection() throws IOException {
+                    // Closing it once it has been read to the end frees up the stream, or the HTTP/1.1 connection
+                    in.close();
+                }
+            };
+            clientResponse.setStatus(response.statusCode());
+            CaseInsensitiveMap<String> headers = new CaseInsensitiveMap<>();
+            for (Map.Entry<String, List<String>> header : response.headers().map().entrySet()) {
+                if (!header.getKey().startsWith(":")) {
+                    headers.addAll(header.getKey(), header.getValue());
+                }
+            }
+            clientResponse.setHeaders(headers);
+            return clientResponse;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Hands its contents to the client as they are, rather than copying them into a new array.
+     */
+    private static class BodyBuffer extends ByteArrayOutputStream {
+        BodyBuffer() {
+            super(512);
+        }
+
+        HttpRequest.BodyPublisher toPublisher() {
+            return HttpRequest.BodyPublishers.ofByteArray(buf, 0, count);
+        }
+    }
+}
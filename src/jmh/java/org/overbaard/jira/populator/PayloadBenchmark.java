@@ -0,0 +1,222 @@
+package org.overbaard.jira.populator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.dmr.ModelNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.overbaard.jira.populator.IssuePopulator.IssueInfo;
+import org.overbaard.jira.populator.ProjectPopulator.ProjectInfo;
+
+/**
+ * Benchmarks the per-issue JSON work: building the create payload, serializing it for the request body and parsing
+ * the responses. Run with {@code -prof gc} to see the allocation per operation as well as the time:
+ * <pre>
+ *     mvn -Pjmh package
+ *     java -jar target/benchmarks.jar PayloadBenchmark -prof gc
+ * </pre>
+ * The {@code current*} benchmarks are what the populator does now; the others are the alternatives to it.
+ *
+ * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PayloadBenchmark {
+    private static final int ISSUES = 1024;
+    private static final int BULK_SIZE = 50;
+
+    private ProjectInfo projectInfo;
+    private IssueInfo[] issueInfos;
+    private ModelNode payload;
+    private int index;
+
+    private byte[] createResponse;
+    private byte[] bulkResponse;
+    private byte[] transitionsResponse;
+
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(1024);
+    // As the populator does, read to the end of the response to count its bytes
+    private final long[] counter = new long[1];
+
+    @Setup
+    public void setup() {
+        Dataset dataset = Dataset.createDefault(ISSUES);
+        // The feature project, since it has components and labels
+        projectInfo = dataset.getProjects().get(1);
+        String[] assignees = new String[dataset.getUsers().size()];
+        for (int i = 0; i < assignees.length; i++) {
+            assignees[i] = dataset.getUsers().get(i).username;
+        }
+        issueInfos = new IssueInfo[ISSUES];
+        for (int i = 0; i < ISSUES; i++) {
+            issueInfos[i] = dataset.getIssueDistributions().createIssueInfo(projectInfo, assignees, i);
+        }
+        payload = buildModelNodePayload(projectInfo, issueInfos[7]);
+
+        // Jira sends its responses without any whitespace
+        createResponse = createdIssue(1).toJSONString(true).getBytes(StandardCharsets.UTF_8);
+        ModelNode bulk = new ModelNode();
+        for (int i = 0; i < BULK_SIZE; i++) {
+            bulk.get("issues").add(createdIssue(i + 1));
+        }
+        bulk.get("errors").setEmptyList();
+        bulkResponse = bulk.toJSONString(true).getBytes(StandardCharsets.UTF_8);
+        ModelNode transitions = new ModelNode();
+        String[] statuses = {"Backlog", "Selected for Development", "In Progress", "Done"};
+        for (int i = 0; i < statuses.length; i++) {
+            ModelNode transition = transitions.get("transitions").add();
+            transition.get("id").set(String.valueOf((i + 1) * 10 + 1));
+            transition.get("name").set(statuses[i]);
+            transition.get("to", "self").set("http://localhost:2990/jira/rest/api/2/status/" + (10000 + i));
+            transition.get("to", "description").set("");
+            transition.get("to", "name").set(statuses[i]);
+            transition.get("to", "id").set(String.valueOf(10000 + i));
+            transition.get("to", "statusCategory", "key").set(i == 3 ? "done" : "new");
+        }
+        transitionsResponse = transitions.toJSONString(true).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static ModelNode createdIssue(int number) {
+        ModelNode issue = new ModelNode();
+        issue.get("id").set(String.valueOf(10000 + number));
+        issue.get("key").set("FEAT-" + number);
+        issue.get("self").set("http://localhost:2990/jira/rest/api/2/issue/" + (10000 + number));
+        return issue;
+    }
+
+    /**
+     * How the issue payloads used to be built, before {@link JsonWriter}.
+     */
+    private static ModelNode buildModelNodePayload(ProjectInfo projectInfo, IssueInfo issueInfo) {
+        ModelNode issue = new ModelNode();
+        issue.get("fields", "project", "id").set(projectInfo.getId());
+        issue.get("fields", "summary").set(issueInfo.getSummary());
+        issue.get("fields", "issuetype", "name").set(issueInfo.getIssueType());
+        issue.get("fields", "assignee", "name").set(issueInfo.getAssignee());
+        issue.get("fields", "reporter", "name").set(issueInfo.getReporter());
+        issue.get("fields", "priority", "name").set(issueInfo.getPriority());
+        for (String component : issueInfo.getComponents()) {
+            issue.get("fields", "components").add().get("name").set(component);
+        }
+        for (String label : issueInfo.getLabels()) {
+            issue.get("fields", "labels").add(label);
+        }
+        return issue;
+    }
+
+    private IssueInfo nextIssue() {
+        index = (index + 1) & (ISSUES - 1);
+        return issueInfos[index];
+    }
+
+    @Benchmark
+    public int currentWritePayload() throws IOException {
+        IssueInfo issueInfo = nextIssue();
+        buffer.reset();
+        JsonWriter.write(writer -> IssuePopulator.writeIssuePayload(writer, projectInfo, issueInfo), buffer);
+        return buffer.size();
+    }
+
+    /**
+     * How other requests are sent: a ModelNode written out through the JsonWriter.
+     */
+    @Benchmark
+    public int currentWriteModelNode() throws IOException {
+        buffer.reset();
+        JsonWriter.write(JsonPayload.of(payload), buffer);
+        return buffer.size();
+    }
+
+    @Benchmark
+    public ModelNode modelNodeBuildPayload() {
+        return buildModelNodePayload(projectInfo, nextIssue());
+    }
+
+    @Benchmark
+    public byte[] modelNodeSerialize() {
+        return payload.toJSONString(true).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] modelNodeBuildAndSerialize() {
+        return buildModelNodePayload(projectInfo, nextIssue()).toJSONString(true).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] modelNodePrettySerialize() {
+        return payload.toJSONString(false).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public int modelNodeSerializeToStream() {
+        buffer.reset();
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(buffer, StandardCharsets.UTF_8));
+        payload.writeJSONString(writer, true);
+        writer.flush();
+        return buffer.size();
+    }
+
+    @Benchmark
+    public String currentParseCreateResponse() throws IOException {
+        return JsonReader.read(new ByteArrayInputStream(createResponse), ResponseReader.field("key"), counter);
+    }
+
+    @Benchmark
+    public int currentParseBulkResponse() throws IOException {
+        return JsonReader.read(new ByteArrayInputStream(bulkResponse), IssuePopulator::readBulkResult, counter)
+                .getKeys().size();
+    }
+
+    @Benchmark
+    public int currentParseTransitionsResponse() throws IOException {
+        return JsonReader.read(new ByteArrayInputStream(transitionsResponse), TransitionCache::readTransitions, counter)
+                .size();
+    }
+
+    @Benchmark
+    public String modelNodeParseCreateResponse() {
+        return ModelNode.fromJSONString(new String(createResponse, StandardCharsets.UTF_8)).get("key").asString();
+    }
+
+    @Benchmark
+    public int modelNodeParseBulkResponse() {
+        return ModelNode.fromJSONString(new String(bulkResponse, StandardCharsets.UTF_8)).get("issues").asList().size();
+    }
+
+    @Benchmark
+    public int modelNodeParseTransitionsResponse() {
+        return ModelNode.fromJSONString(new String(transitionsResponse, StandardCharsets.UTF_8))
+                .get("transitions").asList().size();
+    }
+
+    /**
+     * Parses from the bytes, as they come off the wire, rather than decoding them to a String first.
+     */
+    @Benchmark
+    public String modelNodeStreamParseCreateResponse() throws IOException {
+        return ModelNode.fromJSONStream(new ByteArrayInputStream(createResponse)).get("key").asString();
+    }
+
+    @Benchmark
+    public int modelNodeStreamParseBulkResponse() throws IOException {
+        return ModelNode.fromJSONStream(new ByteArrayInputStream(bulkResponse)).get("issues").asList().size();
+    }
+}
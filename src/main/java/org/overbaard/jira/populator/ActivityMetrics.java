@@ -0,0 +1,142 @@
+package org.overbaard.jira.populator;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import org.jboss.dmr.ModelNode;
+
+/**
+ * Counts what the {@link ActivitySimulator} does, apart from the {@link RequestMetrics} of the requests themselves:
+ * for each kind of activity how many were done, how many failed, and how many were dropped because too many were
+ * already in flight, along with how long each took from start to end. An activity may take more than one request, as
+ * for a transition through several states, so its latency is that of the whole chain.
+ * <p>
+ * Dropped activities are what shows the target falling behind the requested rate, since the simulator never queues
+ * them up to catch up later.
+ *
+ * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
+ */
+class ActivityMetrics implements AutoCloseable {
+    private static final Logger LOG = Logger.getLogger(ActivityMetrics.class.getName());
+
+    private final long startNanos = System.nanoTime();
+    private final Map<ActivitySimulator.Activity, Counts> counts = new EnumMap<>(ActivitySimulator.Activity.class);
+    private final ScheduledExecutorService reporter;
+
+    /**
+     * @param progressIntervalSeconds how often to log the progress line, or 0 for never
+     */
+    ActivityMetrics(int progressIntervalSeconds) {
+        for (ActivitySimulator.Activity activity : ActivitySimulator.Activity.values()) {
+            counts.put(activity, new Counts());
+        }
+        if (progressIntervalSeconds > 0) {
+            reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "activity-reporter");
+                thread.setDaemon(true);
+                return thread;
+            });
+            reporter.scheduleAtFixedRate(() -> LOG.info(getProgress()),
+                    progressIntervalSeconds, progressIntervalSeconds, TimeUnit.SECONDS);
+        } else {
+            reporter = null;
+        }
+    }
+
+    void activityDone(ActivitySimulator.Activity activity, long latencyNanos) {
+        counts.get(activity).latency.recordNanos(latencyNanos);
+    }
+
+    void activityFailed(ActivitySimulator.Activity activity) {
+        counts.get(activity).errors.incrementAndGet();
+    }
+
+    void activityDropped(ActivitySimulator.Activity activity) {
+        counts.get(activity).dropped.incrementAndGet();
+    }
+
+    String getProgress() {
+        double seconds = getElapsedSeconds();
+        long done = 0;
+        long errors = 0;
+        long dropped = 0;
+        for (Counts counts : this.counts.values()) {
+            done += counts.latency.getCount();
+            errors += counts.errors.get();
+            dropped += counts.dropped.get();
+        }
+        return String.format("Activities %d (%.1f/s), %d errors, %d dropped",
+                done, seconds > 0 ? done / seconds : 0, errors, dropped);
+    }
+
+    private double getElapsedSeconds() {
+        return (System.nanoTime() - startNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+
+    ModelNode toModelNode() {
+        double seconds = getElapsedSeconds();
+        ModelNode report = new ModelNode();
+        report.get("duration-ms").set((long) (seconds * 1000));
+        ModelNode activities = report.get("activities");
+        activities.setEmptyObject();
+        for (Map.Entry<ActivitySimulator.Activity, Counts> entry : counts.entrySet()) {
+            Counts counts = entry.getValue();
+            ModelNode node = activities.get(entry.getKey().getName());
+            node.get("count").set(counts.latency.getCount());
+            node.get("errors").set(counts.errors.get());
+            node.get("dropped").set(counts.dropped.get());
+            node.get("per-second").set(seconds > 0 ? counts.latency.getCount() / seconds : 0);
+            node.get("p50-ms").set(counts.latency.getPercentileMicros(50) / 1000.0);
+            node.get("p99-ms").set(counts.latency.getPercentileMicros(99) / 1000.0);
+            node.get("max-ms").set(counts.latency.getMaxMicros() / 1000.0);
+        }
+        return report;
+    }
+
+    /**
+     * Logs a line per kind of activity, followed by the final progress line.
+     */
+    void logSummary() {
+        for (Map.Entry<ActivitySimulator.Activity, Counts> entry : counts.entrySet()) {
+            Counts counts = entry.getValue();
+            LOG.info(String.format("%-12s %7d done %5d errors %5d dropped  p50 %8.1fms  p99 %8.1fms  max %8.1fms",
+                    entry.getKey().getName(), counts.latency.getCount(), counts.errors.get(), counts.dropped.get(),
+                    counts.latency.getPercentileMicros(50) / 1000.0,
+                    counts.latency.getPercentileMicros(99) / 1000.0,
+                    counts.latency.getMaxMicros() / 1000.0));
+        }
+        LOG.info(getProgress());
+    }
+
+    void writeReport(String file) {
+        try {
+            Files.write(Paths.get(file), toModelNode().toJSONString(false).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write the activity report to " + file, e);
+        }
+        LOG.info("Wrote activity report to " + file);
+    }
+
+    @Override
+    public void close() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+        }
+    }
+
+    private static class Counts {
+        // Counts the activities done as well as timing them
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+    }
+}
@@ -0,0 +1,358 @@
+package org.overbaard.jira.populator;
+
+import static org.overbaard.jira.populator.IndexDistribution.getWeightedCycle;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
+
+import javax.ws.rs.core.UriBuilder;
+
+import org.overbaard.jira.populator.ProjectPopulator.ProjectInfo;
+
+/**
+ * Keeps changing the populated issues at a steady rate, the way people using the boards would, so that we can see
+ * how the board keeps up with a sustained write load. The activities are comments, worklogs, edits of the summary,
+ * reassignments, adding and removing labels, and moving issues through one or more states of the workflow.
+ * <p>
+ * A scheduler ticks every few milliseconds and starts however many activities are due by then at the configured rate.
+ * Each activity is a chain of asynchronous requests, so the ticks never wait for Jira. If too many are in flight the
+ * due activities are dropped rather than queued, so that a slow Jira shows up in the {@link ActivityMetrics} as
+ * dropped activities instead of as an ever growing backlog. The kinds of activity come round in proportion to their
+ * weights in the mix, and the issues and values are picked with a seeded random, so that runs are repeatable.
+ * <p>
+ * When populating is split between {@link Shard}s, each only knows the keys of the issues it created, so it only
+ * changes those. Run the activity on every shard to spread it over all the issues.
+ *
+ * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
+ */
+class ActivitySimulator {
+    // Off unless a rate is set
+    static final double DEFAULT_RATE = 0;
+    static final int DEFAULT_DURATION_SECONDS = 60;
+    static final int DEFAULT_CONCURRENCY = 100;
+    static final String DEFAULT_MIX = "comment:3,worklog:1,edit:1,reassign:1,label:1,transition:3";
+    static final long DEFAULT_SEED = 1;
+
+    private static final Logger LOG = Logger.getLogger(ActivitySimulator.class.getName());
+
+    private static final int TICK_MS = 10;
+    // The most states an issue is moved through in one go
+    private static final int MAX_HOPS = 3;
+    // For projects which have no labels of their own
+    private static final String[] DEFAULT_LABELS = {"Churn"};
+
+    enum Activity {
+        COMMENT("comment"),
+        WORKLOG("worklog"),
+        EDIT("edit"),
+        REASSIGN("reassign"),
+        LABEL("label"),
+        TRANSITION("transition");
+
+        private final String name;
+
+        Activity(String name) {
+            this.name = name;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        static Activity forName(String name) {
+            for (Activity activity : values()) {
+                if (activity.name.equals(name)) {
+                    return activity;
+                }
+            }
+            throw new IllegalArgumentException("Unknown activity '" + name + "'");
+        }
+    }
+
+    private final RestClientFactory factory;
+    private final TransitionCache transitionCache;
+    private final ActivityMetrics metrics;
+    private final List<ProjectInfo> projects;
+    private final IssueKeys[] issueKeys;
+    // The index in each project of the first of the shard's issues
+    private final int[] shardStart;
+    // The index of the first of the shard's issues of each project amongst all the shard's issues
+    private final long[] firstIssue;
+    private final long numberIssues;
+    private final String[] assignees;
+    private final double rate;
+    private final int durationSeconds;
+    private final Activity[] mix;
+    private final Semaphore inFlight;
+    private final TaskTracker activities = new TaskTracker("activities");
+    // Only used by the scheduler thread
+    private final Random random;
+    private long started;
+    private long startNanos;
+
+    /**
+     * @param issueKeys the keys of the issues of each project, of which those which were created get changed
+     * @param shard the part of the issues which this run populated, and so has the keys of
+     * @param assignees the users to reassign issues to. If there are none, issues don't get reassigned
+     * @param rate how many activities to start a second
+     * @param durationSeconds how long to keep going, or 0 for until the process is stopped
+     * @param mix the kinds of activity and their weights, as {@code name:weight,...}
+     */
+    ActivitySimulator(RestClientFactory factory, ActivityMetrics metrics, List<ProjectInfo> projects, IssueKeys[] issueKeys,
+                      Shard shard, String[] assignees, double rate, int durationSeconds, int concurrency, String mix,
+                      long seed) {
+        if (rate <= 0) {
+            throw new IllegalArgumentException("The activity rate must be above 0: " + rate);
+        }
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("The activity concurrency must be at least 1: " + concurrency);
+        }
+        this.factory = factory;
+        this.transitionCache = new TransitionCache(factory);
+        this.metrics = metrics;
+        this.projects = projects;
+        this.issueKeys = issueKeys;
+        this.shardStart = new int[issueKeys.length];
+        this.firstIssue = new long[issueKeys.length];
+        long numberIssues = 0;
+        for (int i = 0; i < issueKeys.length; i++) {
+            int projectIssues = issueKeys[i].getNumberIssues();
+            shardStart[i] = shard.getStart(projectIssues);
+            firstIssue[i] = numberIssues;
+            numberIssues += shard.getEnd(projectIssues) - shardStart[i];
+        }
+        this.numberIssues = numberIssues;
+        this.assignees = assignees;
+        this.rate = rate;
+        this.durationSeconds = durationSeconds;
+        this.mix = parseMix(mix, assignees.length > 0);
+        this.inFlight = new Semaphore(concurrency);
+        this.random = new Random(seed);
+    }
+
+    /**
+     * @param reassign whether there is anybody to reassign issues to
+     */
+    private static Activity[] parseMix(String mix, boolean reassign) {
+        List<Activity> activities = new ArrayList<>();
+        List<Integer> weights = new ArrayList<>();
+        for (String entry : mix.trim().split("\\s*,\\s*")) {
+            String[] fields = entry.split("\\s*:\\s*");
+            Activity activity = Activity.forName(fields[0]);
+            if (activity == Activity.REASSIGN && !reassign) {
+                LOG.info("There are no users to reassign issues to, so leaving out " + activity.getName());
+                continue;
+            }
+            activities.add(activity);
+            weights.add(fields.length > 1 ? Integer.parseInt(fields[1]) : 1);
+        }
+        if (activities.isEmpty()) {
+            throw new IllegalArgumentException("There is no activity to simulate in the mix '" + mix + "'");
+        }
+        int[] cycle = getWeightedCycle(weights.stream().mapToInt(Integer::intValue).toArray());
+        Activity[] expanded = new Activity[cycle.length];
+        for (int i = 0; i < cycle.length; i++) {
+            expanded[i] = activities.get(cycle[i]);
+        }
+        return expanded;
+    }
+
+    /**
+     * Runs the activities for the configured duration, and waits for the last of them to finish.
+     */
+    void run() {
+        if (numberIssues == 0) {
+            LOG.warning("There are no issues to simulate activity on");
+            return;
+        }
+        LOG.info("Simulating " + rate + " activities a second" +
+                (durationSeconds > 0 ? " for " + durationSeconds + " seconds" : "") + "...");
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "activity-simulator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        startNanos = System.nanoTime();
+        ScheduledFuture<?> ticks = scheduler.scheduleAtFixedRate(this::tick, 0, TICK_MS, TimeUnit.MILLISECONDS);
+        try {
+            if (durationSeconds > 0) {
+                ticks.get(durationSeconds, TimeUnit.SECONDS);
+            } else {
+                ticks.get();
+            }
+        } catch (TimeoutException e) {
+            // That's the end of the run
+        } catch (ExecutionException e) {
+            throw new RuntimeException("The activity simulation failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted simulating activity", e);
+        } finally {
+            ticks.cancel(false);
+            scheduler.shutdown();
+        }
+        try {
+            scheduler.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted simulating activity", e);
+        }
+        activities.await();
+        LOG.info("Simulated activity");
+    }
+
+    private void tick() {
+        long due = (long) (rate * (System.nanoTime() - startNanos) / TimeUnit.SECONDS.toNanos(1));
+        while (started < due) {
+            start(mix[(int) (started++ % mix.length)]);
+        }
+    }
+
+    private void start(Activity activity) {
+        if (!inFlight.tryAcquire()) {
+            metrics.activityDropped(activity);
+            return;
+        }
+        final long start = System.nanoTime();
+        CompletableFuture<Void> future;
+        try {
+            future = startActivity(activity);
+        } catch (RuntimeException e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+        // The failures are only counted, so that one doesn't end the run
+        activities.track(future.handle((result, failure) -> {
+            inFlight.release();
+            if (failure == null) {
+                metrics.activityDone(activity, System.nanoTime() - start);
+            } else {
+                metrics.activityFailed(activity);
+                LOG.fine(() -> activity.getName() + " failed: " + failure);
+            }
+            return null;
+        }));
+    }
+
+    private CompletableFuture<Void> startActivity(Activity activity) {
+        long issue = pickIssue();
+        if (issue < 0) {
+            throw new RuntimeException("Could not find an issue which was created");
+        }
+        int project = getProject(issue);
+        String issueKey = issueKeys[project].get(getIssueIndex(project, issue));
+        UriBuilder builder = factory.getJiraRestUriBuilder().path("issue").path(issueKey);
+        long number = started;
+        switch (activity) {
+            case COMMENT:
+                return factory.postAsync(builder.path("comment"), writer -> writer.beginObject()
+                        .name("body").value("Comment " + number + " on " + issueKey)
+                        .endObject());
+            case WORKLOG: {
+                int minutes = 15 * (1 + random.nextInt(32));
+                return factory.postAsync(builder.path("worklog"), writer -> writer.beginObject()
+                        .name("timeSpentSeconds").value(minutes * 60)
+                        .name("comment").value("Work " + number + " on " + issueKey)
+                        .endObject());
+            }
+            case EDIT:
+                return factory.putAsync(builder, writer -> writer.beginObject()
+                        .name("fields").beginObject()
+                        .name("summary").value("Issue " + issueKey + ", edited by activity " + number)
+                        .endObject()
+                        .endObject());
+            case REASSIGN: {
+                String assignee = assignees[random.nextInt(assignees.length)];
+                return factory.putAsync(builder.path("assignee"), writer -> writer.beginObject()
+                        .name("name").value(assignee)
+                        .endObject());
+            }
+            case LABEL: {
+                String[] labels = projects.get(project).getLabels();
+                labels = labels == null || labels.length == 0 ? DEFAULT_LABELS : labels;
+                String label = labels[random.nextInt(labels.length)];
+                String operation = random.nextBoolean() ? "add" : "remove";
+                return factory.putAsync(builder, writer -> writer.beginObject()
+                        .name("update").beginObject()
+                        .name("labels").beginArray().beginObject().name(operation).value(label).endObject().endArray()
+                        .endObject()
+                        .endObject());
+            }
+            case TRANSITION: {
+                // Pick the transitions up front, since the random may only be used by the scheduler thread
+                int[] picks = new int[1 + random.nextInt(MAX_HOPS)];
+                for (int i = 0; i < picks.length; i++) {
+                    picks[i] = random.nextInt(Integer.MAX_VALUE);
+                }
+                return transition(issueKey, picks, 0);
+            }
+            default:
+                throw new IllegalStateException("Unknown activity " + activity);
+        }
+    }
+
+    /**
+     * Moves the issue on to another of the states it can go to, and then on again until it has made all its hops.
+     * The transitions are looked up for each hop, since they depend on where the issue has got to.
+     */
+    private CompletableFuture<Void> transition(String issueKey, int[] picks, int hop) {
+        if (hop == picks.length) {
+            return CompletableFuture.completedFuture(null);
+        }
+        UriBuilder builder = factory.getJiraRestUriBuilder();
+        builder.path("issue").path(issueKey).path("transitions");
+        return factory.getAsync(builder, TransitionCache::readTransitions).thenCompose(transitions -> {
+            if (transitions.isEmpty()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            return transitionCache.transitionIssueAsync(issueKey, transitions.get(picks[hop] % transitions.size()))
+                    .thenCompose(v -> transition(issueKey, picks, hop + 1));
+        });
+    }
+
+    /**
+     * @return the index amongst all the shard's issues of one which has been created, or -1 if none could be found
+     */
+    private long pickIssue() {
+        // Unless most were never created, this only takes one go
+        for (int i = 0; i < 10; i++) {
+            long issue = (long) (random.nextDouble() * numberIssues);
+            int project = getProject(issue);
+            if (issueKeys[project].get(getIssueIndex(project, issue)) != null) {
+                return issue;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index in its project of an issue given by its index amongst all the shard's issues
+     */
+    private int getIssueIndex(int project, long issue) {
+        return shardStart[project] + (int) (issue - firstIssue[project]);
+    }
+
+    private int getProject(long issue) {
+        int low = 0;
+        int high = firstIssue.length - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (firstIssue[middle] <= issue) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+}
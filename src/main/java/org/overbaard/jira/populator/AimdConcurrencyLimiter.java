@@ -0,0 +1,142 @@
+package org.overbaard.jira.populator;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Limits the number of requests in flight, adjusting the limit to what the server can take: it grows by one for every
+ * 'limit' successful requests (additive increase), and is cut when the server throttles us or responses slow down
+ * noticeably (multiplicative decrease). The limit is only cut once per round trip, so that a burst of throttled
+ * responses to requests which were sent together does not collapse it.
+ *
+ * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
+ */
+class AimdConcurrencyLimiter {
+    private static final Logger LOG = Logger.getLogger(AimdConcurrencyLimiter.class.getName());
+
+    private static final double THROTTLED_DECREASE = 0.5;
+    private static final double LATENCY_DECREASE = 0.9;
+    // The smoothing of the recent latency, and of the long term latency we compare it to
+    private static final double SHORT_SMOOTHING = 0.1;
+    private static final double LONG_SMOOTHING = 0.005;
+    // Below this, latency changes are more likely noise than overload
+    private static final long MIN_LATENCY_INCREASE_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double latencyTolerance;
+
+    // Guarded by this
+    private double limit;
+    private int inFlight;
+    private double smoothedLatency;
+    private double baselineLatency;
+    private long lastDecrease;
+    private final Queue<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+
+    /**
+     * @param latencyTolerance how many times slower than the long term latency the recent latency may get before we
+     *                         take it as a sign of overload, or {@code <= 0} to ignore latency
+     */
+    AimdConcurrencyLimiter(int minLimit, int maxLimit, double latencyTolerance) {
+        this.minLimit = Math.max(minLimit, 1);
+        this.maxLimit = Math.max(maxLimit, this.minLimit);
+        this.latencyTolerance = latencyTolerance;
+        this.limit = this.maxLimit;
+    }
+
+    synchronized void acquire() {
+        while (inFlight >= (int) limit) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted", e);
+            }
+        }
+        inFlight++;
+    }
+
+    /**
+     * Like {@link #acquire()}, but rather than blocking returns a future which completes once the request may be
+     * sent. Waiting requests get in in the order they asked. The future may be completed while holding the limiter's
+     * lock, so anything depending on it should run asynchronously.
+     */
+    synchronized CompletableFuture<Void> acquireAsync() {
+        if (waiters.isEmpty() && inFlight < (int) limit) {
+            inFlight++;
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> waiter = new CompletableFuture<>();
+        waiters.add(waiter);
+        return waiter;
+    }
+
+    synchronized void onSuccess(long latencyNanos) {
+        release();
+        if (smoothedLatency == 0) {
+            smoothedLatency = latencyNanos;
+            baselineLatency = latencyNanos;
+        } else {
+            smoothedLatency += (latencyNanos - smoothedLatency) * SHORT_SMOOTHING;
+            baselineLatency += (latencyNanos - baselineLatency) * LONG_SMOOTHING;
+        }
+        if (latencyTolerance > 0 && smoothedLatency > baselineLatency * latencyTolerance
+                && smoothedLatency - baselineLatency > MIN_LATENCY_INCREASE_NANOS) {
+            decrease(LATENCY_DECREASE);
+        } else {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+        signal();
+    }
+
+    synchronized void onThrottled() {
+        release();
+        decrease(THROTTLED_DECREASE);
+        signal();
+    }
+
+    /**
+     * For requests which failed without telling us anything about the server's load.
+     */
+    synchronized void onDropped() {
+        release();
+        signal();
+    }
+
+    synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    private void release() {
+        inFlight--;
+    }
+
+    /**
+     * Lets in as many of the asynchronous waiters as there is now room for, and wakes up the blocked ones.
+     */
+    private void signal() {
+        CompletableFuture<Void> waiter;
+        while (inFlight < (int) limit && (waiter = waiters.poll()) != null) {
+            inFlight++;
+            waiter.complete(null);
+        }
+        notifyAll();
+    }
+
+    private void decrease(double factor) {
+        long now = System.nanoTime();
+        if (now - lastDecrease < smoothedLatency) {
+            return;
+        }
+        lastDecrease = now;
+        int previous = (int) limit;
+        limit = Math.max(minLimit, limit * factor);
+        if ((int) limit != previous) {
+            LOG.info("Reduced request concurrency to " + (int) limit);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package org.overbaard.jira.populator;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+import org.jboss.resteasy.client.jaxrs.ClientHttpEngine;
+import org.jboss.resteasy.client.jaxrs.engines.ApacheHttpClient4Engine;
+
+/**
+ * HTTP/1.1 over a pool of kept-alive Apache HttpClient connections. A connection carries one request at a time, so
+ * there are as many connections open as there are requests in flight.
+ * <p>
+ * Asynchronous requests go through a separate pool of the same size, run by the NIO client on a few I/O dispatch
+ * threads. It is only started if an asynchronous request is made.
+ *
+ * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
+ */
+class ApacheHttpTransport implements HttpTransport {
+
+    static final int DEFAULT_MAX_CONNECTIONS = 20;
+    static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 20;
+    static final int DEFAULT_IDLE_TIMEOUT_SECONDS = 30;
+
+    // The engine and the connection pool live as long as this transport, so that connections are kept alive
+    // and reused between requests. They are only released in close()
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final ApacheHttpClient4Engine engine;
+    private final ScheduledExecutorService idleConnectionEvictor;
+    private final int maxConnections;
+    private final int maxConnectionsPerRoute;
+    private final int idleTimeoutSeconds;
+    private final int maxConcurrentRequests;
+
+    // Guarded by this
+    private PoolingNHttpClientConnectionManager asyncConnectionManager;
+    private CloseableHttpAsyncClient asyncClient;
+    private boolean closed;
+
+    ApacheHttpTransport(int maxConnections, int maxConnectionsPerRoute, int idleTimeoutSeconds) {
+        if (idleTimeoutSeconds < 1) {
+            // It is also how often the idle connections are looked for, so it can't be 0
+            throw new IllegalArgumentException("The HTTP idle timeout must be at least 1 second: " + idleTimeoutSeconds);
+        }
+        this.maxConnections = maxConnections;
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+        this.idleTimeoutSeconds = idleTimeoutSeconds;
+        connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        // Everything goes to the one Jira instance
+        maxConcurrentRequests = Math.min(maxConnections, maxConnectionsPerRoute);
+
+        HttpClient httpClient = HttpClientBuilder.create()
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy(new KeepAliveStrategy(idleTimeoutSeconds))
+                .build();
+        engine = new ApacheHttpClient4Engine(httpClient);
+
+        idleConnectionEvictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "idle-connection-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        idleConnectionEvictor.scheduleWithFixedDelay(() -> {
+            connectionManager.closeExpiredConnections();
+            connectionManager.closeIdleConnections(idleTimeoutSeconds, TimeUnit.SECONDS);
+            PoolingNHttpClientConnectionManager asyncConnectionManager = getAsyncConnectionManager();
+            if (asyncConnectionManager != null) {
+                asyncConnectionManager.closeExpiredConnections();
+                asyncConnectionManager.closeIdleConnections(idleTimeoutSeconds, TimeUnit.SECONDS);
+            }
+        }, idleTimeoutSeconds, idleTimeoutSeconds, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public ClientHttpEngine getEngine() {
+        return engine;
+    }
+
+    @Override
+    public CompletableFuture<BufferedResponse> sendAsync(String method, URI uri, Map<String, String> headers, byte[] body) {
+        RequestBuilder request = RequestBuilder.create(method).setUri(uri);
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            request.addHeader(header.getKey(), header.getValue());
+        }
+        if (body != null) {
+            request.setEntity(new ByteArrayEntity(body));
+        }
+        CompletableFuture<BufferedResponse> future = new CompletableFuture<>();
+        getAsyncClient().execute(request.build(), new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse response) {
+                try {
+                    // The NIO client has already read the whole entity into memory
+                    byte[] entity = response.getEntity() == null ? null : EntityUtils.toByteArray(response.getEntity());
+                    Header retryAfter = response.getFirstHeader(HttpHeaders.RETRY_AFTER);
+                    future.complete(new BufferedResponse(response.getStatusLine().getStatusCode(), entity,
+                            retryAfter == null ? null : retryAfter.getValue()));
+                } catch (IOException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void failed(Exception e) {
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void cancelled() {
+                future.cancel(false);
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    @Override
+    public void close() {
+        idleConnectionEvictor.shutdownNow();
+        engine.close();
+        connectionManager.shutdown();
+        CloseableHttpAsyncClient asyncClient;
+        synchronized (this) {
+            closed = true;
+            asyncClient = this.asyncClient;
+        }
+        if (asyncClient != null) {
+            try {
+                asyncClient.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+    private synchronized PoolingNHttpClientConnectionManager getAsyncConnectionManager() {
+        return asyncConnectionManager;
+    }
+
+    private synchronized CloseableHttpAsyncClient getAsyncClient() {
+        if (asyncClient == null) {
+            if (closed) {
+                throw new IllegalStateException("The transport has been closed");
+            }
+            try {
+                asyncConnectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor());
+            } catch (IOReactorException e) {
+                throw new RuntimeException("Could not start the asynchronous HTTP client", e);
+            }
+            asyncConnectionManager.setMaxTotal(maxConnections);
+            asyncConnectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+            asyncClient = HttpAsyncClients.custom()
+                    .setConnectionManager(asyncConnectionManager)
+                    .setKeepAliveStrategy(new KeepAliveStrategy(idleTimeoutSeconds))
+                    .build();
+            asyncClient.start();
+        }
+        return asyncClient;
+    }
+
+    /**
+     * Keeps connections alive for as long as the server asks us to, falling back to the idle timeout when the server
+     * does not send a Keep-Alive header.
+     */
+    private static class KeepAliveStrategy implements ConnectionKeepAliveStrategy {
+        private final long defaultKeepAliveMs;
+
+        KeepAliveStrategy(int idleTimeoutSeconds) {
+            this.defaultKeepAliveMs = TimeUnit.SECONDS.toMillis(idleTimeoutSeconds);
+        }
+
+        @Override
+        public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+            long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return duration > 0 ? duration : defaultKeepAliveMs;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package org.overbaard.jira.populator;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Limits how many chains of asynchronous requests are outstanding at once. Unlike a {@link BoundedExecutor} it has no
+ * threads of its own: a task only starts its requests and returns the future of the chain, and its permit is given
+ * back when that completes. Submitting blocks while the stage is full, so it must only be called from threads which
+ * may wait, such as those of the project stage, and never from a stage of another asynchronous chain.
+ *
+ * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
+ */
+class AsyncStage {
+    static final int DEFAULT_CONCURRENCY = 1000;
+
+    private final String name;
+    private final Semaphore permits;
+
+    AsyncStage(String name, int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Concurrency for " + name + " must be at least 1: " + concurrency);
+        }
+        this.name = name;
+        this.permits = new Semaphore(concurrency);
+    }
+
+    <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> task) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted waiting to submit to " + name, e);
+        }
+        final CompletableFuture<T> future;
+        try {
+            future = task.get();
+        } catch (RuntimeException | Error e) {
+            permits.release();
+            throw e;
+        }
+        future.whenComplete((result, failure) -> permits.release());
+        return future;
+    }
+}
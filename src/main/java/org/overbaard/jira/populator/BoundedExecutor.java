@@ -0,0 +1,171 @@
+package org.overbaard.jira.populator;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs populator tasks with at most {@code concurrency} of them in flight, and at most {@code queueCapacity} more
+ * waiting. Submitting blocks once that limit is reached, so callers producing thousands of tasks never get ahead of
+ * the server by more than a bounded amount.
+ * <p>
+ * Virtual threads are used when the JDK has them (looked up reflectively since we compile for Java 8), otherwise a
+ * fixed pool of {@code concurrency} platform threads.
+ *
+ * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
+ */
+class BoundedExecutor implements AutoCloseable {
+    static final int DEFAULT_CONCURRENCY = 1;
+
+    private final String name;
+    private final int concurrency;
+    private final ExecutorService executor;
+    // Bounds the tasks which are running or waiting to run
+    private final Semaphore pending;
+    // Bounds the tasks which are running. Only needed for virtual threads, where every task gets its own thread
+    private final Semaphore running;
+
+    private BoundedExecutor(String name, int concurrency, int queueCapacity, ExecutorService executor, boolean virtual) {
+        this.name = name;
+        this.concurrency = concurrency;
+        this.executor = executor;
+        this.pending = new Semaphore(concurrency + queueCapacity);
+        this.running = virtual ? new Semaphore(concurrency) : null;
+    }
+
+    static BoundedExecutor create(String name, int concurrency) {
+        return create(name, concurrency, concurrency * 2);
+    }
+
+    static BoundedExecutor create(String name, int concurrency, int queueCapacity) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Concurrency for " + name + " must be at least 1: " + concurrency);
+        }
+        ExecutorService virtual = createVirtualThreadExecutor();
+        if (virtual != null) {
+            return new BoundedExecutor(name, concurrency, queueCapacity, virtual, true);
+        }
+        return new BoundedExecutor(name, concurrency, queueCapacity,
+                Executors.newFixedThreadPool(concurrency, new NamedThreadFactory(name)), false);
+    }
+
+    private static ExecutorService createVirtualThreadExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            // Not available on this JDK
+            return null;
+        }
+    }
+
+    int getConcurrency() {
+        return concurrency;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Submits a task, blocking while the executor already has as many tasks as it can hold.
+     */
+    <T> CompletableFuture<T> submit(Callable<T> task) {
+        try {
+            pending.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted waiting to submit to " + name, e);
+        }
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                T result = null;
+                Throwable failure = null;
+                if (running != null) {
+                    running.acquireUninterruptibly();
+                }
+                try {
+                    result = task.call();
+                } catch (Throwable t) {
+                    failure = t;
+                } finally {
+                    if (running != null) {
+                        running.release();
+                    }
+                    pending.release();
+                }
+                // Complete once the permits are back, so that dependent actions run by this thread may submit
+                // more work without deadlocking on a full executor
+                if (failure == null) {
+                    future.complete(result);
+                } else {
+                    future.completeExceptionally(failure);
+                }
+            });
+        } catch (RuntimeException e) {
+            pending.release();
+            throw e;
+        }
+        return future;
+    }
+
+    CompletableFuture<Void> execute(Runnable task) {
+        return submit(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * Waits for all the futures, rethrowing the first failure.
+     */
+    static void awaitAll(List<? extends CompletableFuture<?>> futures) {
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        NamedThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package org.overbaard.jira.populator;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * A small pool of byte buffers shared by all threads. A thread-local cache only pays off for long-lived threads; with
+ * the virtual threads {@link BoundedExecutor} uses when it can, every task runs on a new thread and would allocate a
+ * fresh buffer. A buffer is taken for as long as a request is being written or read, and given back afterwards, so
+ * the pool only ever needs as many as there are requests in flight.
+ *
+ * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
+ */
+class BufferPool {
+    private final int bufferSize;
+    private final ArrayBlockingQueue<byte[]> buffers;
+
+    /**
+     * @param maxBuffers the most buffers to keep. When more than that are in use at once the extra ones are left for
+     *                   the garbage collector when they are given back.
+     */
+    BufferPool(int bufferSize, int maxBuffers) {
+        this.bufferSize = bufferSize;
+        this.buffers = new ArrayBlockingQueue<>(maxBuffers);
+    }
+
+    /**
+     * @return a pooled buffer, or a new one if they are all taken
+     */
+    byte[] take() {
+        byte[] buffer = buffers.poll();
+        return buffer == null ? new byte[bufferSize] : buffer;
+    }
+
+    void release(byte[] buffer) {
+        buffers.offer(buffer);
+    }
+}
@@ -0,0 +1,189 @@
+package org.overbaard.jira.populator;
+
+import static org.overbaard.jira.populator.IndexDistribution.getFieldFromIndex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.overbaard.jira.populator.ProjectPopulator.ProjectInfo;
+import org.overbaard.jira.populator.UserPopulator.UserInfo;
+
+/**
+ * The users and projects to populate Jira with. The first project is the 'upstream' one, which the issues of all the
+ * other projects link to.
+ * <p>
+ * By default this is a small hand-written dataset. For load testing it can instead be generated at any scale; like the
+ * issue fields, everything generated is derived from its index so that runs are reproducible. It can also be read from
+ * a {@link DatasetSpec}.
+ *
+ * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
+ */
+class Dataset {
+    static final int DEFAULT_ISSUES_PER_PROJECT = 30;
+    static final int DEFAULT_PROJECTS = 3;
+    static final int DEFAULT_USERS = 7;
+    static final int DEFAULT_COMPONENTS_PER_PROJECT = 6;
+    static final int DEFAULT_VERSIONS_PER_PROJECT = 3;
+    static final int DEFAULT_LABELS_PER_PROJECT = 5;
+    static final String DEFAULT_PROJECT_PREFIX = "GEN";
+
+    private static final String[] FEAT_LABELS = {"ExtraTesting", "NeedsInfo", "Support", "Approved", "Retrospective"};
+    private static final String[] SUP_LABELS = {"ExtraTesting", "Customer", "NeedsInfo", "Documentation"};
+    private static final String[] COMPONENTS =
+            {"Another Component", "User Experience", "Jira", "Core", "Testsuite", "Backend"};
+
+    private static final String[] LABEL_WORDS =
+            {"ExtraTesting", "NeedsInfo", "Support", "Approved", "Retrospective", "Customer", "Documentation"};
+    private static final String[] COMPONENT_WORDS =
+            {"Core", "Backend", "User Experience", "Testsuite", "Jira", "Integration", "Security", "Performance"};
+    private static final String[] FIRST_NAMES =
+            {"Kabir", "Rostislav", "James", "Jason", "Brian", "Stuart", "Jeff", "Anna", "Maria", "David", "Ilaria"};
+    private static final String[] LAST_NAMES =
+            {"Khan", "Svoboda", "Perkins", "Greene", "Stansberry", "Douglas", "Mesnil", "Smith", "Novak", "Rossi"};
+
+    private final List<UserInfo> users;
+    private final List<ProjectInfo> projects;
+    private final IssueDistributions issueDistributions;
+    private final LinkGraph linkGraph;
+
+    private Dataset(List<UserInfo> users, List<ProjectInfo> projects) {
+        this(users, projects, IssueDistributions.DEFAULT, null);
+    }
+
+    Dataset(List<UserInfo> users, List<ProjectInfo> projects, IssueDistributions issueDistributions, LinkGraph linkGraph) {
+        this.users = Collections.unmodifiableList(users);
+        this.projects = Collections.unmodifiableList(projects);
+        this.issueDistributions = issueDistributions;
+        this.linkGraph = linkGraph;
+    }
+
+    List<UserInfo> getUsers() {
+        return users;
+    }
+
+    List<ProjectInfo> getProjects() {
+        return projects;
+    }
+
+    IssueDistributions getIssueDistributions() {
+        return issueDistributions;
+    }
+
+    /**
+     * @return the links between the issues, or {@code null} if the dataset leaves them to the settings
+     */
+    LinkGraph getLinkGraph() {
+        return linkGraph;
+    }
+
+    /**
+     * The original dataset of three projects and seven users.
+     */
+    static Dataset createDefault(int issuesPerProject) {
+        List<UserInfo> users = new ArrayList<>();
+        users.add(new UserInfo("kabir", "Kabir Khan"));
+        users.add(new UserInfo("rostislav", "Rostislav Svoboda"));
+        users.add(new UserInfo("james", "James Perkins"));
+        users.add(new UserInfo("jason", "Jason Greene"));
+        users.add(new UserInfo("brian", "Brian Stansberry"));
+        users.add(new UserInfo("stuart", "Stuart Douglas"));
+        users.add(new UserInfo("jeff", "Jeff Mesnil"));
+
+        List<String> featComponents = new ArrayList<>();
+        Collections.addAll(featComponents, COMPONENTS);
+        featComponents.add("FEAT Component");
+
+        List<ProjectInfo> projects = new ArrayList<>();
+        projects.add(new ProjectInfo("UP", "Upstream", new String[]{"1.0.0", "2.0.0", "3.0.0"},
+                new String[0], new String[0], issuesPerProject));
+        projects.add(new ProjectInfo("FEAT", "Feature", new String[]{"1.0.0", "2.0.0", "2.0.2"},
+                featComponents.toArray(new String[featComponents.size()]), FEAT_LABELS, issuesPerProject));
+        projects.add(new ProjectInfo("SUP", "Support", new String[]{"1.0.0", "1.0.1", "1.0.2"},
+                COMPONENTS, SUP_LABELS, issuesPerProject));
+        return new Dataset(users, projects);
+    }
+
+    /**
+     * Generates a dataset of the given size. As in the default dataset, the first project is the upstream one and has
+     * no components or labels.
+     */
+    static Dataset generate(int numberProjects, int issuesPerProject, int numberUsers,
+                            int componentsPerProject, int versionsPerProject, int labelsPerProject, String projectPrefix) {
+        if (numberProjects < 1 || numberUsers < 1) {
+            throw new IllegalArgumentException("Need at least one project and one user");
+        }
+        return new Dataset(generateUsers(numberUsers), generateProjects(numberProjects, issuesPerProject,
+                componentsPerProject, versionsPerProject, labelsPerProject, projectPrefix));
+    }
+
+    static List<UserInfo> generateUsers(int numberUsers) {
+        List<UserInfo> users = new ArrayList<>();
+        for (int i = 0; i < numberUsers; i++) {
+            users.add(generateUser(i));
+        }
+        return users;
+    }
+
+    static List<ProjectInfo> generateProjects(int numberProjects, int issuesPerProject,
+                                              int componentsPerProject, int versionsPerProject, int labelsPerProject, String projectPrefix) {
+        List<ProjectInfo> projects = new ArrayList<>();
+        for (int i = 0; i < numberProjects; i++) {
+            String key = projectPrefix + toLetters(i);
+            String[] versions = generateVersions(versionsPerProject);
+            if (i == 0) {
+                projects.add(new ProjectInfo(key, "Generated upstream " + key, versions,
+                        new String[0], new String[0], issuesPerProject));
+            } else {
+                projects.add(new ProjectInfo(key, "Generated project " + key, versions,
+                        generateNames(COMPONENT_WORDS, componentsPerProject, i, " "),
+                        // Labels may not contain spaces
+                        generateNames(LABEL_WORDS, labelsPerProject, i, "-"),
+                        issuesPerProject));
+            }
+        }
+        return projects;
+    }
+
+    private static UserInfo generateUser(int index) {
+        String firstName = getFieldFromIndex(FIRST_NAMES, index);
+        // Step through the last names at a different rate so the combinations vary
+        String lastName = getFieldFromIndex(LAST_NAMES, index / FIRST_NAMES.length);
+        return new UserInfo(String.format("user%05d", index), firstName + " " + lastName + " " + index);
+    }
+
+    private static String[] generateVersions(int count) {
+        String[] versions = new String[count];
+        for (int i = 0; i < count; i++) {
+            versions[i] = (i / 10 + 1) + "." + (i % 10) + ".0";
+        }
+        return versions;
+    }
+
+    /**
+     * Generates {@code count} distinct names from the words, starting at a different word for each project. Once we
+     * run out of words they get numbered.
+     */
+    private static String[] generateNames(String[] words, int count, int projectIndex, String separator) {
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            String word = getFieldFromIndex(words, i + projectIndex);
+            int round = i / words.length;
+            names[i] = round == 0 ? word : word + separator + (round + 1);
+        }
+        return names;
+    }
+
+    /**
+     * Jira project keys may only contain letters, so number the generated projects A, B, ..., Z, BA, BB, ...
+     */
+    private static String toLetters(int index) {
+        StringBuilder sb = new StringBuilder();
+        int value = index;
+        do {
+            sb.insert(0, (char) ('A' + value % 26));
+            value /= 26;
+        } while (value > 0);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,170 @@
+package org.overbaard.jira.populator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.overbaard.jira.populator.IssuePopulator.IssueInfo;
+import org.overbaard.jira.populator.ProjectPopulator.ProjectInfo;
+import org.overbaard.jira.populator.UserPopulator.UserInfo;
+
+/**
+ * Writes the dataset to a file for Jira's JSON importer, rather than creating it through the REST API. For big
+ * datasets one import is far quicker than a request or more for every issue, transition and link. The issues are
+ * generated exactly as they would be when populating, with the status their transitions would have got them to, and
+ * are given the keys they would most likely have got in a fresh Jira.
+ * <p>
+ * The file is streamed out as it is generated, through a buffer straight to a file channel, so exporting takes the
+ * same memory however many issues there are. Nothing is sent to Jira.
+ *
+ * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
+ */
+class DatasetExporter {
+    // The workflow of the Kanban template the projects get created with
+    static final String DEFAULT_STATUSES = "Backlog,Selected for Development,In Progress,Done";
+
+    private static final Logger LOG = Logger.getLogger(DatasetExporter.class.getName());
+
+    private final Dataset dataset;
+    private final LinkGraph linkGraph;
+    private final String[] statuses;
+    private final String[] assignees;
+
+    /**
+     * @param statuses the names of the states of the workflow, in order
+     */
+    DatasetExporter(Dataset dataset, LinkGraph linkGraph, String[] statuses) {
+        if (statuses.length < dataset.getIssueDistributions().getNumberStates()) {
+            throw new IllegalArgumentException("The dataset puts issues in " + dataset.getIssueDistributions().getNumberStates() +
+                    " states of the workflow, but only " + statuses.length + " statuses were given");
+        }
+        this.dataset = dataset;
+        this.linkGraph = linkGraph;
+        this.statuses = statuses;
+        this.assignees = new String[dataset.getUsers().size()];
+        for (int i = 0; i < assignees.length; i++) {
+            assignees[i] = dataset.getUsers().get(i).username;
+        }
+    }
+
+    void export(String file) {
+        LOG.info("Exporting the dataset to " + file + "...");
+        final long written;
+        try (FileChannel channel = FileChannel.open(Paths.get(file),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             OutputStream out = Channels.newOutputStream(channel)) {
+            written = JsonWriter.write(this::writeImport, out);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write " + file, e);
+        }
+        LOG.info("Exported the dataset to " + file + ", " + written + " bytes");
+    }
+
+    private void writeImport(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        writer.name("users").beginArray();
+        for (UserInfo userInfo : dataset.getUsers()) {
+            writer.beginObject()
+                    .name("name").value(userInfo.username)
+                    .name("fullname").value(userInfo.fullName)
+                    .name("email").value(userInfo.username + "@example.com")
+                    .name("active").value(true)
+                    .endObject();
+        }
+        writer.endArray();
+
+        List<ProjectInfo> projects = dataset.getProjects();
+        writer.name("projects").beginArray();
+        for (ProjectInfo projectInfo : projects) {
+            writeProject(writer, projectInfo);
+        }
+        writer.endArray();
+
+        writer.name("links").beginArray();
+        for (int project = 0; project < projects.size(); project++) {
+            String projectKey = projects.get(project).getKey();
+            for (int issue = 0; issue < projects.get(project).getNumberIssues(); issue++) {
+                String issueKey = getIssueKey(projectKey, issue);
+                try {
+                    linkGraph.forEachLink(project, issue, (type, linkedProject, linkedIssue) -> {
+                        try {
+                            // The source is the outward issue, as when we link them
+                            writer.beginObject()
+                                    .name("name").value(type)
+                                    .name("sourceId").value(issueKey)
+                                    .name("destinationId").value(getIssueKey(projects.get(linkedProject).getKey(), linkedIssue))
+                                    .endObject();
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+            }
+        }
+        writer.endArray();
+        writer.endObject();
+    }
+
+    private void writeProject(JsonWriter writer, ProjectInfo projectInfo) throws IOException {
+        LOG.fine(() -> "Exporting project " + projectInfo.getKey() + "...");
+        writer.beginObject()
+                .name("key").value(projectInfo.getKey())
+                .name("name").value(projectInfo.getName())
+                .name("type").value("software")
+                .name("lead").value("admin");
+        if (projectInfo.getVersions().length > 0) {
+            writer.name("versions").beginArray();
+            for (String version : projectInfo.getVersions()) {
+                writer.beginObject().name("name").value(version).endObject();
+            }
+            writer.endArray();
+        }
+        writeNames(writer, "components", projectInfo.getComponents());
+
+        IssueDistributions distributions = dataset.getIssueDistributions();
+        writer.name("issues").beginArray();
+        for (int i = 0; i < projectInfo.getNumberIssues(); i++) {
+            IssueInfo issueInfo = distributions.createIssueInfo(projectInfo, assignees, i);
+            String issueKey = getIssueKey(projectInfo.getKey(), i);
+            writer.beginObject()
+                    .name("externalId").value(issueKey)
+                    .name("key").value(issueKey)
+                    .name("summary").value(issueInfo.getSummary())
+                    .name("issueType").value(issueInfo.getIssueType())
+                    .name("status").value(statuses[distributions.getState(i)])
+                    .name("priority").value(issueInfo.getPriority())
+                    .name("reporter").value(issueInfo.getReporter())
+                    .name("assignee").value(issueInfo.getAssignee());
+            writeNames(writer, "components", issueInfo.getComponents());
+            writeNames(writer, "labels", issueInfo.getLabels());
+            writer.endObject();
+        }
+        writer.endArray();
+        writer.endObject();
+    }
+
+    private static void writeNames(JsonWriter writer, String name, String[] values) throws IOException {
+        if (values.length > 0) {
+            writer.name(name).beginArray();
+            for (String value : values) {
+                writer.value(value);
+            }
+            writer.endArray();
+        }
+    }
+
+    /**
+     * Jira numbers the issues of a new project from 1, in the order they are created.
+     */
+    private static String getIssueKey(String projectKey, int issueIndex) {
+        return projectKey + "-" + (issueIndex + 1);
+    }
+}
@@ -0,0 +1,184 @@
+package org.overbaard.jira.populator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.ModelType;
+import org.jboss.dmr.Property;
+import org.overbaard.jira.populator.ProjectPopulator.ProjectInfo;
+import org.overbaard.jira.populator.UserPopulator.UserInfo;
+
+/**
+ * Reads a {@link Dataset} from a JSON spec file, so that the shape of the data can be changed without touching the
+ * code. For example:
+ * <pre>
+ * {
+ *     "users": {"count": 50},
+ *     "projects": [
+ *         {"key": "UP", "name": "Upstream", "issues": 1000, "versions": ["1.0.0", "2.0.0"]},
+ *         {"key": "FEAT", "name": "Feature", "issues": 500000, "versions": ["1.0.0"],
+ *          "components": ["Core", "Jira"], "labels": ["Approved", "Support"]}
+ *     ],
+ *     "issues": {
+ *         "summaries": ["Implement and test", "Figure it out"],
+ *         "types": {"Task": 3, "Story": 2, "Bug": 1},
+ *         "priorities": {"Low": 1, "Medium": 2, "High": 1},
+ *         "states": [4, 3, 2, 1]
+ *     },
+ *     "links": {"fanout": 2, "types": ["Blocks", "Relates"], "crossProject": 0.2}
+ * }
+ * </pre>
+ * The users may instead be listed, as {@code {"username": "kabir", "name": "Kabir Khan"}}. The projects may instead be
+ * generated, as {@code {"count": 100, "issues": 10000, "components": 6, "versions": 3, "labels": 5, "prefix": "GEN"}}.
+ * The issue types and priorities are weighted, and the states are the weights of each state of the workflow in order,
+ * the first being the one issues are created in; see {@link IssueDistributions}. Anything left out of {@code issues}
+ * is as in the default dataset, and if {@code links} is left out they are as the settings say. A {@code links} without
+ * a {@code fanout} means the original links to the upstream project.
+ * <p>
+ * Only the shape of the dataset is held, never its issues, so a spec for millions of issues takes no more memory than
+ * one for a handful.
+ *
+ * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
+ */
+class DatasetSpec {
+
+    private DatasetSpec() {
+    }
+
+    static Dataset read(String file) {
+        final ModelNode spec;
+        try (InputStream in = Files.newInputStream(Paths.get(file))) {
+            spec = ModelNode.fromJSONStream(in);
+        } catch (IOException | IllegalArgumentException e) {
+            throw new RuntimeException("Could not read the dataset spec " + file, e);
+        }
+        List<UserInfo> users = readUsers(spec.get("users"));
+        List<ProjectInfo> projects = readProjects(spec.get("projects"));
+        if (users.isEmpty() || projects.isEmpty()) {
+            throw new IllegalArgumentException("The dataset spec " + file + " needs at least one project and one user");
+        }
+        return new Dataset(users, projects, readIssueDistributions(spec.get("issues")),
+                readLinkGraph(spec.get("links"), projects));
+    }
+
+    private static List<UserInfo> readUsers(ModelNode users) {
+        if (users.getType() == ModelType.OBJECT) {
+            return Dataset.generateUsers(users.get("count").asInt());
+        }
+        List<UserInfo> userInfos = new ArrayList<>();
+        if (users.isDefined()) {
+            for (ModelNode user : users.asList()) {
+                userInfos.add(new UserInfo(user.require("username").asString(), user.require("name").asString()));
+            }
+        }
+        return userInfos;
+    }
+
+    private static List<ProjectInfo> readProjects(ModelNode projects) {
+        if (projects.getType() == ModelType.OBJECT) {
+            return Dataset.generateProjects(
+                    projects.get("count").asInt(Dataset.DEFAULT_PROJECTS),
+                    projects.get("issues").asInt(Dataset.DEFAULT_ISSUES_PER_PROJECT),
+                    projects.get("components").asInt(Dataset.DEFAULT_COMPONENTS_PER_PROJECT),
+                    projects.get("versions").asInt(Dataset.DEFAULT_VERSIONS_PER_PROJECT),
+                    projects.get("labels").asInt(Dataset.DEFAULT_LABELS_PER_PROJECT),
+                    readString(projects.get("prefix"), Dataset.DEFAULT_PROJECT_PREFIX));
+        }
+        List<ProjectInfo> projectInfos = new ArrayList<>();
+        if (projects.isDefined()) {
+            for (ModelNode project : projects.asList()) {
+                String key = project.require("key").asString();
+                projectInfos.add(new ProjectInfo(key,
+                        readString(project.get("name"), key),
+                        readStrings(project.get("versions"), new String[0]),
+                        readStrings(project.get("components"), new String[0]),
+                        readStrings(project.get("labels"), new String[0]),
+                        project.get("issues").asInt(Dataset.DEFAULT_ISSUES_PER_PROJECT)));
+            }
+        }
+        return projectInfos;
+    }
+
+    private static IssueDistributions readIssueDistributions(ModelNode issues) {
+        if (!issues.isDefined()) {
+            return IssueDistributions.DEFAULT;
+        }
+        String[] summaries = readStrings(issues.get("summaries"), IssueDistributions.DEFAULT_SUMMARIES);
+
+        String[] issueTypes = IssueDistributions.DEFAULT_ISSUE_TYPES;
+        int[] issueTypeWeights = IssueDistributions.equalWeights(issueTypes);
+        if (issues.hasDefined("types")) {
+            List<Property> weighted = issues.get("types").asPropertyList();
+            issueTypes = names(weighted);
+            issueTypeWeights = weights(weighted);
+        }
+
+        String[] priorities = IssueDistributions.DEFAULT_PRIORITIES;
+        int[] priorityWeights = IssueDistributions.equalWeights(priorities);
+        if (issues.hasDefined("priorities")) {
+            List<Property> weighted = issues.get("priorities").asPropertyList();
+            priorities = names(weighted);
+            priorityWeights = weights(weighted);
+        }
+
+        int[] stateWeights = IssueDistributions.DEFAULT_STATE_WEIGHTS;
+        if (issues.hasDefined("states")) {
+            List<ModelNode> states = issues.get("states").asList();
+            stateWeights = new int[states.size()];
+            for (int i = 0; i < stateWeights.length; i++) {
+                stateWeights[i] = states.get(i).asInt();
+            }
+        }
+        return new IssueDistributions(summaries, issueTypes, issueTypeWeights, priorities, priorityWeights, stateWeights);
+    }
+
+    private static LinkGraph readLinkGraph(ModelNode links, List<ProjectInfo> projects) {
+        if (!links.isDefined()) {
+            return null;
+        }
+        if (!links.hasDefined("fanout")) {
+            return LinkGraph.createDefault(projects);
+        }
+        return LinkGraph.generate(projects,
+                readStrings(links.get("types"), new String[]{LinkGraph.DEFAULT_TYPES}),
+                links.get("fanout").asInt(),
+                links.get("crossProject").asDouble(LinkGraph.DEFAULT_CROSS_PROJECT));
+    }
+
+    private static String readString(ModelNode node, String defaultValue) {
+        return node.isDefined() ? node.asString() : defaultValue;
+    }
+
+    private static String[] readStrings(ModelNode node, String[] defaultValue) {
+        if (!node.isDefined()) {
+            return defaultValue;
+        }
+        List<ModelNode> list = node.asList();
+        String[] values = new String[list.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = list.get(i).asString();
+        }
+        return values;
+    }
+
+    private static String[] names(List<Property> weighted) {
+        String[] names = new String[weighted.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = weighted.get(i).getName();
+        }
+        return names;
+    }
+
+    private static int[] weights(List<Property> weighted) {
+        int[] weights = new int[weighted.size()];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = weighted.get(i).getValue().asInt();
+        }
+        return weights;
+    }
+}
@@ -0,0 +1,201 @@
+package org.overbaard.jira.populator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import javax.ws.rs.core.UriBuilder;
+
+/**
+ * The issues already in a project, found with a paged JQL search so that a reconciling run only has to create and
+ * transition what is missing. Issues are matched to the dataset by the index we store in an issue property when
+ * creating them; issues without it are left alone.
+ *
+ * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
+ */
+class ExistingIssues {
+    private static final Logger LOG = Logger.getLogger(ExistingIssues.class.getName());
+
+    // The most issues Jira returns in one page of a search
+    private static final int SEARCH_PAGE_SIZE = 1000;
+
+    static final ExistingIssues NONE = new ExistingIssues();
+
+    private final Map<Integer, String> issueKeys = new HashMap<>();
+    private final Map<String, String> statuses = new HashMap<>();
+    private final Map<String, String> statusIds = new HashMap<>();
+    private final Set<String> links = new HashSet<>();
+
+    private ExistingIssues() {
+    }
+
+    static ExistingIssues load(RestClientFactory factory, String projectKey) {
+        LOG.info("Finding the existing issues of project " + projectKey + "...");
+        ExistingIssues existing = new ExistingIssues();
+        int startAt = 0;
+        while (true) {
+            UriBuilder builder = factory.getJiraRestUriBuilder();
+            builder.path("search")
+                    // Without an order the pages could overlap or miss issues
+                    .queryParam("jql", "project = \"" + projectKey + "\" ORDER BY key")
+                    .queryParam("fields", "status,issuelinks")
+                    .queryParam("properties", IssuePopulator.INDEX_PROPERTY)
+                    .queryParam("startAt", startAt)
+                    .queryParam("maxResults", SEARCH_PAGE_SIZE);
+            int read = factory.get(builder, existing::readPage);
+            if (read == 0) {
+                // Jira may cap the page at less than we asked for, so only an empty one tells us we are done
+                break;
+            }
+            startAt += read;
+        }
+        LOG.info("Found " + existing.issueKeys.size() + " existing issues of project " + projectKey);
+        return existing;
+    }
+
+    /**
+     * @return the keys of the issues we created, by their index
+     */
+    Map<Integer, String> getIssueKeys() {
+        return issueKeys;
+    }
+
+    /**
+     * @return the name of the status the issue is in, or {@code null} if it is not one of ours
+     */
+    String getStatus(String issueKey) {
+        return statuses.get(issueKey);
+    }
+
+    /**
+     * @return the id of the status the issue is in, or {@code null} if it is not one of ours
+     */
+    String getStatusId(String issueKey) {
+        return statusIds.get(issueKey);
+    }
+
+    /**
+     * @return all the pairs of issues linked to ours, in either direction, as made by {@link #linkKey(String, String)}
+     */
+    Set<String> getLinks() {
+        return links;
+    }
+
+    /**
+     * Identifies a pair of linked issues whichever way round they are.
+     */
+    static String linkKey(String issueKey, String otherIssueKey) {
+        return issueKey.compareTo(otherIssueKey) < 0 ? issueKey + "\t" + otherIssueKey : otherIssueKey + "\t" + issueKey;
+    }
+
+    /**
+     * @return the number of issues in the page
+     */
+    private int readPage(JsonReader reader) throws IOException {
+        reader.beginObject();
+        if (!reader.findName("issues")) {
+            throw new IOException("The response has no issues");
+        }
+        int read = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            readIssue(reader);
+            read++;
+        }
+        return read;
+    }
+
+    private void readIssue(JsonReader reader) throws IOException {
+        String key = null;
+        Integer index = null;
+        String status = null;
+        String statusId = null;
+        List<String> linked = new ArrayList<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "key":
+                    key = reader.nextString();
+                    break;
+                case "fields":
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        switch (reader.nextName()) {
+                            case "status":
+                                reader.beginObject();
+                                while (reader.hasNext()) {
+                                    String field = reader.nextName();
+                                    if (field.equals("id")) {
+                                        statusId = reader.nextString();
+                                    } else if (field.equals("name")) {
+                                        status = reader.nextString();
+                                    } else {
+                                        reader.skipValue();
+                                    }
+                                }
+                                reader.endObject();
+                                break;
+                            case "issuelinks":
+                                reader.beginArray();
+                                while (reader.hasNext()) {
+                                    readLinkedIssue(reader, linked);
+                                }
+                                reader.endArray();
+                                break;
+                            default:
+                                reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                    break;
+                case "properties":
+                    reader.beginObject();
+                    if (reader.findName(IssuePopulator.INDEX_PROPERTY)) {
+                        reader.beginObject();
+                        if (reader.findName("index")) {
+                            index = reader.nextInt();
+                            reader.skipRestOfObject();
+                        }
+                        reader.skipRestOfObject();
+                    }
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (key == null) {
+            throw new IOException("An issue has no key");
+        }
+        if (index != null) {
+            issueKeys.put(index, key);
+            statuses.put(key, status);
+            statusIds.put(key, statusId);
+        }
+        for (String linkedKey : linked) {
+            links.add(linkKey(key, linkedKey));
+        }
+    }
+
+    private static void readLinkedIssue(JsonReader reader, List<String> linked) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("inwardIssue") || name.equals("outwardIssue")) {
+                reader.beginObject();
+                if (reader.findName("key")) {
+                    linked.add(reader.nextString());
+                    reader.skipRestOfObject();
+                }
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+}
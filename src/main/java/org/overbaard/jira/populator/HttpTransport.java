@@ -0,0 +1,123 @@
+package org.overbaard.jira.populator;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.jboss.resteasy.client.jaxrs.ClientHttpEngine;
+
+/**
+ * The HTTP connections {@link RestClientFactory} sends its requests over. For blocking requests the transport
+ * provides the engine the JAX-RS client runs on, so the request methods, filters and entity writers work the same
+ * whichever one is used. Asynchronous requests go through {@link #sendAsync}, which must not tie up a thread while
+ * the request is in flight.
+ *
+ * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
+ */
+interface HttpTransport extends AutoCloseable {
+    /**
+     * HTTP/1.1 over a pool of connections, each of which carries one request at a time. The default.
+     */
+    String APACHE = "apache";
+    /**
+     * HTTP/2, which multiplexes concurrent requests as streams over a single connection. Needs Java 11.
+     */
+    String HTTP2 = "http2";
+
+    int DEFAULT_MAX_STREAMS = 100;
+
+    ClientHttpEngine getEngine();
+
+    /**
+     * Sends a request without blocking. The response body is read into memory.
+     *
+     * @param body the request body, or {@code null} for none
+     */
+    CompletableFuture<BufferedResponse> sendAsync(String method, URI uri, Map<String, String> headers, byte[] body);
+
+    /**
+     * @return how many requests the transport can have in flight at once without queueing them
+     */
+    int getMaxConcurrentRequests();
+
+    @Override
+    void close();
+
+    /**
+     * @param maxConnections the size of the {@link #APACHE} connection pool
+     * @param maxConnectionsPerRoute how many connections of the pool may go to one host
+     * @param idleTimeoutSeconds how long an idle {@link #APACHE} connection is kept alive for
+     * @param maxStreams how many concurrent {@link #HTTP2} streams to keep in flight
+     */
+    static HttpTransport create(String name, int maxConnections, int maxConnectionsPerRoute, int idleTimeoutSeconds,
+                                int maxStreams) {
+        switch (name) {
+            case APACHE:
+                return new ApacheHttpTransport(maxConnections, maxConnectionsPerRoute, idleTimeoutSeconds);
+            case HTTP2:
+                return load("org.overbaard.jira.populator.Http2Transport", maxStreams);
+            default:
+                throw new IllegalArgumentException("Unknown HTTP transport '" + name + "', use " + APACHE + " or " + HTTP2);
+        }
+    }
+
+    /**
+     * The HTTP/2 transport uses the java.net.http client, so it is only compiled when building on Java 11 or later.
+     * Load it by name so that the rest of the populator still builds and runs on Java 8.
+     */
+    static HttpTransport load(String className, int maxStreams) {
+        final Class<?> clazz;
+        try {
+            clazz = Class.forName(className, true, HttpTransport.class.getClassLoader());
+        } catch (ClassNotFoundException | LinkageError e) {
+            throw new RuntimeException("The " + HTTP2 + " transport needs the populator to be built and run on Java 11 or later", e);
+        }
+        try {
+            Constructor<?> constructor = clazz.getDeclaredConstructor(int.class);
+            constructor.setAccessible(true);
+            return (HttpTransport) constructor.newInstance(maxStreams);
+        } catch (InvocationTargetException e) {
+            throw new RuntimeException("Could not create the " + HTTP2 + " transport", e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("Could not create the " + HTTP2 + " transport", e);
+        }
+    }
+
+    /**
+     * A response which has been read in full.
+     */
+    class BufferedResponse {
+        private static final byte[] NO_BODY = new byte[0];
+
+        private final int status;
+        private final byte[] body;
+        private final String retryAfter;
+
+        BufferedResponse(int status, byte[] body, String retryAfter) {
+            this.status = status;
+            this.body = body == null ? NO_BODY : body;
+            this.retryAfter = retryAfter;
+        }
+
+        int getStatus() {
+            return status;
+        }
+
+        boolean isSuccessful() {
+            return status >= 200 && status < 300;
+        }
+
+        byte[] getBody() {
+            return body;
+        }
+
+        /**
+         * @return the {@code Retry-After} header, or {@code null} if there was none
+         */
+        String getRetryAfter() {
+            return retryAfter;
+        }
+    }
+}
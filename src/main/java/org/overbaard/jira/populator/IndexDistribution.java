@@ -0,0 +1,74 @@
+package org.overbaard.jira.populator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Spreads values over issues (and other generated entities) based purely on their index, so that every run with the
+ * same settings produces exactly the same data.
+ *
+ * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
+ */
+class IndexDistribution {
+
+    private IndexDistribution() {
+    }
+
+    static String getFieldFromIndex(String[] values, int index) {
+        int i = index % values.length;
+        return values[i];
+    }
+
+    /**
+     * Picks nothing for every {@code none}th index, two values for every {@code multiple}th index, and one value
+     * otherwise.
+     */
+    static String[] getPossiblyNoneOrMultiple(String[] values, int index, int none, int multiple) {
+        List<String> ret = new ArrayList<>();
+        if (values != null && values.length > 0) {
+            if (index % none == 0) {
+                // Skip entries for some
+            } else {
+                ret.add(getFieldFromIndex(values, index));
+                if (index % multiple == 0) {
+                    //Add another entry for every few of these
+                    ret.add(getFieldFromIndex(values, (index / multiple) + 1));
+                }
+            }
+        }
+        return ret.toArray(new String[ret.size()]);
+    }
+
+    /**
+     * Expands weights into a cycle of their positions for {@link #getFieldFromIndex} style stepping, so that each
+     * position comes up in proportion to its weight. The positions are spread out as evenly as possible rather than
+     * repeated in runs, and when all the weights are 1 the cycle is just the positions in order.
+     */
+    static int[] getWeightedCycle(int[] weights) {
+        int total = 0;
+        for (int weight : weights) {
+            if (weight < 0) {
+                throw new IllegalArgumentException("Weights may not be negative: " + weight);
+            }
+            total += weight;
+        }
+        if (total == 0) {
+            throw new IllegalArgumentException("Need at least one weight above 0");
+        }
+        // Smooth weighted round robin, which each time picks whichever position is furthest behind its share
+        int[] cycle = new int[total];
+        int[] current = new int[weights.length];
+        for (int i = 0; i < total; i++) {
+            int picked = 0;
+            for (int j = 0; j < weights.length; j++) {
+                current[j] += weights[j];
+                if (current[j] > current[picked]) {
+                    picked = j;
+                }
+            }
+            current[picked] -= total;
+            cycle[i] = picked;
+        }
+        return cycle;
+    }
+}
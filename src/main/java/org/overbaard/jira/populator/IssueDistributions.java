@@ -0,0 +1,116 @@
+package org.overbaard.jira.populator;
+
+import static org.overbaard.jira.populator.IndexDistribution.getFieldFromIndex;
+import static org.overbaard.jira.populator.IndexDistribution.getPossiblyNoneOrMultiple;
+import static org.overbaard.jira.populator.IndexDistribution.getWeightedCycle;
+
+import org.overbaard.jira.populator.IssuePopulator.IssueInfo;
+import org.overbaard.jira.populator.ProjectPopulator.ProjectInfo;
+
+/**
+ * How the field values, and the workflow states, are spread over the issues of a project. Everything about an issue
+ * is worked out from its index alone, so the {@link IssueInfo}s are made as the issues get sent rather than being held
+ * for the whole dataset.
+ * <p>
+ * Issue types, priorities and states are weighted, and step through a cycle in which each comes up in proportion to its
+ * weight. The states are the positions in the workflow, 0 being the one issues are created in, so a state of 2 means
+ * two transitions along.
+ *
+ * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
+ */
+class IssueDistributions {
+    static final String[] DEFAULT_SUMMARIES = {
+            "Implement and test",
+            "Implement, test and document",
+            "This is a necessary feature wanted by several customers all over the world",
+            "Popular demand is big for this",
+            "Figure it out"
+    };
+    // Since we're working on a fresh Jira instance we can just hardcode the issue types, priorities etc.
+    static final String[] DEFAULT_ISSUE_TYPES = {"Task", "Story", "Bug"/*, "Epic"*/}; // Epic is a bit weird so leave that out
+    static final String[] DEFAULT_PRIORITIES = {"Lowest", "Low", "Medium", "High", "Highest"};
+    // By default there are 4 states in the workflow
+    static final int[] DEFAULT_STATE_WEIGHTS = {1, 1, 1, 1};
+
+    static final IssueDistributions DEFAULT = new IssueDistributions(DEFAULT_SUMMARIES,
+            DEFAULT_ISSUE_TYPES, equalWeights(DEFAULT_ISSUE_TYPES), DEFAULT_PRIORITIES, equalWeights(DEFAULT_PRIORITIES),
+            DEFAULT_STATE_WEIGHTS);
+
+    private final String[] summaries;
+    private final String[] issueTypes;
+    private final String[] priorities;
+    private final int[] states;
+    private final int numberStates;
+
+    /**
+     * @param stateWeights the weight of each state of the workflow, in workflow order
+     */
+    IssueDistributions(String[] summaries, String[] issueTypes, int[] issueTypeWeights,
+                       String[] priorities, int[] priorityWeights, int[] stateWeights) {
+        if (summaries.length == 0) {
+            throw new IllegalArgumentException("Need at least one summary");
+        }
+        this.summaries = summaries;
+        this.issueTypes = expand(issueTypes, issueTypeWeights);
+        this.priorities = expand(priorities, priorityWeights);
+        this.states = getWeightedCycle(stateWeights);
+        this.numberStates = stateWeights.length;
+    }
+
+    static int[] equalWeights(String[] values) {
+        int[] weights = new int[values.length];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = 1;
+        }
+        return weights;
+    }
+
+    private static String[] expand(String[] values, int[] weights) {
+        if (values.length != weights.length) {
+            throw new IllegalArgumentException("Have " + values.length + " values but " + weights.length + " weights");
+        }
+        int[] cycle = getWeightedCycle(weights);
+        String[] expanded = new String[cycle.length];
+        for (int i = 0; i < cycle.length; i++) {
+            expanded[i] = values[cycle[i]];
+        }
+        return expanded;
+    }
+
+    IssueInfo createIssueInfo(ProjectInfo projectInfo, String[] assignees, int issueIndex) {
+        String summary = "Issue number " + (issueIndex + 1) + ". ";
+        summary += getFieldFromIndex(summaries, issueIndex);
+
+        String[] components = getPossiblyNoneOrMultiple(projectInfo.getComponents(), issueIndex, 7, 10);
+        String[] labels = getPossiblyNoneOrMultiple(projectInfo.getLabels(), issueIndex, 4, 5);
+
+        return new IssueInfo(
+                issueIndex,
+                summary,
+                getIssueType(issueIndex),
+                getFieldFromIndex(assignees, issueIndex),
+                "admin",
+                getFieldFromIndex(priorities, issueIndex),
+                components,
+                labels
+        );
+    }
+
+    String getIssueType(int issueIndex) {
+        return getFieldFromIndex(issueTypes, issueIndex);
+    }
+
+    /**
+     * @return how many states of the workflow the issues are spread over
+     */
+    int getNumberStates() {
+        return numberStates;
+    }
+
+    /**
+     * @return how many states along the workflow the issue ends up
+     */
+    int getState(int issueIndex) {
+        return states[issueIndex % states.length];
+    }
+}
@@ -0,0 +1,64 @@
+package org.overbaard.jira.populator;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * The keys of the issues of a project, by their index. Jira makes the key of an issue from the project key and a
+ * number, so only the numbers are kept, which costs four bytes an issue rather than a string each.
+ *
+ * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
+ */
+class IssueKeys {
+    private final String projectKey;
+    private final String prefix;
+    // 0 until the issue has been created
+    private final AtomicIntegerArray numbers;
+    private volatile boolean abandoned;
+
+    IssueKeys(String projectKey, int numberIssues) {
+        this.projectKey = projectKey;
+        this.prefix = projectKey + "-";
+        this.numbers = new AtomicIntegerArray(numberIssues);
+    }
+
+    int getNumberIssues() {
+        return numbers.length();
+    }
+
+    void set(int issueIndex, String issueKey) {
+        if (!issueKey.startsWith(prefix)) {
+            throw new RuntimeException("Issue " + issueKey + " is not in project " + projectKey);
+        }
+        numbers.set(issueIndex, Integer.parseInt(issueKey.substring(prefix.length())));
+    }
+
+    /**
+     * @return the number in the issue's key, or 0 if the issue has not been created
+     */
+    int getNumber(int issueIndex) {
+        return numbers.get(issueIndex);
+    }
+
+    void setNumber(int issueIndex, int number) {
+        numbers.set(issueIndex, number);
+    }
+
+    /**
+     * @return the key, or {@code null} if the issue has not been created
+     */
+    String get(int issueIndex) {
+        int number = numbers.get(issueIndex);
+        return number == 0 ? null : prefix + number;
+    }
+
+    /**
+     * Marks the issues which have not been created yet as never going to be, since the project is not populated.
+     */
+    void abandon() {
+        abandoned = true;
+    }
+
+    boolean isAbandoned() {
+        return abandoned;
+    }
+}
@@ -0,0 +1,155 @@
+package org.overbaard.jira.populator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+import org.overbaard.jira.populator.ProjectPopulator.ProjectInfo;
+
+/**
+ * Links the issues of the {@link LinkGraph} as soon as both of each pair have been created. Each link is looked at
+ * once, when the issue it goes out of is created: if the issue it goes to is already there the link is sent straight
+ * away, otherwise it waits on that issue until it gets created. Only those waiting links are held, rather than
+ * anything for every link up front.
+ * <p>
+ * When sharded, only the links between the issues of this {@link Shard} are made. The ones to the issues of other
+ * shards are left for {@link #linkAcrossShards(int)} in the merge run.
+ *
+ * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
+ */
+class IssueLinker {
+    private static final Logger LOG = Logger.getLogger(IssueLinker.class.getName());
+
+    private final LinkGraph linkGraph;
+    private final Shard shard;
+    private final List<IssueKeys> issueKeys = new ArrayList<>();
+    private final Sender sender;
+    private final TaskTracker links = new TaskTracker("links");
+    // The links waiting for an issue to be created, by the issue's number in the link graph. An issue and the links
+    // waiting for it are only ever looked at together under the map's lock for it, so none get missed
+    private final ConcurrentHashMap<Long, List<WaitingLink>> waiting = new ConcurrentHashMap<>();
+
+    IssueLinker(LinkGraph linkGraph, List<ProjectInfo> projects, Shard shard, Sender sender) {
+        this.linkGraph = linkGraph;
+        this.shard = shard;
+        this.sender = sender;
+        for (ProjectInfo projectInfo : projects) {
+            issueKeys.add(new IssueKeys(projectInfo.getKey(), projectInfo.getNumberIssues()));
+        }
+    }
+
+    IssueKeys getIssueKeys(int project) {
+        return issueKeys.get(project);
+    }
+
+    /**
+     * Sends the links between the issue and the other issues which have been created. Its key must have been set in
+     * its {@link IssueKeys} first.
+     */
+    void issueCreated(int project, int issue) {
+        String issueKey = issueKeys.get(project).get(issue);
+        List<WaitingLink> ready = waiting.remove(linkGraph.getIssueNumber(project, issue));
+        if (ready != null) {
+            for (WaitingLink link : ready) {
+                send(link.type, issueKeys.get(link.project).get(link.issue), issueKey);
+            }
+        }
+        linkGraph.forEachLink(project, issue, (type, linkedProject, linkedIssue) -> {
+            IssueKeys linkedKeys = issueKeys.get(linkedProject);
+            if (!shard.contains(linkedKeys.getNumberIssues(), linkedIssue)) {
+                return;
+            }
+            WaitingLink link = new WaitingLink(type, project, issue);
+            String[] linkedIssueKey = new String[1];
+            waiting.compute(linkGraph.getIssueNumber(linkedProject, linkedIssue), (number, list) -> {
+                linkedIssueKey[0] = linkedKeys.get(linkedIssue);
+                if (linkedIssueKey[0] != null || linkedKeys.isAbandoned()) {
+                    return list;
+                }
+                if (list == null) {
+                    list = new ArrayList<>(1);
+                }
+                list.add(link);
+                return list;
+            });
+            if (linkedIssueKey[0] != null) {
+                send(type, issueKey, linkedIssueKey[0]);
+            }
+        });
+    }
+
+    /**
+     * Drops the links waiting on the issues of a project which is not going to be populated, or not any further.
+     */
+    void abandon(int project) {
+        IssueKeys keys = issueKeys.get(project);
+        keys.abandon();
+        for (int issue = 0; issue < keys.getNumberIssues(); issue++) {
+            waiting.remove(linkGraph.getIssueNumber(project, issue));
+        }
+    }
+
+    /**
+     * Sends the links between the issues created by different shards, once the keys of all the shards have been read
+     * into the {@link IssueKeys}. The links within each shard were made by the shard.
+     */
+    void linkAcrossShards(int shardCount) {
+        long missing = 0;
+        for (int project = 0; project < issueKeys.size(); project++) {
+            IssueKeys keys = issueKeys.get(project);
+            for (int issue = 0; issue < keys.getNumberIssues(); issue++) {
+                int owner = Shard.getOwner(keys.getNumberIssues(), issue, shardCount);
+                String issueKey = keys.get(issue);
+                long[] skipped = new long[1];
+                linkGraph.forEachLink(project, issue, (type, linkedProject, linkedIssue) -> {
+                    IssueKeys linkedKeys = issueKeys.get(linkedProject);
+                    if (Shard.getOwner(linkedKeys.getNumberIssues(), linkedIssue, shardCount) == owner) {
+                        return;
+                    }
+                    String linkedIssueKey = linkedKeys.get(linkedIssue);
+                    if (issueKey == null || linkedIssueKey == null) {
+                        skipped[0]++;
+                        return;
+                    }
+                    send(type, issueKey, linkedIssueKey);
+                });
+                missing += skipped[0];
+            }
+        }
+        if (missing > 0) {
+            LOG.warning(missing + " links across the shards were not made, since one of their issues was not created");
+        }
+    }
+
+    private void send(String type, String issueKey, String linkedIssueKey) {
+        links.track(sender.link(type, issueKey, linkedIssueKey));
+    }
+
+    /**
+     * Waits for all the links which have been sent.
+     */
+    void await() {
+        links.await();
+    }
+
+    interface Sender {
+        /**
+         * @return completes once the link has been made
+         */
+        CompletableFuture<Void> link(String type, String issueKey, String linkedIssueKey);
+    }
+
+    private static class WaitingLink {
+        private final String type;
+        private final int project;
+        private final int issue;
+
+        WaitingLink(String type, int project, int issue) {
+            this.type = type;
+            this.project = project;
+            this.issue = issue;
+        }
+    }
+}
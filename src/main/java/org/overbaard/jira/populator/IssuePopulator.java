@@ -1,51 +1,148 @@
 package org.overbaard.jira.populator;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
 
-import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriBuilder;
 
-import org.jboss.dmr.ModelNode;
 import org.overbaard.jira.populator.ProjectPopulator.ProjectInfo;
+import org.overbaard.jira.populator.TransitionCache.Status;
+import org.overbaard.jira.populator.TransitionCache.Transition;
 
 /**
  * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
  */
 public class IssuePopulator {
+    private static final Logger LOG = Logger.getLogger(IssuePopulator.class.getName());
+
+    /**
+     * The issue property holding the index of the issue in its project, so that a later run can tell which of the
+     * issues in Jira are which.
+     */
+    static final String INDEX_PROPERTY = "ob.populator.index";
+
     private final RestClientFactory factory;
+    private final Pipeline pipeline;
+    private final PopulatorConfig config;
+    private final TransitionCache transitionCache;
+    private final ProgressJournal journal;
     private final int numberIssues;
+    // The range of issue indices this run creates, which is all of them unless sharded
+    private final int start;
+    private final int end;
     private final ProjectInfo projectInfo;
+    private final IssueDistributions distributions;
     private final String[] assignees;
 
-    private String[] issueKeys;
+    // The issues of all the projects get linked as soon as each pair has been created, so that later stages need
+    // not wait for the whole project
+    private final IssueLinker linker;
+    private final int projectIndex;
+    private final IssueKeys issueKeys;
+    private final TaskTracker tasks;
+    private ExistingIssues existingIssues = ExistingIssues.NONE;
+    private final AtomicBoolean warnedStatesUnknown = new AtomicBoolean();
 
-    private static final String[] SUMMARY_SNIPPETS = {
-            "Implement and test",
-            "Implement, test and document",
-            "This is a necessary feature wanted by several customers all over the world",
-            "Popular demand is big for this",
-            "Figure it out"
-    };
-
-    private IssuePopulator(RestClientFactory factory, int numberIssues, ProjectInfo projectInfo, String[] assignees) {
+    private IssuePopulator(RestClientFactory factory, Pipeline pipeline, PopulatorConfig config, TransitionCache transitionCache, ProgressJournal journal, IssueLinker linker, int projectIndex, ProjectInfo projectInfo, IssueDistributions distributions, String[] assignees) {
         this.factory = factory;
-        this.numberIssues = numberIssues;
+        this.pipeline = pipeline;
+        this.config = config;
+        this.transitionCache = transitionCache;
+        this.journal = journal;
+        this.linker = linker;
+        this.projectIndex = projectIndex;
+        this.issueKeys = linker.getIssueKeys(projectIndex);
+        this.numberIssues = projectInfo.getNumberIssues();
+        this.start = config.getShard().getStart(numberIssues);
+        this.end = config.getShard().getEnd(numberIssues);
         this.projectInfo = projectInfo;
+        this.distributions = distributions;
         this.assignees = assignees;
+        this.tasks = new TaskTracker("issues in " + projectInfo.getKey());
+        factory.getMetrics().addExpectedIssues(end - start);
+    }
+
+    /**
+     * Sets up the populator for the project with the given index in the dataset, so that the issues of other
+     * projects can be linked to its issues as they get created.
+     */
+    static IssuePopulator prepare(RestClientFactory factory, Pipeline pipeline, PopulatorConfig config, TransitionCache transitionCache, ProgressJournal journal, IssueLinker linker, int projectIndex, ProjectInfo projectInfo, IssueDistributions distributions, String[] assignees) {
+        return new IssuePopulator(factory, pipeline, config, transitionCache, journal, linker, projectIndex, projectInfo, distributions, assignees);
+    }
+
+    int getNumberIssues() {
+        return numberIssues;
+    }
+
+    /**
+     * Makes {@link #createIssues()} only create and transition the issues which are not already in Jira.
+     */
+    void reconcile(ExistingIssues existingIssues) {
+        this.existingIssues = existingIssues;
+    }
+
+    /**
+     * Called instead of {@link #createIssues()} when the project is not populated.
+     */
+    void skip() {
+        factory.getMetrics().addExpectedIssues(-(end - start));
+        linker.abandon(projectIndex);
+    }
+
+    /**
+     * Drops the links waiting for issues which will now never be created.
+     */
+    void abort() {
+        linker.abandon(projectIndex);
+    }
+
+    private void issueCreated(int issueIndex, String issueKey) {
+        recordIssue(issueIndex, issueKey, false);
+        // Hand the issue to the transition stage straight away. This blocks if that stage is full, which
+        // holds back the creates
+        tasks.track(pipeline.getTransitionStage().execute(() -> transitionIssue(issueIndex, issueKey, false)));
+        linker.issueCreated(projectIndex, issueIndex);
     }
 
-    static IssuePopulator createIssues(RestClientFactory factory, int numberIssues, ProjectInfo projectInfo, String[] assignees) {
-        IssuePopulator populator = new IssuePopulator(factory, numberIssues, projectInfo, assignees);
-        populator.createIssues(projectInfo);
-        return populator;
+    /**
+     * Like {@link #issueCreated(int, String)}, but carries on with the issue's transitions in the same asynchronous
+     * chain rather than handing them to the transition stage.
+     *
+     * @return completes once the issue has been transitioned
+     */
+    private CompletableFuture<Void> issueCreatedAsync(int issueIndex, String issueKey) {
+        recordIssue(issueIndex, issueKey, false);
+        linker.issueCreated(projectIndex, issueIndex);
+        return transitionIssueAsync(issueIndex, issueKey, false);
     }
 
-    public String[] getIssueKeys() {
-        return issueKeys;
+    /**
+     * @return whether the issue still needs transitioning
+     */
+    private boolean recordIssue(int issueIndex, String issueKey, boolean resumed) {
+        issueKeys.set(issueIndex, issueKey);
+        if (resumed) {
+            factory.getMetrics().issueResumed();
+        } else {
+            journal.issueCreated(projectInfo.getKey(), issueIndex, issueKey);
+            factory.getMetrics().issueCreated();
+        }
+        return !resumed || !journal.isTransitioned(issueKey);
     }
 
-    private void createIssues(ProjectInfo projectInfo) {
+    /**
+     * Creates and transitions the issues, returning once they are all done.
+     */
+    void createIssues() {
         //For most of these we can get away with the string variety, but project seemingly needs to be id
 
         // Run http://localhost:2990/jira/rest/api/2/issue/createmeta?projectKeys=FEAT&expand=projects.issuetypes.fields to find all the fields needed
@@ -55,115 +152,427 @@ public class IssuePopulator {
         // Parallel Tasks
         // TODO linked issues
 
-        List<String> issueKeys = new ArrayList<>();
-        for (int i = 0; i < numberIssues; i++) {
-            IssueInfo issueInfo = createIssueInfo(projectInfo, i);
-            issueKeys.add(createIssue(projectInfo, issueInfo));
+        // Only the indices of the issues are batched up here, each batch's IssueInfos are made as it gets sent. So
+        // only the issues in flight are ever held, however big the project
+        BoundedExecutor createStage = pipeline.getCreateStage();
+        Map<Integer, String> resumedKeys = journal.getIssueKeys(projectInfo.getKey());
+        Map<Integer, String> existingKeys = existingIssues.getIssueKeys();
+        int bulkSize = Math.max(config.getBulkSize(), 1);
+        int[] batch = new int[bulkSize];
+        int batchSize = 0;
+        // The issues an earlier run created which may still need transitioning
+        BitSet resumed = new BitSet();
+        for (int i = start; i < end; i++) {
+            String resumedKey = getResumedKey(resumedKeys, existingKeys, i);
+            if (resumedKey != null) {
+                // An earlier run created this one
+                if (recordIssue(i, resumedKey, true)) {
+                    resumed.set(i);
+                }
+                linker.issueCreated(projectIndex, i);
+                continue;
+            }
+            batch[batchSize++] = i;
+            if (batchSize == bulkSize) {
+                submitCreate(createStage, batch);
+                batch = new int[bulkSize];
+                batchSize = 0;
+            }
         }
-        this.issueKeys = issueKeys.toArray(new String[issueKeys.size()]);
+        if (batchSize > 0) {
+            submitCreate(createStage, Arrays.copyOf(batch, batchSize));
+        }
+        tasks.await();
 
-        for (int i = 0 ; i < numberIssues ; i++) {
-            transitionIssue(i, this.issueKeys[i]);
+        // Only now, once the new issues have been moved and the transitions from the status they start in are known
+        // (see getRoute()), move the ones which may be elsewhere in the workflow
+        for (int i = resumed.nextSetBit(0); i >= 0; i = resumed.nextSetBit(i + 1)) {
+            final int issueIndex = i;
+            final String issueKey = getResumedKey(resumedKeys, existingKeys, i);
+            if (config.isAsync()) {
+                tasks.track(pipeline.getAsyncStage().submit(() -> transitionIssueAsync(issueIndex, issueKey, true)));
+            } else {
+                tasks.track(pipeline.getTransitionStage().execute(() -> transitionIssue(issueIndex, issueKey, true)));
+            }
         }
+        tasks.await();
     }
 
-    private IssueInfo createIssueInfo(ProjectInfo projectInfo, int issueIndex) {
-        String summary = "Issue number " + (issueIndex + 1) + ". ";
-        summary += getFieldFromIssueIndex(SUMMARY_SNIPPETS, issueIndex);
+    private static String getResumedKey(Map<Integer, String> resumedKeys, Map<Integer, String> existingKeys, int issueIndex) {
+        return resumedKeys.containsKey(issueIndex) ? resumedKeys.get(issueIndex) : existingKeys.get(issueIndex);
+    }
 
-        String[] components = getPossiblyNoneOrMultiple(projectInfo.getComponents(), issueIndex, 7, 10);
-        String[] labels = getPossiblyNoneOrMultiple(projectInfo.getLabels(), issueIndex, 4, 5);
+    private void submitCreate(BoundedExecutor createStage, int[] issueIndices) {
+        if (config.isAsync()) {
+            submitCreateAsync(issueIndices);
+        } else if (issueIndices.length > 1) {
+            tasks.track(createStage.execute(() -> createIssuesInBulk(projectInfo, issueIndices)));
+        } else {
+            final int issueIndex = issueIndices[0];
+            tasks.track(createStage.execute(() -> {
+                IssueInfo issueInfo = distributions.createIssueInfo(projectInfo, assignees, issueIndex);
+                issueCreated(issueIndex, createIssue(projectInfo, issueInfo));
+            }));
+        }
+    }
 
-        IssueInfo info = new IssueInfo(
-                summary,
-                getFieldFromIssueIndex(projectInfo.getIssueTypes(), issueIndex),
-                getFieldFromIssueIndex(assignees, issueIndex),
-                "admin",
-                getFieldFromIssueIndex(projectInfo.getPriority(), issueIndex),
-                components,
-                labels
-        );
+    /**
+     * Starts the chain of requests to create and transition the issues. This only blocks while the async stage is
+     * full.
+     */
+    private void submitCreateAsync(int[] issueIndices) {
+        AsyncStage asyncStage = pipeline.getAsyncStage();
+        if (issueIndices.length > 1) {
+            tasks.track(asyncStage.submit(() -> createIssuesInBulkAsync(projectInfo, issueIndices)));
+        } else {
+            final int issueIndex = issueIndices[0];
+            tasks.track(asyncStage.submit(() -> {
+                IssueInfo issueInfo = distributions.createIssueInfo(projectInfo, assignees, issueIndex);
+                return createIssueAsync(projectInfo, issueInfo)
+                        .thenCompose(issueKey -> issueCreatedAsync(issueIndex, issueKey));
+            }));
+        }
+    }
 
-        return info;
+    private String createIssue(ProjectInfo projectInfo, IssueInfo issueInfo) {
+        LOG.fine(() -> "Creating issue...");
+        UriBuilder builder = factory.getJiraRestUriBuilder();
+        builder.path("issue");
+        String issueKey = factory.post(builder, writer -> writeIssuePayload(writer, projectInfo, issueInfo),
+                ResponseReader.field("key"));
+        LOG.fine(() -> "Created issue " + issueKey);
+        return issueKey;
     }
 
-    private String[] getPossiblyNoneOrMultiple(String[] values, int issueIndex, int none, int multiple) {
-        List<String> ret = new ArrayList<>();
-        if (values != null) {
-            if (issueIndex % none == 0) {
-                // Skip entries for some
-            } else {
-                ret.add(getFieldFromIssueIndex(values, issueIndex));
-                if (issueIndex % multiple == 0) {
-                    //Add another entry for every few of these
-                    ret.add(getFieldFromIssueIndex(values, (issueIndex / multiple) + 1));
-                }
+    private CompletableFuture<String> createIssueAsync(ProjectInfo projectInfo, IssueInfo issueInfo) {
+        LOG.fine(() -> "Creating issue...");
+        UriBuilder builder = factory.getJiraRestUriBuilder();
+        builder.path("issue");
+        return factory.postAsync(builder, writer -> writeIssuePayload(writer, projectInfo, issueInfo),
+                ResponseReader.field("key")).thenApply(issueKey -> {
+                    LOG.fine(() -> "Created issue " + issueKey);
+                    return issueKey;
+                });
+    }
+
+    /**
+     * Creates the issues with the given indices with a single bulk request. Jira reports the successfully created
+     * issues in request order, and the rejected ones by their position in the request, which lets us map the keys
+     * back to the issue indices. Rejected issues are retried one by one.
+     */
+    private void createIssuesInBulk(ProjectInfo projectInfo, int[] issueIndices) {
+        String range = getRange(issueIndices);
+        LOG.fine(() -> "Creating issues " + range + "...");
+        IssueInfo[] issueInfos = createIssueInfos(issueIndices);
+
+        UriBuilder builder = factory.getJiraRestUriBuilder();
+        builder.path("issue").path("bulk");
+        BulkResult result = checkBulkResult(range, issueInfos.length,
+                factory.post(builder, writeBulkPayload(projectInfo, issueInfos), IssuePopulator::readBulkResult, false));
+
+        int createdIndex = 0;
+        for (int i = 0; i < issueInfos.length; i++) {
+            if (!result.failed.contains(i)) {
+                issueCreated(issueIndices[i], result.keys.get(createdIndex++));
+            }
+        }
+        for (int i = 0; i < issueInfos.length; i++) {
+            if (result.failed.contains(i)) {
+                issueCreated(issueIndices[i], createIssue(projectInfo, issueInfos[i]));
             }
         }
-        return ret.toArray(new String[ret.size()]);
+        LOG.fine(() -> "Created issues " + range);
     }
 
-    private String getFieldFromIssueIndex(String[] values, int issueIndex) {
-        int i = issueIndex % values.length;
-        return values[i];
+    /**
+     * Like {@link #createIssuesInBulk(ProjectInfo, int[])}, but chains each issue's transitions, and the retries of
+     * the rejected ones, on to the bulk create without blocking.
+     */
+    private CompletableFuture<Void> createIssuesInBulkAsync(ProjectInfo projectInfo, int[] issueIndices) {
+        String range = getRange(issueIndices);
+        LOG.fine(() -> "Creating issues " + range + "...");
+        IssueInfo[] issueInfos = createIssueInfos(issueIndices);
+
+        UriBuilder builder = factory.getJiraRestUriBuilder();
+        builder.path("issue").path("bulk");
+        return factory.postAsync(builder, writeBulkPayload(projectInfo, issueInfos), IssuePopulator::readBulkResult, false)
+                .thenCompose(bulkResult -> {
+                    BulkResult result = checkBulkResult(range, issueInfos.length, bulkResult);
+                    List<CompletableFuture<Void>> issues = new ArrayList<>();
+                    int createdIndex = 0;
+                    for (int i = 0; i < issueInfos.length; i++) {
+                        final int issueIndex = issueIndices[i];
+                        if (result.failed.contains(i)) {
+                            issues.add(createIssueAsync(projectInfo, issueInfos[i])
+                                    .thenCompose(issueKey -> issueCreatedAsync(issueIndex, issueKey)));
+                        } else {
+                            issues.add(issueCreatedAsync(issueIndex, result.keys.get(createdIndex++)));
+                        }
+                    }
+                    return CompletableFuture.allOf(issues.toArray(new CompletableFuture<?>[0]));
+                })
+                .thenRun(() -> LOG.fine(() -> "Created issues " + range));
     }
 
-    private String createIssue(ProjectInfo projectInfo, IssueInfo issueInfo) {
-        System.out.println("Creating issue...");
-        //For most of these we can get away with the string variety, but project seemingly needs to be id
-        ModelNode issue = new ModelNode();
-        issue.get("fields", "project", "id").set(projectInfo.getId());
-        issue.get("fields", "summary").set(issueInfo.summary);
-        issue.get("fields", "issuetype", "name").set(issueInfo.issueType);
-        issue.get("fields", "assignee", "name").set(issueInfo.assignee);
-        issue.get("fields", "reporter", "name").set(issueInfo.reporter);
-        issue.get("fields", "priority", "name").set(issueInfo.priority);
+    private static String getRange(int[] issueIndices) {
+        return (issueIndices[0] + 1) + " to " + (issueIndices[issueIndices.length - 1] + 1);
+    }
 
-        for (String component : issueInfo.components) {
-            ModelNode componentEntry = new ModelNode();
-            componentEntry.get("name").set(component);
-            issue.get("fields", "components").add(componentEntry);
+    private IssueInfo[] createIssueInfos(int[] issueIndices) {
+        IssueInfo[] issueInfos = new IssueInfo[issueIndices.length];
+        for (int i = 0; i < issueIndices.length; i++) {
+            issueInfos[i] = distributions.createIssueInfo(projectInfo, assignees, issueIndices[i]);
         }
+        return issueInfos;
+    }
 
-        for (String label : issueInfo.labels) {
-            issue.get("fields", "labels").add(label);
+    private static JsonPayload writeBulkPayload(ProjectInfo projectInfo, IssueInfo[] issueInfos) {
+        return writer -> {
+            writer.beginObject().name("issueUpdates").beginArray();
+            for (IssueInfo issueInfo : issueInfos) {
+                writeIssuePayload(writer, projectInfo, issueInfo);
+            }
+            writer.endArray().endObject();
+        };
+    }
+
+    /**
+     * Checks that the keys in a bulk create result can be mapped back to the issues.
+     *
+     * @param result the result, or {@code null} if the bulk create failed
+     * @return the result, or if it failed a result with all the issues rejected so that they get created one by one
+     */
+    private static BulkResult checkBulkResult(String range, int count, BulkResult result) {
+        if (result == null) {
+            // Either nothing could be created, or the endpoint is not there (it appeared in Jira 6.0)
+            LOG.warning("Bulk create failed, creating issues " + range + " one by one");
+            result = new BulkResult();
+            for (int i = 0; i < count; i++) {
+                result.failed.add(i);
+            }
+        } else if (result.keys.size() != count - result.failed.size()) {
+            throw new RuntimeException("Could not map the keys from the bulk create of issues " + range +
+                    " back to the issues: " + result.keys.size() + " were created and " + result.failed.size() + " failed");
         }
+        return result;
+    }
 
-        UriBuilder builder = factory.getJiraRestUriBuilder();
-        builder.path("issue");
-        Response response = factory.post(builder, issue);
-        ModelNode issueNode = ModelNode.fromJSONString(response.readEntity(String.class));
-        String issueKey = issueNode.get("key").asString();
-        System.out.println("Created issue " + issueKey);
-        return issueKey;
+    /**
+     * Reads the keys of the created issues, and the positions of the failed ones, from a bulk create response.
+     */
+    static BulkResult readBulkResult(JsonReader reader) throws IOException {
+        BulkResult result = new BulkResult();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("issues") && reader.peek() == JsonReader.Token.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    reader.beginObject();
+                    if (!reader.findName("key")) {
+                        throw new IOException("A created issue has no key");
+                    }
+                    result.keys.add(reader.nextString());
+                    reader.skipRestOfObject();
+                }
+                reader.endArray();
+            } else if (name.equals("errors") && reader.peek() == JsonReader.Token.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    reader.beginObject();
+                    if (!reader.findName("failedElementNumber")) {
+                        throw new IOException("A bulk create error has no failedElementNumber");
+                    }
+                    result.failed.add(reader.nextInt());
+                    reader.skipRestOfObject();
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return result;
     }
 
-    private void transitionIssue(int issueIndex, String issueKey) {
+    static void writeIssuePayload(JsonWriter writer, ProjectInfo projectInfo, IssueInfo issueInfo) throws IOException {
+        //For most of these we can get away with the string variety, but project seemingly needs to be id
+        writer.beginObject().name("fields").beginObject();
+        writer.name("project").beginObject().name("id").value(projectInfo.getId()).endObject();
+        writer.name("summary").value(issueInfo.summary);
+        writer.reference("issuetype", "name", issueInfo.issueType);
+        writer.reference("assignee", "name", issueInfo.assignee);
+        writer.reference("reporter", "name", issueInfo.reporter);
+        writer.reference("priority", "name", issueInfo.priority);
 
-        UriBuilder builder = factory.getJiraRestUriBuilder();
-        builder.path("issue").path(issueKey).path("transitions");
-        Response response = factory.get(builder, true);
-        List<ModelNode> transitions = ModelNode.fromJSONString(response.readEntity(String.class)).get("transitions").asList();
+        if (issueInfo.components.length > 0) {
+            writer.name("components").beginArray();
+            for (String component : issueInfo.components) {
+                writer.beginObject().name("name").value(component).endObject();
+            }
+            writer.endArray();
+        }
 
-        int transitionIndex = issueIndex % 4; // By default there are 4 states in the workflow
+        if (issueInfo.labels.length > 0) {
+            writer.name("labels").beginArray();
+            for (String label : issueInfo.labels) {
+                writer.value(label);
+            }
+            writer.endArray();
+        }
+        writer.endObject();
+
+        writer.name("properties").beginArray().beginObject();
+        writer.name("key").value(INDEX_PROPERTY);
+        writer.name("value").beginObject().name("index").value(issueInfo.index).endObject();
+        writer.endObject().endArray();
+        writer.endObject();
+    }
+
+    /**
+     * @param resumed whether an earlier run created the issue
+     */
+    private void transitionIssue(int issueIndex, String issueKey, boolean resumed) {
+        int transitionIndex = distributions.getState(issueIndex);
         if (transitionIndex == 0) {
             return;
         }
-        ModelNode transition = transitions.get(transitionIndex);
-        int transitionId = transition.get("id").asInt();
-        String transitionName = transition.get("name").asString();
+        String issueType = distributions.getIssueType(issueIndex);
+        Status status = getStatus(issueKey, resumed);
+        List<Transition> transitions = transitionCache.getTransitions(projectInfo.getKey(), issueType, status.getId(), issueKey);
+
+        List<String> route = getRoute(issueType, transitions, transitionIndex, status);
+        if (isInStatus(status, route)) {
+            return;
+        }
+        transitionCache.moveIssue(projectInfo.getKey(), issueType, issueKey, status.getId(), route);
+        issueTransitioned(issueKey);
+    }
+
+    private CompletableFuture<Void> transitionIssueAsync(int issueIndex, String issueKey, boolean resumed) {
+        int transitionIndex = distributions.getState(issueIndex);
+        if (transitionIndex == 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        String issueType = distributions.getIssueType(issueIndex);
+        return getStatusAsync(issueKey, resumed).thenCompose(status ->
+                transitionCache.getTransitionsAsync(projectInfo.getKey(), issueType, status.getId(), issueKey)
+                        .thenCompose(transitions -> {
+                            List<String> route = getRoute(issueType, transitions, transitionIndex, status);
+                            if (isInStatus(status, route)) {
+                                return CompletableFuture.completedFuture(null);
+                            }
+                            return transitionCache.moveIssueAsync(projectInfo.getKey(), issueType, issueKey,
+                                    status.getId(), route).thenRun(() -> issueTransitioned(issueKey));
+                        }));
+    }
+
+    /**
+     * An issue created by an earlier run may have been moved even though the journal does not say so, since the
+     * batch holding that record may have been lost. So unless the issue was found when reconciling, its status is
+     * looked up rather than assuming it is still where new issues start.
+     */
+    private Status getStatus(String issueKey, boolean resumed) {
+        if (resumed && existingIssues.getStatusId(issueKey) == null) {
+            return transitionCache.getStatus(issueKey);
+        }
+        return getKnownStatus(issueKey);
+    }
+
+    private CompletableFuture<Status> getStatusAsync(String issueKey, boolean resumed) {
+        if (resumed && existingIssues.getStatusId(issueKey) == null) {
+            return transitionCache.getStatusAsync(issueKey);
+        }
+        return CompletableFuture.completedFuture(getKnownStatus(issueKey));
+    }
+
+    /**
+     * An issue which was already in Jira may have been moved part of the way, so its transitions are looked up and
+     * cached under the status it is in rather than the one new issues start in.
+     *
+     * @return the status an issue which was already in Jira is in, or {@link Status#CREATED} for one we created
+     */
+    private Status getKnownStatus(String issueKey) {
+        String statusId = existingIssues.getStatusId(issueKey);
+        return statusId == null ? Status.CREATED : new Status(statusId, existingIssues.getStatus(issueKey));
+    }
+
+    /**
+     * @return whether an issue which was already in Jira is in the status at the end of the route
+     */
+    private static boolean isInStatus(Status status, List<String> route) {
+        return route.get(route.size() - 1).equals(status.getName());
+    }
+
+    /**
+     * The dataset's states are the statuses the transitions from the status new issues start in go to, in the order
+     * Jira lists them. For an issue elsewhere in the workflow the transitions from its own status may go to other
+     * statuses, or list them in another order, so those of the created status are used. They are only unknown when
+     * no issue of the type was created by this run, in which case the issue's own transitions are the best we have.
+     *
+     * @param transitions the transitions from the status the issue is in
+     * @param status the status the issue is in
+     * @return the names of the statuses to move the issue through, ending with the one it should end up in
+     */
+    private List<String> getRoute(String issueType, List<Transition> transitions, int transitionIndex, Status status) {
+        List<Transition> states = status == Status.CREATED ? transitions :
+                transitionCache.getCreatedTransitions(projectInfo.getKey(), issueType);
+        if (states == null) {
+            if (!warnedStatesUnknown.getAndSet(true)) {
+                LOG.warning("The statuses new " + issueType + " issues of project " + projectInfo.getKey() +
+                        " start in are not known, so the dataset states of the issues already there are taken from " +
+                        "the transitions of the status each one is in. This is only right if those list every status " +
+                        "in the same order");
+            }
+            states = transitions;
+        }
+        if (transitionIndex >= states.size()) {
+            throw new RuntimeException("The workflow of project " + projectInfo.getKey() + " only has " +
+                    states.size() + " states, but the dataset puts issues in state " + transitionIndex);
+        }
+        List<String> route = new ArrayList<>();
+        if (config.isStepwiseTransitions()) {
+            // Go through each of the states on the way. Which of them the issue can get to is only known once it has
+            // got that far, so the transitions are looked up for each state as the route is taken
+            for (int i = 1; i <= transitionIndex; i++) {
+                String toStatusName = states.get(i).getToStatusName();
+                if (toStatusName.equals(status.getName())) {
+                    // It already got this far
+                    route.clear();
+                } else {
+                    route.add(toStatusName);
+                }
+            }
+            if (route.isEmpty()) {
+                route.add(states.get(transitionIndex).getToStatusName());
+            }
+        } else {
+            route.add(states.get(transitionIndex).getToStatusName());
+        }
+        return route;
+    }
 
-        System.out.println("Moving issue " + issueKey + " to " + transitionName + "...");
-        builder = factory.getJiraRestUriBuilder();
-        builder.path("issue").path(issueKey).path("transitions");
-        ModelNode payload = new ModelNode();
-        payload.get("transition", "id").set(transitionId);
-        factory.post(builder, payload);
-        System.out.println("Moved issue " + issueKey + " to " + transitionName);
+    private void issueTransitioned(String issueKey) {
+        journal.issueTransitioned(issueKey);
+        factory.getMetrics().issueTransitioned();
     }
 
 
+    static class BulkResult {
+        private final List<String> keys = new ArrayList<>();
+        private final Set<Integer> failed = new HashSet<>();
+
+        List<String> getKeys() {
+            return keys;
+        }
+
+        Set<Integer> getFailed() {
+            return failed;
+        }
+    }
+
     static class IssueInfo {
+        private final int index;
         private final String summary;
         private final String issueType;
         private final String assignee;
@@ -172,7 +581,8 @@ public class IssuePopulator {
         private final String[] components;
         private final String[] labels;
 
-        public IssueInfo(String summary, String issueType, String assignee, String reporter, String priority, String[] components, String[] labels) {
+        public IssueInfo(int index, String summary, String issueType, String assignee, String reporter, String priority, String[] components, String[] labels) {
+            this.index = index;
             this.summary = summary;
             this.issueType = issueType;
             this.assignee = assignee;
@@ -181,5 +591,33 @@ public class IssuePopulator {
             this.components = components;
             this.labels = labels;
         }
+
+        public String getSummary() {
+            return summary;
+        }
+
+        public String getIssueType() {
+            return issueType;
+        }
+
+        public String getAssignee() {
+            return assignee;
+        }
+
+        public String getReporter() {
+            return reporter;
+        }
+
+        public String getPriority() {
+            return priority;
+        }
+
+        public String[] getComponents() {
+            return components;
+        }
+
+        public String[] getLabels() {
+            return labels;
+        }
     }
 }
@@ -4,6 +4,7 @@ package org.overbaard.jira.populator;
  * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
  */
 public class JiraPopulatorMain {
+    final static String CONFIG_FILE_PROP_NAME = "ob.setup.config";
     final static String JIRA_URL_PROP_NAME = "ob.setup.jira.url";
     final static String JIRA_URL_DEFAULT = "http://localhost:2990/jira";
     final static String JIRA_USERNAME_PROP_NAME = "ob.setup.jira.username";
@@ -11,17 +12,177 @@ public class JiraPopulatorMain {
     final static String JIRA_PASSWORD_PROP_NAME = "ob.setup.jira.password";
     final static String JIRA_PASSWORD_DEFAULT = "admin";
     final static String DELETE_EXISTING_PROJECTS_PROP_NAME = "ob.setup.delete.projects";
+    final static String DELETE_MODE_PROP_NAME = "ob.setup.delete.mode";
+    final static String RECONCILE_PROP_NAME = "ob.setup.reconcile";
+    final static String HTTP_MAX_CONNECTIONS_PROP_NAME = "ob.setup.http.max.connections";
+    final static String HTTP_MAX_CONNECTIONS_PER_ROUTE_PROP_NAME = "ob.setup.http.max.connections.per.route";
+    final static String HTTP_IDLE_TIMEOUT_PROP_NAME = "ob.setup.http.idle.timeout";
+    final static String HTTP_TRANSPORT_PROP_NAME = "ob.setup.http.transport";
+    final static String HTTP2_MAX_STREAMS_PROP_NAME = "ob.setup.http2.max.streams";
+    final static String RATE_LIMIT_PROP_NAME = "ob.setup.rate.limit";
+    final static String RATE_BURST_PROP_NAME = "ob.setup.rate.burst";
+    final static String RETRY_MAX_PROP_NAME = "ob.setup.retry.max";
+    final static String RETRY_BASE_DELAY_PROP_NAME = "ob.setup.retry.base.delay";
+    final static String RETRY_MAX_DELAY_PROP_NAME = "ob.setup.retry.max.delay";
+    final static String LATENCY_TOLERANCE_PROP_NAME = "ob.setup.latency.tolerance";
+    final static String CONCURRENCY_PROP_NAME = "ob.setup.concurrency";
+    final static String PROJECT_CONCURRENCY_PROP_NAME = "ob.setup.concurrency.projects";
+    final static String ASYNC_PROP_NAME = "ob.setup.async";
+    final static String ASYNC_CONCURRENCY_PROP_NAME = "ob.setup.async.concurrency";
+    final static String BULK_SIZE_PROP_NAME = "ob.setup.bulk.size";
+    // Jira's default limit for jira.bulk.create.max.issues.per.request
+    final static int BULK_SIZE_DEFAULT = 50;
+    final static String STEPWISE_TRANSITIONS_PROP_NAME = "ob.setup.transitions.stepwise";
+    final static String JOURNAL_PROP_NAME = "ob.setup.journal";
+    final static String JOURNAL_SYNC_RECORDS_PROP_NAME = "ob.setup.journal.sync.records";
+    final static String JOURNAL_SYNC_INTERVAL_PROP_NAME = "ob.setup.journal.sync.interval";
+    final static String DATASET_SPEC_PROP_NAME = "ob.setup.dataset.spec";
+    final static String DATASET_PROJECTS_PROP_NAME = "ob.setup.dataset.projects";
+    final static String DATASET_ISSUES_PROP_NAME = "ob.setup.dataset.issues";
+    final static String DATASET_USERS_PROP_NAME = "ob.setup.dataset.users";
+    final static String DATASET_COMPONENTS_PROP_NAME = "ob.setup.dataset.components";
+    final static String DATASET_VERSIONS_PROP_NAME = "ob.setup.dataset.versions";
+    final static String DATASET_LABELS_PROP_NAME = "ob.setup.dataset.labels";
+    final static String DATASET_PROJECT_PREFIX_PROP_NAME = "ob.setup.dataset.project.prefix";
+    final static String DATASET_LINK_FANOUT_PROP_NAME = "ob.setup.dataset.link.fanout";
+    final static String DATASET_LINK_TYPES_PROP_NAME = "ob.setup.dataset.link.types";
+    final static String DATASET_LINK_CROSS_PROJECT_PROP_NAME = "ob.setup.dataset.link.cross.project";
+    final static String EXPORT_PROP_NAME = "ob.setup.export";
+    final static String EXPORT_STATUSES_PROP_NAME = "ob.setup.export.statuses";
+    final static String RECORD_PROP_NAME = "ob.setup.record";
+    final static String REPLAY_PROP_NAME = "ob.setup.replay";
+    final static String REPLAY_SPEED_PROP_NAME = "ob.setup.replay.speed";
+    final static String REPLAY_CONCURRENCY_PROP_NAME = "ob.setup.replay.concurrency";
+    final static String SHARD_INDEX_PROP_NAME = "ob.setup.shard.index";
+    final static String SHARD_COUNT_PROP_NAME = "ob.setup.shard.count";
+    final static String SHARD_KEYS_PROP_NAME = "ob.setup.shard.keys";
+    final static String SHARD_MERGE_PROP_NAME = "ob.setup.shard.merge";
+    final static String SHARD_WAIT_PROP_NAME = "ob.setup.shard.wait";
+    final static String SHARD_RUN_PROP_NAME = "ob.setup.shard.run";
+    final static String ACTIVITY_RATE_PROP_NAME = "ob.setup.activity.rate";
+    final static String ACTIVITY_DURATION_PROP_NAME = "ob.setup.activity.duration";
+    final static String ACTIVITY_CONCURRENCY_PROP_NAME = "ob.setup.activity.concurrency";
+    final static String ACTIVITY_MIX_PROP_NAME = "ob.setup.activity.mix";
+    final static String ACTIVITY_SEED_PROP_NAME = "ob.setup.activity.seed";
+    final static String ACTIVITY_REPORT_PROP_NAME = "ob.setup.activity.report";
+    final static String LOG_LEVEL_PROP_NAME = "ob.setup.log.level";
+    final static String PROGRESS_INTERVAL_PROP_NAME = "ob.setup.progress.interval";
+    final static String METRICS_REPORT_PROP_NAME = "ob.setup.metrics.report";
 
     public static void main(String[] args) throws Exception {
-        final String jiraUrl = System.getProperty(JIRA_URL_PROP_NAME, JIRA_URL_DEFAULT);
-        final String username = System.getProperty(JIRA_USERNAME_PROP_NAME, JIRA_USERNAME_DEFAULT);
-        final String password = System.getProperty(JIRA_PASSWORD_PROP_NAME, JIRA_PASSWORD_DEFAULT);
+        final PopulatorConfig config = PopulatorConfig.fromSystemProperties();
+        config.configureLogging();
+        if (config.getExportFile() != null) {
+            export(config);
+        } else if (config.getReplayFile() != null) {
+            replay(config);
+        } else if (config.getShardMergeFiles() != null) {
+            mergeShards(config);
+        } else {
+            populate(config);
+        }
+    }
+
+    /**
+     * Writes the dataset the config says to a Jira import file, without going near Jira.
+     */
+    static void export(PopulatorConfig config) {
+        final Dataset dataset = config.createDataset();
+        config.createExporter(dataset).export(config.getExportFile());
+    }
+
+    /**
+     * Keeps changing the issues which were just populated, for as long as the config says.
+     */
+    private static void simulateActivity(PopulatorConfig config, RestClientFactory factory, Dataset dataset,
+                                         ProjectPopulator projectPopulator, String[] users) {
+        IssueKeys[] issueKeys = new IssueKeys[dataset.getProjects().size()];
+        for (int i = 0; i < issueKeys.length; i++) {
+            issueKeys[i] = projectPopulator.getIssueKeys(i);
+        }
+        try (ActivityMetrics metrics = config.createActivityMetrics()) {
+            try {
+                config.createActivitySimulator(factory, metrics, dataset, issueKeys, users).run();
+            } finally {
+                metrics.logSummary();
+                if (config.getActivityReportFile() != null) {
+                    metrics.writeReport(config.getActivityReportFile());
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends the requests recorded by an earlier run to Jira again.
+     *
+     * @return the metrics of the run
+     */
+    static RequestMetrics replay(PopulatorConfig config) {
+        try (RequestMetrics metrics = config.createRequestMetrics()) {
+            try (RestClientFactory factory = config.createRestClientFactory(metrics)) {
+                config.createReplayer(factory).replay(config.getReplayFile());
+            } finally {
+                metrics.logSummary();
+                if (config.getMetricsReportFile() != null) {
+                    metrics.writeReport(config.getMetricsReportFile());
+                }
+            }
+            return metrics;
+        }
+    }
+
+    /**
+     * Links the issues populated by the shards of a sharded run, which each shard could not link by itself.
+     *
+     * @return the metrics of the run
+     */
+    static RequestMetrics mergeShards(PopulatorConfig config) {
+        final Dataset dataset = config.createDataset();
+
+        try (RequestMetrics metrics = config.createRequestMetrics()) {
+            try (RestClientFactory factory = config.createRestClientFactory(metrics);
+                 Pipeline pipeline = config.createPipeline();
+                 ProgressJournal journal = config.openJournal()) {
+                ProjectPopulator.linkShards(factory, pipeline, config, journal, dataset.getProjects(),
+                        config.createLinkGraph(dataset), config.getShardMergeFiles());
+            } finally {
+                metrics.logSummary();
+                if (config.getMetricsReportFile() != null) {
+                    metrics.writeReport(config.getMetricsReportFile());
+                }
+            }
+            return metrics;
+        }
+    }
 
-        final boolean deleteExistingProjects = Boolean.getBoolean(DELETE_EXISTING_PROJECTS_PROP_NAME);
+    /**
+     * Populates Jira as the config says.
+     *
+     * @return the metrics of the run
+     */
+    static RequestMetrics populate(PopulatorConfig config) {
+        final Dataset dataset = config.createDataset();
 
-        try (RestClientFactory factory = new RestClientFactory(jiraUrl, username, password)) {
-            UserPopulator userPopulator = UserPopulator.createUsers(factory);
-            ProjectPopulator.createProjects(factory, userPopulator.getUsers(), deleteExistingProjects);
+        try (RequestMetrics metrics = config.createRequestMetrics()) {
+            try (RestClientFactory factory = config.createRestClientFactory(metrics);
+                 Pipeline pipeline = config.createPipeline();
+                 ProgressJournal journal = config.openJournal()) {
+                // Only the first shard creates the users, the others just assign issues to them
+                String[] users = config.getShard().isFirst() ?
+                        UserPopulator.createUsers(factory, pipeline, dataset.getUsers()).getUsers() :
+                        UserPopulator.getUsernames(dataset.getUsers());
+                ProjectPopulator projectPopulator = ProjectPopulator.createProjects(factory, pipeline, config, journal,
+                        dataset.getProjects(), config.createLinkGraph(dataset), dataset.getIssueDistributions(), users);
+                if (config.isSimulateActivity()) {
+                    simulateActivity(config, factory, dataset, projectPopulator, users);
+                }
+            } finally {
+                metrics.logSummary();
+                if (config.getMetricsReportFile() != null) {
+                    metrics.writeReport(config.getMetricsReportFile());
+                }
+            }
+            return metrics;
         }
     }
 
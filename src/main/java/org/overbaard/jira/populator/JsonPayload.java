@@ -0,0 +1,57 @@
+package org.overbaard.jira.populator;
+
+import java.io.IOException;
+
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.Property;
+
+/**
+ * A request body, which writes itself out as JSON when the request is sent. The payloads we send for every issue,
+ * transition and link are written directly; anything else can still be built as a {@link ModelNode} and sent via
+ * {@link #of(ModelNode)}.
+ *
+ * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
+ */
+@FunctionalInterface
+interface JsonPayload {
+    void writeTo(JsonWriter writer) throws IOException;
+
+    static JsonPayload of(ModelNode node) {
+        return writer -> write(writer, node);
+    }
+
+    static void write(JsonWriter writer, ModelNode node) throws IOException {
+        switch (node.getType()) {
+            case OBJECT:
+                writer.beginObject();
+                for (Property property : node.asPropertyList()) {
+                    writer.name(property.getName());
+                    write(writer, property.getValue());
+                }
+                writer.endObject();
+                break;
+            case LIST:
+                writer.beginArray();
+                for (ModelNode element : node.asList()) {
+                    write(writer, element);
+                }
+                writer.endArray();
+                break;
+            case UNDEFINED:
+                writer.rawValue("null");
+                break;
+            case BOOLEAN:
+                writer.value(node.asBoolean());
+                break;
+            case INT:
+            case LONG:
+            case DOUBLE:
+            case BIG_INTEGER:
+            case BIG_DECIMAL:
+                writer.rawValue(node.asString());
+                break;
+            default:
+                writer.value(node.asString());
+        }
+    }
+}
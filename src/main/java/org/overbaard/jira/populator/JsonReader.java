@@ -0,0 +1,317 @@
+package org.overbaard.jira.populator;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Pulls JSON values off a stream one at a time, so that a response can be read for the few fields we want without
+ * decoding the whole body into a String and parsing it into a tree. Input goes through a pooled buffer which is
+ * re-used from one response to the next.
+ * <p>
+ * It is lenient: commas and colons are treated like whitespace, and it is up to the caller to ask for names and
+ * values in the right order. That is plenty for reading what Jira sends us.
+ *
+ * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
+ */
+class JsonReader {
+    private static final int BUFFER_SIZE = 8192;
+    // More than the responses we usually have in flight at once
+    private static final BufferPool BUFFERS = new BufferPool(BUFFER_SIZE, 64);
+
+    enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+    }
+
+    private final InputStream in;
+    private final byte[] buffer;
+    private int position;
+    private int limit;
+    private long read;
+    private final StringBuilder chars = new StringBuilder();
+
+    private JsonReader(InputStream in, byte[] buffer) {
+        this.in = in;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Reads a value from the stream with the given reader.
+     *
+     * @param counter if not {@code null}, gets the total number of bytes in the stream. To count them the rest of
+     *                the stream is read once the reader is done with it.
+     */
+    static <T> T read(InputStream in, ResponseReader<T> reader, long[] counter) throws IOException {
+        byte[] buffer = BUFFERS.take();
+        try {
+            JsonReader json = new JsonReader(in, buffer);
+            T result = reader.read(json);
+            if (counter != null) {
+                while (json.fill()) {
+                    json.position = json.limit;
+                }
+                counter[0] = json.read;
+            }
+            return result;
+        } finally {
+            BUFFERS.release(buffer);
+        }
+    }
+
+    Token peek() throws IOException {
+        int c = skipSeparators();
+        switch (c) {
+            case -1:
+                return Token.END_DOCUMENT;
+            case '{':
+                return Token.BEGIN_OBJECT;
+            case '}':
+                return Token.END_OBJECT;
+            case '[':
+                return Token.BEGIN_ARRAY;
+            case ']':
+                return Token.END_ARRAY;
+            case '"':
+                return Token.STRING;
+            case 't':
+            case 'f':
+                return Token.BOOLEAN;
+            case 'n':
+                return Token.NULL;
+            default:
+                return Token.NUMBER;
+        }
+    }
+
+    /**
+     * @return whether there is another name in the current object or element in the current array
+     */
+    boolean hasNext() throws IOException {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    void beginObject() throws IOException {
+        expect(Token.BEGIN_OBJECT);
+    }
+
+    void endObject() throws IOException {
+        expect(Token.END_OBJECT);
+    }
+
+    void beginArray() throws IOException {
+        expect(Token.BEGIN_ARRAY);
+    }
+
+    void endArray() throws IOException {
+        expect(Token.END_ARRAY);
+    }
+
+    String nextName() throws IOException {
+        expect(Token.STRING);
+        return readString();
+    }
+
+    /**
+     * Reads a string. Numbers and booleans are returned as they were written, and {@code null} as {@code null}.
+     */
+    String nextString() throws IOException {
+        Token token = peek();
+        switch (token) {
+            case STRING:
+                position++;
+                return readString();
+            case NUMBER:
+            case BOOLEAN:
+                return readLiteral();
+            case NULL:
+                readLiteral();
+                return null;
+            default:
+                throw new IOException("Expected a value but got " + token);
+        }
+    }
+
+    /**
+     * Reads a number, which Jira may also have sent as a string.
+     */
+    int nextInt() throws IOException {
+        String value = nextString();
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IOException("Expected a number but got " + value);
+        }
+    }
+
+    /**
+     * Skips the next value, including everything in it if it is an object or an array.
+     */
+    void skipValue() throws IOException {
+        int depth = 0;
+        do {
+            Token token = peek();
+            switch (token) {
+                case BEGIN_OBJECT:
+                case BEGIN_ARRAY:
+                    position++;
+                    depth++;
+                    break;
+                case END_OBJECT:
+                case END_ARRAY:
+                    position++;
+                    depth--;
+                    break;
+                case STRING:
+                    position++;
+                    skipString();
+                    break;
+                case END_DOCUMENT:
+                    throw new IOException("Unexpected end of the document");
+                default:
+                    readLiteral();
+            }
+        } while (depth > 0);
+    }
+
+    /**
+     * Moves into the named field of the current object, skipping the fields before it.
+     *
+     * @return {@code false} if the object has no such field, in which case the object has been read to its end
+     */
+    boolean findName(String name) throws IOException {
+        while (hasNext()) {
+            if (nextName().equals(name)) {
+                return true;
+            }
+            skipValue();
+        }
+        endObject();
+        return false;
+    }
+
+    /**
+     * Skips the rest of the fields of the current object, and its end.
+     */
+    void skipRestOfObject() throws IOException {
+        while (hasNext()) {
+            skipValue();
+        }
+        endObject();
+    }
+
+    private void expect(Token expected) throws IOException {
+        Token token = peek();
+        if (token != expected) {
+            throw new IOException("Expected " + expected + " but got " + token);
+        }
+        position++;
+    }
+
+    private int skipSeparators() throws IOException {
+        while (position < limit || fill()) {
+            byte b = buffer[position];
+            if (b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == ',' || b == ':') {
+                position++;
+            } else {
+                return b;
+            }
+        }
+        return -1;
+    }
+
+    private String readLiteral() throws IOException {
+        chars.setLength(0);
+        while (position < limit || fill()) {
+            byte b = buffer[position];
+            if (b == ',' || b == '}' || b == ']' || b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == ':') {
+                break;
+            }
+            chars.append((char) b);
+            position++;
+        }
+        return chars.toString();
+    }
+
+    private String readString() throws IOException {
+        chars.setLength(0);
+        while (true) {
+            int b = nextByte();
+            if (b == '"') {
+                return chars.toString();
+            } else if (b == '\\') {
+                readEscape();
+            } else if (b < 0x80) {
+                chars.append((char) b);
+            } else if (b < 0xe0) {
+                chars.append((char) (((b & 0x1f) << 6) | (nextByte() & 0x3f)));
+            } else if (b < 0xf0) {
+                chars.append((char) (((b & 0x0f) << 12) | ((nextByte() & 0x3f) << 6) | (nextByte() & 0x3f)));
+            } else {
+                int codePoint = ((b & 0x07) << 18) | ((nextByte() & 0x3f) << 12) | ((nextByte() & 0x3f) << 6) |
+                        (nextByte() & 0x3f);
+                chars.appendCodePoint(codePoint);
+            }
+        }
+    }
+
+    private void readEscape() throws IOException {
+        int c = nextByte();
+        switch (c) {
+            case 'n':
+                chars.append('\n');
+                break;
+            case 'r':
+                chars.append('\r');
+                break;
+            case 't':
+                chars.append('\t');
+                break;
+            case 'b':
+                chars.append('\b');
+                break;
+            case 'f':
+                chars.append('\f');
+                break;
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    value = (value << 4) | Character.digit(nextByte(), 16);
+                }
+                chars.append((char) value);
+                break;
+            default:
+                // \" \\ and \/
+                chars.append((char) c);
+        }
+    }
+
+    private void skipString() throws IOException {
+        while (true) {
+            int b = nextByte();
+            if (b == '"') {
+                return;
+            } else if (b == '\\') {
+                nextByte();
+            }
+        }
+    }
+
+    private int nextByte() throws IOException {
+        if (position == limit && !fill()) {
+            throw new IOException("Unexpected end of the document");
+        }
+        return buffer[position++] & 0xff;
+    }
+
+    private boolean fill() throws IOException {
+        int count = in.read(buffer, 0, buffer.length);
+        if (count <= 0) {
+            position = limit = 0;
+            return false;
+        }
+        read += count;
+        position = 0;
+        limit = count;
+        return true;
+    }
+}
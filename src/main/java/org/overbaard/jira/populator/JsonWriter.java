@@ -0,0 +1,213 @@
+package org.overbaard.jira.populator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes compact JSON as UTF-8 straight to a stream, without building a tree or a String first. Output goes through a
+ * pooled buffer which is re-used from one request to the next, so writing a payload allocates next to nothing.
+ * <p>
+ * Commas are put in for us, so a payload is written as a sequence of calls like
+ * {@code beginObject().name("transition").beginObject().name("id").value(11).endObject().endObject()}. There is no
+ * checking that the calls make sense.
+ *
+ * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
+ */
+class JsonWriter {
+    private static final int BUFFER_SIZE = 8192;
+    // More than the requests we usually have in flight at once
+    private static final BufferPool BUFFERS = new BufferPool(BUFFER_SIZE, 64);
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int position;
+    private long written;
+    // Whether the next name or array element needs a comma in front of it
+    private boolean comma;
+
+    private JsonWriter(OutputStream out, byte[] buffer) {
+        this.out = out;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Writes the payload to the stream.
+     *
+     * @return the number of bytes written
+     */
+    static long write(JsonPayload payload, OutputStream out) throws IOException {
+        byte[] buffer = BUFFERS.take();
+        try {
+            JsonWriter writer = new JsonWriter(out, buffer);
+            payload.writeTo(writer);
+            writer.flush();
+            return writer.written;
+        } finally {
+            BUFFERS.release(buffer);
+        }
+    }
+
+    JsonWriter beginObject() throws IOException {
+        separate();
+        writeByte('{');
+        comma = false;
+        return this;
+    }
+
+    JsonWriter endObject() throws IOException {
+        writeByte('}');
+        comma = true;
+        return this;
+    }
+
+    JsonWriter beginArray() throws IOException {
+        separate();
+        writeByte('[');
+        comma = false;
+        return this;
+    }
+
+    JsonWriter endArray() throws IOException {
+        writeByte(']');
+        comma = true;
+        return this;
+    }
+
+    JsonWriter name(String name) throws IOException {
+        separate();
+        writeString(name);
+        writeByte(':');
+        comma = false;
+        return this;
+    }
+
+    JsonWriter value(String value) throws IOException {
+        separate();
+        if (value == null) {
+            writeAscii("null");
+        } else {
+            writeString(value);
+        }
+        comma = true;
+        return this;
+    }
+
+    JsonWriter value(long value) throws IOException {
+        separate();
+        writeAscii(Long.toString(value));
+        comma = true;
+        return this;
+    }
+
+    JsonWriter value(boolean value) throws IOException {
+        separate();
+        writeAscii(value ? "true" : "false");
+        comma = true;
+        return this;
+    }
+
+    /**
+     * Writes a number or literal which is already valid JSON.
+     */
+    JsonWriter rawValue(String json) throws IOException {
+        separate();
+        writeAscii(json);
+        comma = true;
+        return this;
+    }
+
+    /**
+     * Shorthand for {@code name(name).beginObject().name(field).value(value).endObject()}, the shape Jira uses to
+     * refer to most things.
+     */
+    JsonWriter reference(String name, String field, String value) throws IOException {
+        return name(name).beginObject().name(field).value(value).endObject();
+    }
+
+    private void separate() throws IOException {
+        if (comma) {
+            writeByte(',');
+            comma = false;
+        }
+    }
+
+    private void writeString(String value) throws IOException {
+        writeByte('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (c == '"' || c == '\\') {
+                    writeByte('\\');
+                    writeByte(c);
+                } else if (c < 0x20) {
+                    writeControl(c);
+                } else {
+                    writeByte(c);
+                }
+            } else if (c < 0x800) {
+                writeByte(0xc0 | (c >> 6));
+                writeByte(0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() &&
+                    Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                writeByte(0xf0 | (codePoint >> 18));
+                writeByte(0x80 | ((codePoint >> 12) & 0x3f));
+                writeByte(0x80 | ((codePoint >> 6) & 0x3f));
+                writeByte(0x80 | (codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired, so it can't be encoded
+                writeByte('?');
+            } else {
+                writeByte(0xe0 | (c >> 12));
+                writeByte(0x80 | ((c >> 6) & 0x3f));
+                writeByte(0x80 | (c & 0x3f));
+            }
+        }
+        writeByte('"');
+    }
+
+    private void writeControl(char c) throws IOException {
+        writeByte('\\');
+        switch (c) {
+            case '\n':
+                writeByte('n');
+                break;
+            case '\r':
+                writeByte('r');
+                break;
+            case '\t':
+                writeByte('t');
+                break;
+            case '\b':
+                writeByte('b');
+                break;
+            case '\f':
+                writeByte('f');
+                break;
+            default:
+                writeAscii("u00");
+                writeByte(HEX[c >> 4]);
+                writeByte(HEX[c & 0xf]);
+        }
+    }
+
+    private void writeAscii(String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            writeByte(value.charAt(i));
+        }
+    }
+
+    private void writeByte(int b) throws IOException {
+        if (position == buffer.length) {
+            flush();
+        }
+        buffer[position++] = (byte) b;
+    }
+
+    private void flush() throws IOException {
+        out.write(buffer, 0, position);
+        written += position;
+        position = 0;
+    }
+}
@@ -0,0 +1,173 @@
+package org.overbaard.jira.populator;
+
+import java.util.List;
+import java.util.Random;
+
+import org.overbaard.jira.populator.ProjectPopulator.ProjectInfo;
+
+/**
+ * The links to create between the issues of the dataset. Issues are referred to by the index of their project in the
+ * dataset and their index within that project.
+ * <p>
+ * By default this is the original pattern, where each issue of the other projects has a 'Blocks' link to the upstream
+ * issue with the same index, each project starting one issue further along. Otherwise a graph is generated with a
+ * number of links out of every issue, of randomly picked types, a proportion of which go to another project. Like the
+ * rest of the dataset, the random choices are seeded from the issue indices so that runs are reproducible.
+ * <p>
+ * Nothing is held per link: the links out of an issue are worked out again whenever they are asked for, so the graph
+ * takes the same memory however big the dataset is.
+ * <p>
+ * A pair of issues is only linked once, whichever way round and whatever the type, and never to itself. When two issues
+ * pick each other, only the link out of the one which comes first in the dataset is kept.
+ *
+ * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
+ */
+class LinkGraph {
+    static final String DEFAULT_TYPES = "Blocks";
+    static final double DEFAULT_CROSS_PROJECT = 0.5;
+
+    // How many tries to find a target before giving up on a link, for when the projects are too small to
+    // have that many distinct ones
+    private static final int ATTEMPTS_PER_LINK = 10;
+
+    private final int[] numberIssues;
+    // The number of the first issue of each project, when all the issues of the dataset are numbered in order
+    private final long[] firstIssue;
+    // null for the default pattern
+    private final String[] types;
+    private final int fanOut;
+    private final double crossProject;
+
+    private LinkGraph(List<ProjectInfo> projects, String[] types, int fanOut, double crossProject) {
+        this.numberIssues = new int[projects.size()];
+        this.firstIssue = new long[projects.size()];
+        for (int project = 0; project < projects.size(); project++) {
+            numberIssues[project] = projects.get(project).getNumberIssues();
+            if (project > 0) {
+                firstIssue[project] = firstIssue[project - 1] + numberIssues[project - 1];
+            }
+        }
+        this.types = types;
+        this.fanOut = fanOut;
+        this.crossProject = crossProject;
+    }
+
+    static LinkGraph createDefault(List<ProjectInfo> projects) {
+        return new LinkGraph(projects, null, 1, 0);
+    }
+
+    /**
+     * @param types the names of the link types to use, which must exist in Jira
+     * @param fanOut how many links to make out of each issue
+     * @param crossProject the proportion, between 0 and 1, of links which go to an issue in another project
+     */
+    static LinkGraph generate(List<ProjectInfo> projects, String[] types, int fanOut, double crossProject) {
+        if (types.length == 0) {
+            throw new IllegalArgumentException("Need at least one link type");
+        }
+        if (crossProject < 0 || crossProject > 1) {
+            throw new IllegalArgumentException("The proportion of cross-project links must be between 0 and 1: " + crossProject);
+        }
+        return new LinkGraph(projects, types, fanOut, crossProject);
+    }
+
+    /**
+     * Numbers the issues of the whole dataset, so that each issue can be identified by a single value.
+     */
+    long getIssueNumber(int project, int issue) {
+        return firstIssue[project] + issue;
+    }
+
+    /**
+     * Calls the consumer with each of the links out of an issue. The issue is sent as the outward issue of the link
+     * and the one passed to the consumer as the inward one.
+     */
+    void forEachLink(int project, int issue, LinkConsumer consumer) {
+        if (types == null) {
+            if (project > 0 && issue >= project - 1 && issue < numberIssues[0]) {
+                consumer.link(DEFAULT_TYPES, 0, issue);
+            }
+            return;
+        }
+        int[] linkedProjects = new int[fanOut];
+        int[] linkedIssues = new int[fanOut];
+        String[] linkTypes = new String[fanOut];
+        int count = pickLinks(project, issue, linkedProjects, linkedIssues, linkTypes);
+
+        long from = getIssueNumber(project, issue);
+        int[] otherProjects = new int[fanOut];
+        int[] otherIssues = new int[fanOut];
+        for (int i = 0; i < count; i++) {
+            if (getIssueNumber(linkedProjects[i], linkedIssues[i]) < from &&
+                    picks(linkedProjects[i], linkedIssues[i], project, issue, otherProjects, otherIssues)) {
+                // The other issue comes first and has already linked the two
+                continue;
+            }
+            consumer.link(linkTypes[i], linkedProjects[i], linkedIssues[i]);
+        }
+    }
+
+    /**
+     * Whether the issue picks the other issue as one of the ones to link to.
+     */
+    private boolean picks(int project, int issue, int otherProject, int otherIssue, int[] linkedProjects, int[] linkedIssues) {
+        int count = pickLinks(project, issue, linkedProjects, linkedIssues, null);
+        for (int i = 0; i < count; i++) {
+            if (linkedProjects[i] == otherProject && linkedIssues[i] == otherIssue) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Picks the distinct issues to link an issue to.
+     *
+     * @param linkTypes if not {@code null}, gets the type of each link
+     * @return how many were picked
+     */
+    private int pickLinks(int project, int issue, int[] linkedProjects, int[] linkedIssues, String[] linkTypes) {
+        Random random = new Random(((long) project << 32) | issue);
+        int made = 0;
+        for (int attempt = 0; made < fanOut && attempt < fanOut * ATTEMPTS_PER_LINK; attempt++) {
+            int linkedProject = project;
+            if (numberIssues.length > 1 && random.nextDouble() < crossProject) {
+                // Any project but this one
+                linkedProject = random.nextInt(numberIssues.length - 1);
+                if (linkedProject >= project) {
+                    linkedProject++;
+                }
+            }
+            if (numberIssues[linkedProject] == 0) {
+                continue;
+            }
+            int linkedIssue = random.nextInt(numberIssues[linkedProject]);
+            if ((linkedProject == project && linkedIssue == issue) ||
+                    contains(linkedProjects, linkedIssues, made, linkedProject, linkedIssue)) {
+                continue;
+            }
+            // Always draw the type, so that the picks are the same whether or not they are wanted
+            String type = types[random.nextInt(types.length)];
+            if (linkTypes != null) {
+                linkTypes[made] = type;
+            }
+            linkedProjects[made] = linkedProject;
+            linkedIssues[made] = linkedIssue;
+            made++;
+        }
+        return made;
+    }
+
+    private static boolean contains(int[] projects, int[] issues, int count, int project, int issue) {
+        for (int i = 0; i < count; i++) {
+            if (projects[i] == project && issues[i] == issue) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    interface LinkConsumer {
+        void link(String type, int linkedProject, int linkedIssue);
+    }
+}
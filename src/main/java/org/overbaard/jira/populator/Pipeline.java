@@ -0,0 +1,59 @@
+package org.overbaard.jira.populator;
+
+/**
+ * The stages of the populate run. Projects are populated concurrently; within a project each issue is handed to the
+ * transition stage as soon as it has been created, and each link to the link stage as soon as both its issues exist.
+ * Every stage is a {@link BoundedExecutor}, so a stage which gets ahead blocks on the next one rather than queueing up
+ * an unbounded amount of work.
+ * <p>
+ * When the requests are made asynchronously, the create, transition and link stages are not used. Instead each
+ * issue's create and transitions run as a chain of requests in the {@link AsyncStage}, and each link is sent as soon
+ * as both its issues exist.
+ *
+ * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
+ */
+class Pipeline implements AutoCloseable {
+    private final BoundedExecutor projectStage;
+    private final BoundedExecutor createStage;
+    private final BoundedExecutor transitionStage;
+    private final BoundedExecutor linkStage;
+    private final AsyncStage asyncStage;
+
+    static final int DEFAULT_PROJECT_CONCURRENCY = 3;
+
+    Pipeline(int projectConcurrency, int concurrency, int asyncConcurrency) {
+        projectStage = BoundedExecutor.create("projects", projectConcurrency, 0);
+        createStage = BoundedExecutor.create("create", concurrency);
+        transitionStage = BoundedExecutor.create("transition", concurrency);
+        linkStage = BoundedExecutor.create("link", concurrency);
+        asyncStage = new AsyncStage("async", asyncConcurrency);
+    }
+
+    BoundedExecutor getProjectStage() {
+        return projectStage;
+    }
+
+    BoundedExecutor getCreateStage() {
+        return createStage;
+    }
+
+    BoundedExecutor getTransitionStage() {
+        return transitionStage;
+    }
+
+    BoundedExecutor getLinkStage() {
+        return linkStage;
+    }
+
+    AsyncStage getAsyncStage() {
+        return asyncStage;
+    }
+
+    @Override
+    public void close() {
+        projectStage.close();
+        createStage.close();
+        transitionStage.close();
+        linkStage.close();
+    }
+}
@@ -0,0 +1,476 @@
+package org.overbaard.jira.populator;
+
+import static org.overbaard.jira.populator.JiraPopulatorMain.ACTIVITY_CONCURRENCY_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.ACTIVITY_DURATION_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.ACTIVITY_MIX_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.ACTIVITY_RATE_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.ACTIVITY_REPORT_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.ACTIVITY_SEED_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.ASYNC_CONCURRENCY_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.ASYNC_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.BULK_SIZE_DEFAULT;
+import static org.overbaard.jira.populator.JiraPopulatorMain.BULK_SIZE_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.CONCURRENCY_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.CONFIG_FILE_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.DATASET_COMPONENTS_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.DATASET_ISSUES_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.DATASET_LABELS_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.DATASET_LINK_CROSS_PROJECT_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.DATASET_LINK_FANOUT_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.DATASET_LINK_TYPES_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.DATASET_PROJECTS_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.DATASET_PROJECT_PREFIX_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.DATASET_SPEC_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.DATASET_USERS_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.DATASET_VERSIONS_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.DELETE_EXISTING_PROJECTS_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.DELETE_MODE_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.EXPORT_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.EXPORT_STATUSES_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.HTTP2_MAX_STREAMS_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.HTTP_IDLE_TIMEOUT_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.HTTP_MAX_CONNECTIONS_PER_ROUTE_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.HTTP_MAX_CONNECTIONS_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.HTTP_TRANSPORT_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.JIRA_PASSWORD_DEFAULT;
+import static org.overbaard.jira.populator.JiraPopulatorMain.JIRA_PASSWORD_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.JIRA_URL_DEFAULT;
+import static org.overbaard.jira.populator.JiraPopulatorMain.JIRA_URL_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.JIRA_USERNAME_DEFAULT;
+import static org.overbaard.jira.populator.JiraPopulatorMain.JIRA_USERNAME_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.JOURNAL_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.JOURNAL_SYNC_INTERVAL_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.JOURNAL_SYNC_RECORDS_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.LATENCY_TOLERANCE_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.LOG_LEVEL_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.METRICS_REPORT_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.PROGRESS_INTERVAL_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.PROJECT_CONCURRENCY_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.RATE_BURST_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.RATE_LIMIT_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.RECONCILE_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.RECORD_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.REPLAY_CONCURRENCY_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.REPLAY_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.REPLAY_SPEED_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.RETRY_BASE_DELAY_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.RETRY_MAX_DELAY_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.RETRY_MAX_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.SHARD_COUNT_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.SHARD_INDEX_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.SHARD_KEYS_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.SHARD_MERGE_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.SHARD_RUN_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.SHARD_WAIT_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.STEPWISE_TRANSITIONS_PROP_NAME;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.overbaard.jira.populator.ProjectPopulator.ProjectInfo;
+
+/**
+ * The settings for a populate run, read from the {@code ob.setup.*} system properties. Settings may also be put in a
+ * properties file pointed to by {@code ob.setup.config}, in which case system properties still take precedence.
+ *
+ * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
+ */
+class PopulatorConfig {
+    private final String jiraUrl;
+    private final String username;
+    private final String password;
+    private final boolean deleteExistingProjects;
+    private final String deleteMode;
+    private final boolean reconcile;
+    private final String transport;
+    private final int maxConnections;
+    private final int maxConnectionsPerRoute;
+    private final int idleTimeoutSeconds;
+    private final int maxStreams;
+    private final double rateLimit;
+    private final int rateBurst;
+    private final int maxRetries;
+    private final int retryBaseDelayMs;
+    private final int retryMaxDelayMs;
+    private final double latencyTolerance;
+    private final int concurrency;
+    private final int projectConcurrency;
+    private final boolean async;
+    private final int asyncConcurrency;
+    private final int bulkSize;
+    private final boolean stepwiseTransitions;
+    private final String journalFile;
+    private final int journalSyncRecords;
+    private final int journalSyncIntervalMs;
+    private final String logLevel;
+    private final int progressIntervalSeconds;
+    private final String metricsReportFile;
+    // When set, the dataset is written to this file for Jira's importer rather than being populated
+    private final String exportFile;
+    private final String[] exportStatuses;
+    // When set, every request sent is recorded to this file
+    private final String recordFile;
+    // When set, the requests recorded in this file are sent again rather than populating from the dataset
+    private final String replayFile;
+    private final double replaySpeed;
+    private final int replayConcurrency;
+    // Which part of the issues this run populates, by default all of them
+    private final Shard shard;
+    // When set, the keys of the shard's issues are written to this file for the merge run
+    private final String shardKeysFile;
+    // When set, the issues of the shards which wrote these key files are linked rather than populating
+    private final List<String> shardMergeFiles;
+    private final int shardWaitSeconds;
+    // Tells the other shards when the first has set up the projects for this run, rather than for an earlier one
+    private final String shardRun;
+    // Activities a second to keep changing the issues with once populated. 0 means no activity
+    private final double activityRate;
+    private final int activityDurationSeconds;
+    private final int activityConcurrency;
+    private final String activityMix;
+    private final long activitySeed;
+    private final String activityReportFile;
+    // A JSON file describing the dataset, which takes precedence over the settings below
+    private final String datasetSpec;
+    // Dataset scale. A value of -1 means use the default, hand-written, dataset
+    private final int datasetProjects;
+    private final int datasetIssues;
+    private final int datasetUsers;
+    private final int datasetComponents;
+    private final int datasetVersions;
+    private final int datasetLabels;
+    private final String datasetProjectPrefix;
+    // Links out of each issue. A value of -1 means use the original fixed pattern of links to the upstream project
+    private final int datasetLinkFanOut;
+    private final String[] datasetLinkTypes;
+    private final double datasetLinkCrossProject;
+
+    private final Properties properties;
+
+    private PopulatorConfig(Properties properties) {
+        this.properties = properties;
+        jiraUrl = getString(JIRA_URL_PROP_NAME, JIRA_URL_DEFAULT);
+        username = getString(JIRA_USERNAME_PROP_NAME, JIRA_USERNAME_DEFAULT);
+        password = getString(JIRA_PASSWORD_PROP_NAME, JIRA_PASSWORD_DEFAULT);
+        deleteExistingProjects = getBoolean(DELETE_EXISTING_PROJECTS_PROP_NAME);
+        deleteMode = getString(DELETE_MODE_PROP_NAME, ProjectTeardown.DELETE_PROJECT);
+        reconcile = getBoolean(RECONCILE_PROP_NAME);
+        transport = getString(HTTP_TRANSPORT_PROP_NAME, HttpTransport.APACHE);
+        maxConnections =
+                getInt(HTTP_MAX_CONNECTIONS_PROP_NAME, ApacheHttpTransport.DEFAULT_MAX_CONNECTIONS);
+        maxConnectionsPerRoute =
+                getInt(HTTP_MAX_CONNECTIONS_PER_ROUTE_PROP_NAME, ApacheHttpTransport.DEFAULT_MAX_CONNECTIONS_PER_ROUTE);
+        idleTimeoutSeconds =
+                getInt(HTTP_IDLE_TIMEOUT_PROP_NAME, ApacheHttpTransport.DEFAULT_IDLE_TIMEOUT_SECONDS);
+        maxStreams = getInt(HTTP2_MAX_STREAMS_PROP_NAME, HttpTransport.DEFAULT_MAX_STREAMS);
+        rateLimit = getDouble(RATE_LIMIT_PROP_NAME, RequestThrottle.DEFAULT_RATE_LIMIT);
+        rateBurst = getInt(RATE_BURST_PROP_NAME, Math.max(1, (int) rateLimit));
+        maxRetries = getInt(RETRY_MAX_PROP_NAME, RequestThrottle.DEFAULT_MAX_RETRIES);
+        retryBaseDelayMs = getInt(RETRY_BASE_DELAY_PROP_NAME, RequestThrottle.DEFAULT_BASE_DELAY_MS);
+        retryMaxDelayMs = getInt(RETRY_MAX_DELAY_PROP_NAME, RequestThrottle.DEFAULT_MAX_DELAY_MS);
+        latencyTolerance = getDouble(LATENCY_TOLERANCE_PROP_NAME, RequestThrottle.DEFAULT_LATENCY_TOLERANCE);
+        concurrency = getInt(CONCURRENCY_PROP_NAME, BoundedExecutor.DEFAULT_CONCURRENCY);
+        projectConcurrency = getInt(PROJECT_CONCURRENCY_PROP_NAME, Pipeline.DEFAULT_PROJECT_CONCURRENCY);
+        async = getBoolean(ASYNC_PROP_NAME);
+        asyncConcurrency = getInt(ASYNC_CONCURRENCY_PROP_NAME, AsyncStage.DEFAULT_CONCURRENCY);
+        bulkSize = getInt(BULK_SIZE_PROP_NAME, BULK_SIZE_DEFAULT);
+        stepwiseTransitions = getBoolean(STEPWISE_TRANSITIONS_PROP_NAME);
+        journalFile = getString(JOURNAL_PROP_NAME, null);
+        journalSyncRecords = getInt(JOURNAL_SYNC_RECORDS_PROP_NAME, ProgressJournal.DEFAULT_SYNC_RECORDS);
+        journalSyncIntervalMs = getInt(JOURNAL_SYNC_INTERVAL_PROP_NAME, ProgressJournal.DEFAULT_SYNC_INTERVAL_MS);
+        logLevel = getString(LOG_LEVEL_PROP_NAME, PopulatorLogging.DEFAULT_LEVEL);
+        progressIntervalSeconds = getInt(PROGRESS_INTERVAL_PROP_NAME, RequestMetrics.DEFAULT_PROGRESS_INTERVAL_SECONDS);
+        metricsReportFile = getString(METRICS_REPORT_PROP_NAME, null);
+        exportFile = getString(EXPORT_PROP_NAME, null);
+        exportStatuses = getString(EXPORT_STATUSES_PROP_NAME, DatasetExporter.DEFAULT_STATUSES).trim().split("\\s*,\\s*");
+        recordFile = getString(RECORD_PROP_NAME, null);
+        replayFile = getString(REPLAY_PROP_NAME, null);
+        replaySpeed = getDouble(REPLAY_SPEED_PROP_NAME, RequestReplayer.DEFAULT_SPEED);
+        replayConcurrency = getInt(REPLAY_CONCURRENCY_PROP_NAME, AsyncStage.DEFAULT_CONCURRENCY);
+        shard = new Shard(getInt(SHARD_INDEX_PROP_NAME, 0), getInt(SHARD_COUNT_PROP_NAME, 1));
+        shardKeysFile = getString(SHARD_KEYS_PROP_NAME, null);
+        String shardMerge = getString(SHARD_MERGE_PROP_NAME, null);
+        shardMergeFiles = shardMerge == null ? null : Arrays.asList(shardMerge.trim().split("\\s*,\\s*"));
+        shardWaitSeconds = getInt(SHARD_WAIT_PROP_NAME, Shard.DEFAULT_WAIT_SECONDS);
+        shardRun = getString(SHARD_RUN_PROP_NAME, null);
+        if (shard.getCount() > 1 && shardMergeFiles == null && shardRun == null) {
+            throw new IllegalArgumentException("A sharded run needs " + SHARD_RUN_PROP_NAME +
+                    " set to an id, the same for all of its shards and different from earlier runs");
+        }
+        activityRate = getDouble(ACTIVITY_RATE_PROP_NAME, ActivitySimulator.DEFAULT_RATE);
+        activityDurationSeconds = getInt(ACTIVITY_DURATION_PROP_NAME, ActivitySimulator.DEFAULT_DURATION_SECONDS);
+        activityConcurrency = getInt(ACTIVITY_CONCURRENCY_PROP_NAME, ActivitySimulator.DEFAULT_CONCURRENCY);
+        activityMix = getString(ACTIVITY_MIX_PROP_NAME, ActivitySimulator.DEFAULT_MIX);
+        activitySeed = getLong(ACTIVITY_SEED_PROP_NAME, ActivitySimulator.DEFAULT_SEED);
+        activityReportFile = getString(ACTIVITY_REPORT_PROP_NAME, null);
+
+        datasetSpec = getString(DATASET_SPEC_PROP_NAME, null);
+        datasetProjects = getInt(DATASET_PROJECTS_PROP_NAME, -1);
+        datasetIssues = getInt(DATASET_ISSUES_PROP_NAME, Dataset.DEFAULT_ISSUES_PER_PROJECT);
+        datasetUsers = getInt(DATASET_USERS_PROP_NAME, -1);
+        datasetComponents = getInt(DATASET_COMPONENTS_PROP_NAME, Dataset.DEFAULT_COMPONENTS_PER_PROJECT);
+        datasetVersions = getInt(DATASET_VERSIONS_PROP_NAME, Dataset.DEFAULT_VERSIONS_PER_PROJECT);
+        datasetLabels = getInt(DATASET_LABELS_PROP_NAME, Dataset.DEFAULT_LABELS_PER_PROJECT);
+        datasetProjectPrefix = getString(DATASET_PROJECT_PREFIX_PROP_NAME, Dataset.DEFAULT_PROJECT_PREFIX);
+        datasetLinkFanOut = getInt(DATASET_LINK_FANOUT_PROP_NAME, -1);
+        datasetLinkTypes = getString(DATASET_LINK_TYPES_PROP_NAME, LinkGraph.DEFAULT_TYPES).trim().split("\\s*,\\s*");
+        datasetLinkCrossProject = getDouble(DATASET_LINK_CROSS_PROJECT_PROP_NAME, LinkGraph.DEFAULT_CROSS_PROJECT);
+    }
+
+    static PopulatorConfig fromSystemProperties() {
+        return fromSystemProperties(new Properties());
+    }
+
+    /**
+     * @param defaults settings to use when neither the config file nor the system properties have them
+     */
+    static PopulatorConfig fromSystemProperties(Properties defaults) {
+        Properties properties = new Properties();
+        properties.putAll(defaults);
+        String configFile = System.getProperty(CONFIG_FILE_PROP_NAME);
+        if (configFile != null) {
+            try (InputStream in = Files.newInputStream(Paths.get(configFile))) {
+                properties.load(in);
+            } catch (IOException e) {
+                throw new RuntimeException("Could not read " + configFile, e);
+            }
+        }
+        // System properties override the ones from the file
+        properties.putAll(System.getProperties());
+        return new PopulatorConfig(properties);
+    }
+
+    /**
+     * Gets a copy of this config with some of the settings changed.
+     */
+    PopulatorConfig with(Properties overrides) {
+        Properties properties = new Properties();
+        properties.putAll(this.properties);
+        properties.putAll(overrides);
+        return new PopulatorConfig(properties);
+    }
+
+    private String getString(String name, String defaultValue) {
+        return properties.getProperty(name, defaultValue);
+    }
+
+    private int getInt(String name, int defaultValue) {
+        String value = properties.getProperty(name);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    private long getLong(String name, long defaultValue) {
+        String value = properties.getProperty(name);
+        return value == null ? defaultValue : Long.parseLong(value.trim());
+    }
+
+    private double getDouble(String name, double defaultValue) {
+        String value = properties.getProperty(name);
+        return value == null ? defaultValue : Double.parseDouble(value.trim());
+    }
+
+    private boolean getBoolean(String name) {
+        return Boolean.parseBoolean(properties.getProperty(name));
+    }
+
+    void configureLogging() {
+        PopulatorLogging.configure(logLevel);
+    }
+
+    RequestMetrics createRequestMetrics() {
+        return new RequestMetrics(jiraUrl, progressIntervalSeconds);
+    }
+
+    RestClientFactory createRestClientFactory(RequestMetrics metrics) {
+        HttpTransport transport = HttpTransport.create(this.transport,
+                maxConnections, maxConnectionsPerRoute, idleTimeoutSeconds, maxStreams);
+        // Never have more requests in flight than the transport can carry at once
+        RequestThrottle throttle = new RequestThrottle(rateLimit, rateBurst, transport.getMaxConcurrentRequests(),
+                latencyTolerance, maxRetries, retryBaseDelayMs, retryMaxDelayMs);
+        RestClientFactory factory = new RestClientFactory(jiraUrl, username, password, transport, throttle, metrics);
+        if (recordFile != null) {
+            factory.record(RequestLog.create(recordFile));
+        }
+        return factory;
+    }
+
+    Pipeline createPipeline() {
+        return new Pipeline(projectConcurrency, concurrency, asyncConcurrency);
+    }
+
+    ProgressJournal openJournal() {
+        return ProgressJournal.open(journalFile, journalSyncRecords, journalSyncIntervalMs);
+    }
+
+    String getJiraUrl() {
+        return jiraUrl;
+    }
+
+    boolean isDeleteExistingProjects() {
+        return deleteExistingProjects;
+    }
+
+    /**
+     * How existing projects are torn down, one of the {@link ProjectTeardown} modes.
+     */
+    String getDeleteMode() {
+        return deleteMode;
+    }
+
+    /**
+     * Whether projects which already exist are filled in with whatever of the dataset they are missing, rather than
+     * being skipped. Deleting existing projects takes precedence.
+     */
+    boolean isReconcile() {
+        return reconcile;
+    }
+
+    int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * Whether issues and links are created with asynchronous requests, rather than by the threads of the pipeline
+     * stages.
+     */
+    boolean isAsync() {
+        return async;
+    }
+
+    int getBulkSize() {
+        return bulkSize;
+    }
+
+    /**
+     * @return the file to write the end of run JSON metrics report to, or {@code null} for none
+     */
+    String getMetricsReportFile() {
+        return metricsReportFile;
+    }
+
+    /**
+     * @return the file to export the dataset to instead of populating Jira, or {@code null} to populate Jira
+     */
+    String getExportFile() {
+        return exportFile;
+    }
+
+    DatasetExporter createExporter(Dataset dataset) {
+        return new DatasetExporter(dataset, createLinkGraph(dataset), exportStatuses);
+    }
+
+    /**
+     * @return the file of recorded requests to replay instead of populating Jira, or {@code null} to populate Jira
+     */
+    String getReplayFile() {
+        return replayFile;
+    }
+
+    RequestReplayer createReplayer(RestClientFactory factory) {
+        return new RequestReplayer(factory, replaySpeed, replayConcurrency);
+    }
+
+    Shard getShard() {
+        return shard;
+    }
+
+    /**
+     * @return the file to write the keys of this shard's issues to, or {@code null} for none
+     */
+    String getShardKeysFile() {
+        return shardKeysFile;
+    }
+
+    /**
+     * @return the key files of the shards to link the issues of instead of populating Jira, or {@code null} to
+     * populate Jira
+     */
+    List<String> getShardMergeFiles() {
+        return shardMergeFiles;
+    }
+
+    /**
+     * How long the shards other than the first wait for it to set up the projects.
+     */
+    int getShardWaitSeconds() {
+        return shardWaitSeconds;
+    }
+
+    /**
+     * @return the id shared by the shards of this run, or {@code null} if it is not sharded
+     */
+    String getShardRun() {
+        return shardRun;
+    }
+
+    /**
+     * Whether to keep changing the issues once they have been populated.
+     */
+    boolean isSimulateActivity() {
+        return activityRate > 0;
+    }
+
+    ActivityMetrics createActivityMetrics() {
+        return new ActivityMetrics(progressIntervalSeconds);
+    }
+
+    ActivitySimulator createActivitySimulator(RestClientFactory factory, ActivityMetrics metrics, Dataset dataset,
+                                              IssueKeys[] issueKeys, String[] assignees) {
+        return new ActivitySimulator(factory, metrics, dataset.getProjects(), issueKeys, shard, assignees,
+                activityRate, activityDurationSeconds, activityConcurrency, activityMix, activitySeed);
+    }
+
+    /**
+     * @return the file to write the JSON report of the simulated activity to, or {@code null} for none
+     */
+    String getActivityReportFile() {
+        return activityReportFile;
+    }
+
+    /**
+     * Creates the dataset to populate Jira with. If a spec file was given it is read from that. Otherwise, unless any
+     * of the users or projects counts were set, this is the default hand-written dataset; if they were it is generated
+     * at the requested scale.
+     */
+    Dataset createDataset() {
+        if (datasetSpec != null) {
+            return DatasetSpec.read(datasetSpec);
+        }
+        if (datasetProjects < 0 && datasetUsers < 0) {
+            return Dataset.createDefault(datasetIssues);
+        }
+        return Dataset.generate(
+                datasetProjects < 0 ? Dataset.DEFAULT_PROJECTS : datasetProjects,
+                datasetIssues,
+                datasetUsers < 0 ? Dataset.DEFAULT_USERS : datasetUsers,
+                datasetComponents, datasetVersions, datasetLabels, datasetProjectPrefix);
+    }
+
+    /**
+     * Creates the links to make between the issues of the projects, unless the dataset has its own. Unless a fan-out
+     * was set, these are the original links of every other project's issues to the upstream ones; otherwise a graph
+     * of that density is generated.
+     */
+    LinkGraph createLinkGraph(Dataset dataset) {
+        if (dataset.getLinkGraph() != null) {
+            return dataset.getLinkGraph();
+        }
+        List<ProjectInfo> projects = dataset.getProjects();
+        if (datasetLinkFanOut < 0) {
+            return LinkGraph.createDefault(projects);
+        }
+        return LinkGraph.generate(projects, datasetLinkTypes, datasetLinkFanOut, datasetLinkCrossProject);
+    }
+
+    /**
+     * Whether issues should walk through each workflow state on the way to their final one, rather than jumping
+     * straight there.
+     */
+    boolean isStepwiseTransitions() {
+        return stepwiseTransitions;
+    }
+}
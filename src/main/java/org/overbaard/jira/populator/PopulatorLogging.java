@@ -0,0 +1,66 @@
+package org.overbaard.jira.populator;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.logging.StreamHandler;
+
+/**
+ * Sets up java.util.logging for the populator classes. Messages go to stdout, one line each. At the default
+ * {@code INFO} level we log the progress of each project plus anything unusual, while {@code FINE} also logs every
+ * issue, transition and link as it is made.
+ *
+ * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
+ */
+class PopulatorLogging {
+    static final String DEFAULT_LEVEL = "INFO";
+
+    // Keep a reference so that the configuration is not garbage collected along with the logger
+    private static final Logger LOGGER = Logger.getLogger(PopulatorLogging.class.getPackage().getName());
+
+    static void configure(String level) {
+        Level parsed = Level.parse(level.trim().toUpperCase());
+        StreamHandler handler = new StreamHandler(System.out, new OneLineFormatter()) {
+            @Override
+            public synchronized void publish(LogRecord record) {
+                super.publish(record);
+                flush();
+            }
+        };
+        // Leave it to the loggers to decide what gets logged, so that individual ones can be made more verbose
+        handler.setLevel(Level.ALL);
+        for (Handler existing : LOGGER.getHandlers()) {
+            LOGGER.removeHandler(existing);
+        }
+        LOGGER.addHandler(handler);
+        LOGGER.setLevel(parsed);
+        LOGGER.setUseParentHandlers(false);
+    }
+
+    private static class OneLineFormatter extends Formatter {
+        private final SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss.SSS");
+
+        @Override
+        public synchronized String format(LogRecord record) {
+            StringBuilder sb = new StringBuilder();
+            sb.append(timeFormat.format(new Date(record.getMillis())))
+                    .append(' ')
+                    .append(record.getLevel().getName())
+                    .append(' ')
+                    .append(formatMessage(record))
+                    .append(System.lineSeparator());
+            if (record.getThrown() != null) {
+                StringWriter writer = new StringWriter();
+                record.getThrown().printStackTrace(new PrintWriter(writer));
+                sb.append(writer);
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package org.overbaard.jira.populator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An append-only record of what a populate run has done, so that a run which dies part way through can be started
+ * again and pick up where it stopped rather than starting over.
+ * <p>
+ * Each line is a tab separated record:
+ * <pre>
+ *     P  project-key  project-id        project created
+ *     C  project-key  component-name    component created
+ *     V  project-key  version-name      version created
+ *     I  project-key  issue-index  key  issue created
+ *     T  issue-key                      issue transitioned
+ *     L  issue-key  other-issue-key     issues linked
+ * </pre>
+ * To keep the cost of durability down, records are buffered and written and fsynced in batches, once
+ * {@code syncRecords} are pending or every {@code syncIntervalMs}. A crash may lose the last batch, in which case the
+ * things in it get done again on the next run; for issues that means they may be created twice.
+ *
+ * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
+ */
+class ProgressJournal implements AutoCloseable {
+    static final int DEFAULT_SYNC_RECORDS = 1000;
+    static final int DEFAULT_SYNC_INTERVAL_MS = 1000;
+
+    /**
+     * Used when no journal file was configured. Remembers nothing and records nothing.
+     */
+    static final ProgressJournal NONE = new ProgressJournal();
+
+    private static final Logger LOG = Logger.getLogger(ProgressJournal.class.getName());
+
+    private final FileChannel channel;
+    private final int syncRecords;
+    private final ScheduledExecutorService syncer;
+
+    // What previous runs did
+    private final Map<String, Integer> projects = new HashMap<>();
+    private final Set<String> components = new HashSet<>();
+    private final Set<String> versions = new HashSet<>();
+    private final Map<String, Map<Integer, String>> issues = new HashMap<>();
+    private final Set<String> transitions = new HashSet<>();
+    private final Set<String> links = new HashSet<>();
+
+    // Guarded by this
+    private StringBuilder pending = new StringBuilder();
+    private int pendingRecords;
+    // Guards the channel, so that a slow fsync doesn't hold up threads adding records
+    private final Object writeLock = new Object();
+
+    private ProgressJournal() {
+        channel = null;
+        syncRecords = 0;
+        syncer = null;
+    }
+
+    private ProgressJournal(Path path, int syncRecords, int syncIntervalMs) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // Drop anything after the last complete record, which a crash may have left behind, so that new records
+        // don't get appended to it
+        long length = getCompleteLength(channel);
+        channel.truncate(length);
+        channel.position(length);
+        load(path);
+        this.syncRecords = syncRecords;
+        this.syncer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "journal-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        syncer.scheduleWithFixedDelay(this::periodicSync, syncIntervalMs, syncIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void periodicSync() {
+        // An exception would cancel all the later syncs, so just log it and try again next time
+        try {
+            sync();
+        } catch (RuntimeException e) {
+            LOG.log(Level.WARNING, "Could not sync the journal", e);
+        }
+    }
+
+    private static long getCompleteLength(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        long end = channel.size();
+        while (end > 0) {
+            long start = Math.max(0, end - buffer.capacity());
+            buffer.clear();
+            buffer.limit((int) (end - start));
+            while (buffer.hasRemaining() && channel.read(buffer, start + buffer.position()) > 0) {
+                // Keep reading
+            }
+            for (int i = buffer.position() - 1; i >= 0; i--) {
+                if (buffer.get(i) == '\n') {
+                    return start + i + 1;
+                }
+            }
+            end = start;
+        }
+        return 0;
+    }
+
+    static ProgressJournal open(String file, int syncRecords, int syncIntervalMs) {
+        if (file == null) {
+            return NONE;
+        }
+        try {
+            ProgressJournal journal = new ProgressJournal(Paths.get(file), syncRecords, syncIntervalMs);
+            LOG.info("Using journal " + file + (journal.projects.isEmpty() ? "" :
+                    ", resuming projects " + journal.projects.keySet()));
+            return journal;
+        } catch (IOException e) {
+            throw new RuntimeException("Could not open journal " + file, e);
+        }
+    }
+
+    private void load(Path path) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                try {
+                    switch (fields[0]) {
+                        case "P":
+                            projects.put(fields[1], Integer.valueOf(fields[2]));
+                            break;
+                        case "C":
+                            components.add(fields[1] + "\t" + fields[2]);
+                            break;
+                        case "V":
+                            versions.add(fields[1] + "\t" + fields[2]);
+                            break;
+                        case "I":
+                            issues.computeIfAbsent(fields[1], k -> new HashMap<>())
+                                    .put(Integer.valueOf(fields[2]), fields[3]);
+                            break;
+                        case "T":
+                            transitions.add(fields[1]);
+                            break;
+                        case "L":
+                            links.add(fields[1] + "\t" + fields[2]);
+                            break;
+                        default:
+                            // Ignore
+                    }
+                } catch (RuntimeException e) {
+                    LOG.warning("Ignoring bad journal record: " + line);
+                }
+            }
+        }
+    }
+
+    boolean isEnabled() {
+        return channel != null;
+    }
+
+    /**
+     * @return the id of the project if an earlier run created it, or {@code null}
+     */
+    Integer getProjectId(String projectKey) {
+        return projects.get(projectKey);
+    }
+
+    boolean hasComponent(String projectKey, String component) {
+        return components.contains(projectKey + "\t" + component);
+    }
+
+    boolean hasVersion(String projectKey, String version) {
+        return versions.contains(projectKey + "\t" + version);
+    }
+
+    /**
+     * @return the issue keys, by issue index, which earlier runs created in the project
+     */
+    Map<Integer, String> getIssueKeys(String projectKey) {
+        Map<Integer, String> keys = issues.get(projectKey);
+        return keys == null ? Collections.emptyMap() : keys;
+    }
+
+    boolean isTransitioned(String issueKey) {
+        return transitions.contains(issueKey);
+    }
+
+    boolean isLinked(String issueKey, String otherIssueKey) {
+        return links.contains(issueKey + "\t" + otherIssueKey);
+    }
+
+    void projectCreated(String projectKey, int id) {
+        record("P", projectKey, String.valueOf(id));
+    }
+
+    void componentCreated(String projectKey, String component) {
+        record("C", projectKey, component);
+    }
+
+    void versionCreated(String projectKey, String version) {
+        record("V", projectKey, version);
+    }
+
+    void issueCreated(String projectKey, int issueIndex, String issueKey) {
+        record("I", projectKey, String.valueOf(issueIndex), issueKey);
+    }
+
+    void issueTransitioned(String issueKey) {
+        record("T", issueKey);
+    }
+
+    void issuesLinked(String issueKey, String otherIssueKey) {
+        record("L", issueKey, otherIssueKey);
+    }
+
+    private void record(String... fields) {
+        if (channel == null) {
+            return;
+        }
+        boolean sync;
+        synchronized (this) {
+            for (int i = 0; i < fields.length; i++) {
+                if (i > 0) {
+                    pending.append('\t');
+                }
+                pending.append(fields[i]);
+            }
+            pending.append('\n');
+            sync = ++pendingRecords >= syncRecords;
+        }
+        if (sync) {
+            sync();
+        }
+    }
+
+    /**
+     * Writes out and fsyncs the pending records. If that fails they are left pending, to be written by the next sync.
+     */
+    void sync() {
+        if (channel == null) {
+            return;
+        }
+        synchronized (writeLock) {
+            String records;
+            int numberRecords;
+            synchronized (this) {
+                if (pendingRecords == 0) {
+                    return;
+                }
+                records = pending.toString();
+                numberRecords = pendingRecords;
+                pending = new StringBuilder(records.length());
+                pendingRecords = 0;
+            }
+            long position = -1;
+            try {
+                position = channel.position();
+                ByteBuffer buffer = ByteBuffer.wrap(records.getBytes(StandardCharsets.UTF_8));
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                // Put the records back in front of the ones added since, so that the next sync writes them again, and
+                // drop whatever part of them made it to the file so that they don't end up in it twice
+                synchronized (this) {
+                    pending.insert(0, records);
+                    pendingRecords += numberRecords;
+                }
+                if (position >= 0) {
+                    try {
+                        channel.truncate(position);
+                        channel.position(position);
+                    } catch (IOException truncateException) {
+                        e.addSuppressed(truncateException);
+                    }
+                }
+                throw new RuntimeException("Could not write to the journal", e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (channel == null) {
+            return;
+        }
+        // Don't interrupt a sync in progress, since that closes the channel and the last records would be lost
+        syncer.shutdown();
+        boolean interrupted = false;
+        try {
+            if (!syncer.awaitTermination(1, TimeUnit.MINUTES)) {
+                LOG.warning("Timed out waiting for the journal to sync");
+            }
+        } catch (InterruptedException e) {
+            // Likewise, only restore the interrupt once the last records are written
+            interrupted = true;
+        }
+        try {
+            sync();
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Could not close the journal", e);
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
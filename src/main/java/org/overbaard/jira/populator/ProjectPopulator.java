@@ -1,9 +1,18 @@
 package org.overbaard.jira.populator;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
 
-import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriBuilder;
 
 import org.jboss.dmr.ModelNode;
@@ -12,101 +21,360 @@ import org.jboss.dmr.ModelNode;
  * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
  */
 public class ProjectPopulator {
-    private final RestClientFactory factory;
-    private final String[] assignees;
-    private final boolean deleteExistingProjects;
+    private static final Logger LOG = Logger.getLogger(ProjectPopulator.class.getName());
 
-    private static final String[] FEAT_LABELS = {"ExtraTesting", "NeedsInfo", "Support", "Approved", "Retrospective"};
-    private static final String[] SUP_LABELS = {"ExtraTesting", "Customer", "NeedsInfo", "Documentation"};
+    /**
+     * The project property the first shard sets, to the id of the run, once it has set up the project for the others.
+     */
+    static final String SETUP_PROPERTY = "ob.populator.setup";
 
-    private ProjectPopulator(RestClientFactory factory, String[] assignees, boolean deleteExistingProjects) {
+    private final RestClientFactory factory;
+    private final Pipeline pipeline;
+    private final PopulatorConfig config;
+    private final List<ProjectInfo> projects;
+    private final LinkGraph linkGraph;
+    private final IssueDistributions distributions;
+    private final String[] assignees;
+    private final TransitionCache transitionCache;
+    private final ProgressJournal journal;
+    // Project key to id of the projects which are already in Jira
+    private Map<String, Integer> existingProjects;
+    // The links between issues which were already in Jira, as made by ExistingIssues.linkKey()
+    private final Set<String> existingLinks = ConcurrentHashMap.newKeySet();
+    private IssueLinker linker;
+
+    private ProjectPopulator(RestClientFactory factory, Pipeline pipeline, PopulatorConfig config, ProgressJournal journal, List<ProjectInfo> projects, LinkGraph linkGraph, IssueDistributions distributions, String[] assignees) {
         this.factory = factory;
+        this.journal = journal;
+        this.pipeline = pipeline;
+        this.config = config;
+        this.projects = projects;
+        this.linkGraph = linkGraph;
+        this.distributions = distributions;
         this.assignees = assignees;
-        this.deleteExistingProjects = deleteExistingProjects;
+        this.transitionCache = new TransitionCache(factory);
     }
 
 
-    public static ProjectPopulator createProjects(RestClientFactory factory, String[] assignees, boolean deleteExistingProjects) {
-        ProjectPopulator populator = new ProjectPopulator(factory, assignees, deleteExistingProjects);
+    /**
+     * Makes the links between the issues created by different shards, from the keys each of them wrote.
+     *
+     * @param keyFiles the issue key files written by the shards
+     */
+    static void linkShards(RestClientFactory factory, Pipeline pipeline, PopulatorConfig config, ProgressJournal journal, List<ProjectInfo> projects, LinkGraph linkGraph, List<String> keyFiles) {
+        ProjectPopulator populator = new ProjectPopulator(factory, pipeline, config, journal, projects, linkGraph, null, null);
+        populator.linkShards(keyFiles);
+    }
+
+    public static ProjectPopulator createProjects(RestClientFactory factory, Pipeline pipeline, PopulatorConfig config, ProgressJournal journal, List<ProjectInfo> projects, LinkGraph linkGraph, IssueDistributions distributions, String[] assignees) {
+        ProjectPopulator populator = new ProjectPopulator(factory, pipeline, config, journal, projects, linkGraph, distributions, assignees);
         populator.create();
         return populator;
     }
 
     private void create() {
-        System.out.println("Creating projects....");
-        List<ProjectInfo> projects = new ArrayList<>();
-        projects.add(new ProjectInfo("UP", "Upstream", new String[]{"1.0.0", "2.0.0", "3.0.0"}));
-        projects.add(new ProjectInfo("FEAT", "Feature", new String[]{"1.0.0", "2.0.0", "2.0.2"}));
-        projects.add(new ProjectInfo("SUP", "Support", new String[]{"1.0.0", "1.0.1", "1.0.2"}));
+        LOG.info("Creating projects....");
+        existingProjects = findExistingProjects();
+        Shard shard = config.getShard();
+        if (config.isDeleteExistingProjects() && shard.isFirst()) {
+            tearDownExistingProjects();
+        }
 
-        String[] upIssueKeys = null;
-        for (ProjectInfo projectInfo : projects) {
-            System.out.println("====== " + projectInfo.key);
-            if (projectExists(projectInfo)) {
-                if (!deleteExistingProjects) {
-                    continue;
+        // Set up all the issue populators first, so that each link fires as soon as both of its issues exist
+        // whichever projects they are in
+        linker = new IssueLinker(linkGraph, projects, shard, this::linkIssues);
+        List<IssuePopulator> issuePopulators = new ArrayList<>();
+        for (int i = 0; i < projects.size(); i++) {
+            issuePopulators.add(IssuePopulator.prepare(factory, pipeline, config, transitionCache, journal, linker, i, projects.get(i), distributions, assignees));
+        }
+
+        List<CompletableFuture<Void>> projectTasks = new ArrayList<>();
+        for (int i = 0; i < projects.size(); i++) {
+            final ProjectInfo projectInfo = projects.get(i);
+            final IssuePopulator issuePopulator = issuePopulators.get(i);
+            projectTasks.add(pipeline.getProjectStage().execute(() -> {
+                try {
+                    populateProject(projectInfo, issuePopulator);
+                } catch (RuntimeException | Error e) {
+                    issuePopulator.abort();
+                    throw e;
                 }
-                deleteProject(projectInfo);
+            }));
+        }
+        BoundedExecutor.awaitAll(projectTasks);
+        linker.await();
+        if (config.getShardKeysFile() != null) {
+            ShardKeys.write(config.getShardKeysFile(), shard, projects, linker);
+        }
+        LOG.info("Created projects");
+    }
+
+    /**
+     * @return the keys of the issues of the project with the given index in the dataset, as populated
+     */
+    IssueKeys getIssueKeys(int project) {
+        return linker.getIssueKeys(project);
+    }
+
+    private void linkShards(List<String> keyFiles) {
+        int shardCount = config.getShard().getCount();
+        LOG.info("Linking the issues across " + shardCount + " shards...");
+        IssueLinker linker = new IssueLinker(linkGraph, projects, Shard.ALL, this::linkIssues);
+        Set<Integer> shards = new HashSet<>();
+        for (String keyFile : keyFiles) {
+            Shard shard = ShardKeys.read(keyFile, projects, linker, shardCount);
+            if (!shards.add(shard.getIndex())) {
+                throw new IllegalArgumentException("Got the keys of " + shard + " more than once");
+            }
+        }
+        if (shards.size() < shardCount) {
+            LOG.warning("Only have the keys of " + shards.size() + " of the " + shardCount + " shards");
+        }
+        linker.linkAcrossShards(shardCount);
+        linker.await();
+        LOG.info("Linked the issues across the shards");
+    }
+
+    private void populateProject(ProjectInfo projectInfo, IssuePopulator issuePopulator) {
+        LOG.info("====== " + projectInfo.key);
+        if (!config.getShard().isFirst()) {
+            populateShard(projectInfo, issuePopulator);
+            LOG.info("====== " + projectInfo.key + " populated");
+            return;
+        }
+        Integer resumedId = journal.getProjectId(projectInfo.key);
+        boolean reused = false;
+        Set<String> existingComponents = Collections.emptySet();
+        Set<String> existingVersions = Collections.emptySet();
+        if (resumedId != null) {
+            // An earlier run created the project, carry on from where it got to
+            LOG.info("Resuming project " + projectInfo.key + "(" + resumedId + ")");
+            projectInfo.id = resumedId;
+        } else {
+            Integer existingId = existingProjects.get(projectInfo.key);
+            if (existingId == null) {
+                createProject(projectInfo);
+                journal.projectCreated(projectInfo.key, projectInfo.id);
+            } else if (config.isDeleteExistingProjects()) {
+                // Only the issues were torn down, so carry on with the project and its components and versions
+                LOG.info("Reusing project " + projectInfo.key + "(" + existingId + ")");
+                projectInfo.id = existingId;
+                reuseProject(projectInfo);
+                reused = true;
+            } else if (config.isReconcile()) {
+                // Only fill in what is missing
+                LOG.info("Reconciling project " + projectInfo.key + "(" + existingId + ")");
+                projectInfo.id = existingId;
+                journal.projectCreated(projectInfo.key, projectInfo.id);
+                existingComponents = findNames(projectInfo, "components");
+                existingVersions = findNames(projectInfo, "versions");
+                ExistingIssues existingIssues = ExistingIssues.load(factory, projectInfo.key);
+                existingLinks.addAll(existingIssues.getLinks());
+                issuePopulator.reconcile(existingIssues);
+            } else {
+                LOG.info("Project " + projectInfo.key + " exists");
+                markSetUp(projectInfo);
+                issuePopulator.skip();
+                return;
             }
-            createProject(projectInfo);
-            if (projectInfo.key.equals("FEAT") || projectInfo.key.equals("SUP")) {
-                List<String> components = new ArrayList<>();
-                components.add("Another Component");
-                components.add("User Experience");
-                components.add("Jira");
-                components.add("Core");
-                components.add("Testsuite");
-                components.add("Backend");
-                if (projectInfo.key.equals("FEAT")) {
-                    components.add("FEAT Component");
+        }
+        if (!reused) {
+            // These only need the project to exist, so create them all at once
+            TaskTracker scaffolding = new TaskTracker("components and versions of " + projectInfo.key);
+            BoundedExecutor createStage = pipeline.getCreateStage();
+            for (String component : projectInfo.components) {
+                if (!journal.hasComponent(projectInfo.key, component) && !existingComponents.contains(component)) {
+                    scaffolding.track(createStage.execute(() -> {
+                        createComponent(projectInfo, component);
+                        journal.componentCreated(projectInfo.key, component);
+                    }));
                 }
-                projectInfo.components = components.toArray(new String[components.size()]);
-                for (String component : components) {
-                    createComponent(projectInfo, component);
+            }
+            for (String fixVersion : projectInfo.versions) {
+                if (!journal.hasVersion(projectInfo.key, fixVersion) && !existingVersions.contains(fixVersion)) {
+                    scaffolding.track(createStage.execute(() -> {
+                        createFixVersion(projectInfo, fixVersion);
+                        journal.versionCreated(projectInfo.key, fixVersion);
+                    }));
                 }
-                for (String fixVersion : projectInfo.versions) {
-                    createFixVersion(projectInfo, fixVersion);
+            }
+            scaffolding.await();
+        }
+        markSetUp(projectInfo);
+        issuePopulator.createIssues();
+        LOG.info("====== " + projectInfo.key + " populated");
+    }
+
+    /**
+     * Adds this shard's issues to the project, once the first shard has set it up.
+     */
+    private void populateShard(ProjectInfo projectInfo, IssuePopulator issuePopulator) {
+        Integer id = journal.getProjectId(projectInfo.key);
+        if (id == null) {
+            id = awaitProject(projectInfo);
+            journal.projectCreated(projectInfo.key, id);
+        }
+        projectInfo.id = id;
+        if (config.isReconcile()) {
+            ExistingIssues existingIssues = ExistingIssues.load(factory, projectInfo.key);
+            existingLinks.addAll(existingIssues.getLinks());
+            issuePopulator.reconcile(existingIssues);
+        }
+        issuePopulator.createIssues();
+    }
+
+    /**
+     * Tells the other shards that the first has set up the project, with its components and versions, by setting a
+     * project property to the id of the run. Until then the project may still be one left by an earlier run which is
+     * about to be torn down. A property left by an earlier run has another id.
+     */
+    private void markSetUp(ProjectInfo projectInfo) {
+        if (config.getShard().getCount() == 1) {
+            return;
+        }
+        factory.put(getSetUpUriBuilder(projectInfo),
+                writer -> writer.beginObject().name("run").value(config.getShardRun()).endObject());
+    }
+
+    /**
+     * Waits for the first shard to have set up the project for this run, see {@link #markSetUp(ProjectInfo)}.
+     *
+     * @return the id of the project
+     */
+    private int awaitProject(ProjectInfo projectInfo) {
+        LOG.info("Waiting for project " + projectInfo.key + " to be set up by the first shard...");
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(config.getShardWaitSeconds());
+        while (true) {
+            if (config.getShardRun().equals(getSetUpRun(projectInfo))) {
+                Integer id = findExistingProjects().get(projectInfo.key);
+                if (id != null) {
+                    LOG.info("Project " + projectInfo.key + "(" + id + ") is set up");
+                    return id;
                 }
-                projectInfo.labels = projectInfo.key.equals("FEAT") ? FEAT_LABELS : SUP_LABELS;
             }
-            IssuePopulator issuePopulator = IssuePopulator.createIssues(factory, 30, projectInfo, assignees);
-            String[] issueKeys = issuePopulator.getIssueKeys();
-            if (projectInfo.key.equals("UP")) {
-                // This is the first one in the list
-                upIssueKeys = issueKeys;
-            } else {
-                linkIssues(projectInfo, issueKeys, upIssueKeys);
+            if (System.currentTimeMillis() > deadline) {
+                throw new RuntimeException("Gave up waiting for project " + projectInfo.key + " to be set up by the first shard");
+            }
+            try {
+                Thread.sleep(Shard.POLL_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted waiting for project " + projectInfo.key, e);
             }
         }
-        System.out.println("Created projects");
     }
 
-    private boolean projectExists(ProjectInfo projectInfo) {
-        System.out.println("Checking if " + projectInfo.key + " exists...");
+    /**
+     * @return the run the first shard last set up the project for, or {@code null} if it has not or there is no such
+     * project
+     */
+    private String getSetUpRun(ProjectInfo projectInfo) {
+        return factory.get(getSetUpUriBuilder(projectInfo), reader -> {
+            reader.beginObject();
+            if (!reader.findName("value")) {
+                throw new IOException("The property has no value");
+            }
+            return ResponseReader.field("run").read(reader);
+        }, false);
+    }
+
+    private UriBuilder getSetUpUriBuilder(ProjectInfo projectInfo) {
         UriBuilder builder = factory.getJiraRestUriBuilder();
-        builder.path("project").path(projectInfo.key);
-        Response response = factory.get(builder, false);
-        if (response.getStatus() == 200) {
-            System.out.println("Project " + projectInfo.key + " exists");
-            return true;
-        } else if (response.getStatus() == 404) {
-            System.out.println("Project " + projectInfo.key + " does not exist");
-            return false;
-        } else {
-            throw new RuntimeException("Error looking for user " + projectInfo.key + ". " + response.getStatus() + " " + response.readEntity(String.class));
+        builder.path("project").path(projectInfo.key).path("properties").path(SETUP_PROPERTY);
+        return builder;
+    }
+
+    /**
+     * Lists the projects in Jira with one request, rather than looking each of ours up.
+     */
+    private Map<String, Integer> findExistingProjects() {
+        UriBuilder builder = factory.getJiraRestUriBuilder();
+        builder.path("project");
+        return factory.get(builder, ProjectPopulator::readProjectIds);
+    }
+
+    private static Map<String, Integer> readProjectIds(JsonReader reader) throws IOException {
+        Map<String, Integer> projectIds = new HashMap<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String key = null;
+            Integer id = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals("key")) {
+                    key = reader.nextString();
+                } else if (name.equals("id")) {
+                    id = reader.nextInt();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            if (key == null || id == null) {
+                throw new IOException("A project has no key or id");
+            }
+            projectIds.put(key, id);
         }
+        return projectIds;
     }
 
-    private void deleteProject(ProjectInfo projectInfo) {
-        System.out.println("Deleting project " + projectInfo.key + "...");
+    /**
+     * @param what {@code components} or {@code versions}
+     * @return the names of those the project already has
+     */
+    private Set<String> findNames(ProjectInfo projectInfo, String what) {
         UriBuilder builder = factory.getJiraRestUriBuilder();
-        builder.path("project").path(projectInfo.key);
-        factory.delete(builder);
-        System.out.println("Deleted project " + projectInfo.key);
+        builder.path("project").path(projectInfo.key).path(what);
+        return factory.get(builder, reader -> {
+            Set<String> names = new HashSet<>();
+            reader.beginArray();
+            while (reader.hasNext()) {
+                reader.beginObject();
+                if (!reader.findName("name")) {
+                    throw new IOException("One of the " + what + " has no name");
+                }
+                names.add(reader.nextString());
+                reader.skipRestOfObject();
+            }
+            return names;
+        });
+    }
+
+    /**
+     * Tears down the projects of ours which are already in Jira, apart from the ones being resumed, before any of
+     * them are populated.
+     */
+    private void tearDownExistingProjects() {
+        ProjectTeardown teardown = new ProjectTeardown(factory, pipeline, config.getDeleteMode());
+        List<String> projectKeys = new ArrayList<>();
+        for (ProjectInfo projectInfo : projects) {
+            if (existingProjects.containsKey(projectInfo.key) && journal.getProjectId(projectInfo.key) == null) {
+                projectKeys.add(projectInfo.key);
+            }
+        }
+        teardown.teardown(projectKeys);
+        if (!teardown.isKeepProjects()) {
+            existingProjects.keySet().removeAll(projectKeys);
+        }
+    }
+
+    /**
+     * Records the kept project, and its components and versions, as if we had created them, so that they are not
+     * created again if this run gets resumed.
+     */
+    private void reuseProject(ProjectInfo projectInfo) {
+        journal.projectCreated(projectInfo.key, projectInfo.id);
+        for (String component : projectInfo.components) {
+            journal.componentCreated(projectInfo.key, component);
+        }
+        for (String fixVersion : projectInfo.versions) {
+            journal.versionCreated(projectInfo.key, fixVersion);
+        }
     }
 
     private void createProject(ProjectInfo projectInfo) {
-        System.out.println("Creating project " + projectInfo.key + "...");
+        LOG.info("Creating project " + projectInfo.key + "...");
 
         ModelNode project = new ModelNode();
         project.get("key").set(projectInfo.key);
@@ -118,19 +386,13 @@ public class ProjectPopulator {
 
         UriBuilder builder = factory.getJiraRestUriBuilder();
         builder.path("project");
-        factory.post(builder, project);
-
-        builder = factory.getJiraRestUriBuilder();
-        builder.path("project").path(projectInfo.key);
-        Response response = factory.get(builder, true);
-        ModelNode projectNode = ModelNode.fromJSONString(response.readEntity(String.class));
-        projectInfo.id = projectNode.get("id").asInt();
+        projectInfo.id = Integer.parseInt(factory.post(builder, JsonPayload.of(project), ResponseReader.field("id")));
 
-        System.out.println("Created project " + projectInfo.key + "(" + projectInfo.id + ")");
+        LOG.info("Created project " + projectInfo.key + "(" + projectInfo.id + ")");
     }
 
     private void createComponent(ProjectInfo projectInfo, String componentName) {
-        System.out.println("Creating component " + componentName + "...");
+        LOG.fine(() -> "Creating component " + componentName + "...");
         ModelNode component = new ModelNode();
         component.get("name").set(componentName);
         component.get("description").set(componentName);
@@ -142,11 +404,11 @@ public class ProjectPopulator {
         UriBuilder builder = factory.getJiraRestUriBuilder();
         builder.path("component");
         factory.post(builder, component);
-        System.out.println("Created component " + componentName);
+        LOG.fine(() -> "Created component " + componentName);
     }
 
     private void createFixVersion(ProjectInfo projectInfo, String fixVersion) {
-        System.out.println("Creating fix version " + fixVersion + "...");
+        LOG.fine(() -> "Creating fix version " + fixVersion + "...");
         ModelNode version = new ModelNode();
         version.get("project").set(projectInfo.key);
         version.get("name").set(fixVersion);
@@ -155,23 +417,64 @@ public class ProjectPopulator {
         UriBuilder builder = factory.getJiraRestUriBuilder();
         builder.path("version");
         factory.post(builder, version);
-        System.out.println("Created fix version " + fixVersion);
+        LOG.fine(() -> "Created fix version " + fixVersion);
     }
 
-    private void linkIssues(ProjectInfo projectInfo, String[] issueKeys, String[] upIssueKeys) {
-        int start = projectInfo.key.equals("FEAT") ? 0 : 1;
-        for (int i = start ; i < issueKeys.length ; i++) {
-            ModelNode link = new ModelNode();
-            link.get("type", "name").set("Blocks");
-            link.get("inwardIssue", "key").set(upIssueKeys[i]);
-            link.get("outwardIssue", "key").set(issueKeys[i]);
+    /**
+     * Links the issues, which have both just been created.
+     */
+    private CompletableFuture<Void> linkIssues(String type, String issueKey, String linkedIssueKey) {
+        if (config.isAsync()) {
+            return linkIssueAsync(type, issueKey, linkedIssueKey);
+        }
+        // This runs on the thread which created the second issue, so blocking here if the link stage
+        // is full holds back the creates
+        return pipeline.getLinkStage().execute(() -> linkIssue(type, issueKey, linkedIssueKey));
+    }
 
-            System.out.println("Linking " + issueKeys[i] + " to " + upIssueKeys[i] + "...");
-            UriBuilder builder = factory.getJiraRestUriBuilder();
-            builder.path("issueLink");
-            factory.post(builder, link);
-            System.out.println("Linked " + issueKeys[i] + " to " + upIssueKeys[i]);
+    private void linkIssue(String type, String issueKey, String linkedIssueKey) {
+        if (isLinked(issueKey, linkedIssueKey)) {
+            return;
         }
+        LOG.fine(() -> "Linking " + issueKey + " to " + linkedIssueKey + "...");
+        UriBuilder builder = factory.getJiraRestUriBuilder();
+        builder.path("issueLink");
+        factory.post(builder, writeLinkPayload(type, issueKey, linkedIssueKey));
+        issuesLinked(issueKey, linkedIssueKey);
+    }
+
+    /**
+     * Like {@link #linkIssue(String, String, String)}, but sends the request without blocking. The links are not
+     * bounded by a stage, since they are already held back by how fast the issues get created.
+     */
+    private CompletableFuture<Void> linkIssueAsync(String type, String issueKey, String linkedIssueKey) {
+        if (isLinked(issueKey, linkedIssueKey)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        LOG.fine(() -> "Linking " + issueKey + " to " + linkedIssueKey + "...");
+        UriBuilder builder = factory.getJiraRestUriBuilder();
+        builder.path("issueLink");
+        return factory.postAsync(builder, writeLinkPayload(type, issueKey, linkedIssueKey))
+                .thenRun(() -> issuesLinked(issueKey, linkedIssueKey));
+    }
+
+    private boolean isLinked(String issueKey, String linkedIssueKey) {
+        return journal.isLinked(issueKey, linkedIssueKey) ||
+                existingLinks.contains(ExistingIssues.linkKey(issueKey, linkedIssueKey));
+    }
+
+    private static JsonPayload writeLinkPayload(String type, String issueKey, String linkedIssueKey) {
+        return writer -> writer.beginObject()
+                .reference("type", "name", type)
+                .reference("inwardIssue", "key", linkedIssueKey)
+                .reference("outwardIssue", "key", issueKey)
+                .endObject();
+    }
+
+    private void issuesLinked(String issueKey, String linkedIssueKey) {
+        journal.issuesLinked(issueKey, linkedIssueKey);
+        factory.getMetrics().issuesLinked();
+        LOG.fine(() -> "Linked " + issueKey + " to " + linkedIssueKey);
     }
 
 
@@ -180,16 +483,17 @@ public class ProjectPopulator {
         private final String name;
         private final String[] versions;
         private int id;
-        // Since we're working on a fresh Jira instance we can just hardcode the issue types, priorities etc.
-        private final String[] issueTypes = {"Task", "Story", "Bug"/*, "Epic"*/}; // Epic is a bit weird so leave that out
-        private final String[] priority = {"Lowest", "Low", "Medium", "High", "Highest"};
-        private String[] components;
-        private String[] labels;
+        private final String[] components;
+        private final String[] labels;
+        private final int numberIssues;
 
-        public ProjectInfo(String key, String name, String[] versions) {
+        public ProjectInfo(String key, String name, String[] versions, String[] components, String[] labels, int numberIssues) {
             this.key = key;
             this.name = name;
             this.versions = versions;
+            this.components = components;
+            this.labels = labels;
+            this.numberIssues = numberIssues;
         }
 
         public String getKey() {
@@ -208,14 +512,6 @@ public class ProjectPopulator {
             return id;
         }
 
-        public String[] getIssueTypes() {
-            return issueTypes;
-        }
-
-        public String[] getPriority() {
-            return priority;
-        }
-
         public String[] getComponents() {
             return components;
         }
@@ -223,5 +519,9 @@ public class ProjectPopulator {
         public String[] getLabels() {
             return labels;
         }
+
+        public int getNumberIssues() {
+            return numberIssues;
+        }
     }
 }
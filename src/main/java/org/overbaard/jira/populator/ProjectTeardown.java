@@ -0,0 +1,202 @@
+package org.overbaard.jira.populator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriBuilder;
+
+/**
+ * Clears out what an earlier run left behind before populating. The projects to tear down are found up front, and
+ * are then torn down concurrently on the project stage, since deleting a big project can take Jira minutes.
+ * <p>
+ * Depending on the mode each project is either deleted outright, deleted by one of Jira's background tasks which we
+ * poll until it is done, or emptied of its issues so that the project, its components and its versions can be reused.
+ *
+ * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
+ */
+class ProjectTeardown {
+    /**
+     * Deletes each project with a DELETE, which blocks until Jira is done. The default.
+     */
+    static final String DELETE_PROJECT = "project";
+    /**
+     * Has Jira delete each project in a background task, which we poll. Falls back to {@link #DELETE_PROJECT} if
+     * Jira does not have the endpoint.
+     */
+    static final String DELETE_PROJECT_ASYNC = "async";
+    /**
+     * Only deletes the issues of each project.
+     */
+    static final String DELETE_ISSUES = "issues";
+
+    private static final Logger LOG = Logger.getLogger(ProjectTeardown.class.getName());
+
+    private static final long POLL_INTERVAL_MS = 1000;
+    // The most issues Jira returns in one page of a search
+    private static final int SEARCH_PAGE_SIZE = 1000;
+
+    private final RestClientFactory factory;
+    private final Pipeline pipeline;
+    private final String mode;
+
+    ProjectTeardown(RestClientFactory factory, Pipeline pipeline, String mode) {
+        if (!mode.equals(DELETE_PROJECT) && !mode.equals(DELETE_PROJECT_ASYNC) && !mode.equals(DELETE_ISSUES)) {
+            throw new IllegalArgumentException("Unknown delete mode '" + mode + "', use " + DELETE_PROJECT + ", " +
+                    DELETE_PROJECT_ASYNC + " or " + DELETE_ISSUES);
+        }
+        this.factory = factory;
+        this.pipeline = pipeline;
+        this.mode = mode;
+    }
+
+    /**
+     * Whether the projects are kept, and only their issues deleted.
+     */
+    boolean isKeepProjects() {
+        return mode.equals(DELETE_ISSUES);
+    }
+
+    void teardown(List<String> projectKeys) {
+        if (projectKeys.isEmpty()) {
+            return;
+        }
+        LOG.info("Tearing down projects " + projectKeys + "...");
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        for (String projectKey : projectKeys) {
+            tasks.add(pipeline.getProjectStage().execute(() -> {
+                switch (mode) {
+                    case DELETE_ISSUES:
+                        deleteIssues(projectKey);
+                        break;
+                    case DELETE_PROJECT_ASYNC:
+                        deleteProjectAsync(projectKey);
+                        break;
+                    default:
+                        deleteProject(projectKey);
+                }
+            }));
+        }
+        BoundedExecutor.awaitAll(tasks);
+        LOG.info("Tore down projects " + projectKeys);
+    }
+
+    private void deleteProject(String projectKey) {
+        LOG.info("Deleting project " + projectKey + "...");
+        UriBuilder builder = factory.getJiraRestUriBuilder();
+        builder.path("project").path(projectKey);
+        factory.delete(builder);
+        LOG.info("Deleted project " + projectKey);
+    }
+
+    private void deleteProjectAsync(String projectKey) {
+        LOG.info("Deleting project " + projectKey + " in the background...");
+        UriBuilder builder = factory.getJiraRestUriBuilder();
+        builder.path("project").path(projectKey).path("delete");
+        Response response = factory.post(builder, (JsonPayload) null, false);
+        final String taskId;
+        if (response.getStatus() == 303) {
+            // Jira points us at the task
+            String location = response.getHeaderString(HttpHeaders.LOCATION);
+            taskId = location.substring(location.lastIndexOf('/') + 1);
+        } else if (response.getStatus() == 404 || response.getStatus() == 405) {
+            LOG.warning("Jira cannot delete projects in the background, deleting " + projectKey + " directly");
+            deleteProject(projectKey);
+            return;
+        } else if (response.getStatusInfo().getFamily() == Response.Status.Family.SUCCESSFUL) {
+            // The redirect was followed, so this is the task itself
+            taskId = readTaskId(response);
+        } else {
+            throw new RuntimeException("Error deleting project " + projectKey + ". " + response.getStatus() + " " + response.readEntity(String.class));
+        }
+        while (true) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(POLL_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted waiting for project " + projectKey + " to be deleted", e);
+            }
+            builder = factory.getJiraRestUriBuilder();
+            builder.path("task").path(taskId);
+            String status = factory.get(builder, ResponseReader.field("status"));
+            switch (status) {
+                case "COMPLETE":
+                    LOG.info("Deleted project " + projectKey);
+                    return;
+                case "FAILED":
+                case "CANCELLED":
+                case "DEAD":
+                    throw new RuntimeException("Deleting project " + projectKey + " ended with " + status);
+                default:
+                    LOG.fine(() -> "Deleting project " + projectKey + ": " + status);
+            }
+        }
+    }
+
+    private static String readTaskId(Response response) {
+        try (InputStream in = response.readEntity(InputStream.class)) {
+            return JsonReader.read(in, ResponseReader.field("id"), null);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read the project delete task", e);
+        }
+    }
+
+    private void deleteIssues(String projectKey) {
+        LOG.info("Deleting the issues of project " + projectKey + "...");
+        // Deleting issues moves the ones after them to earlier pages, so rather than paging through delete the first
+        // page each time until there is nothing left. This also catches issues which get created while we are at it
+        Set<String> deleted = new HashSet<>();
+        while (true) {
+            UriBuilder builder = factory.getJiraRestUriBuilder();
+            builder.path("search")
+                    .queryParam("jql", "project = \"" + projectKey + "\" ORDER BY key")
+                    .queryParam("fields", "key")
+                    .queryParam("startAt", 0)
+                    .queryParam("maxResults", SEARCH_PAGE_SIZE);
+            List<String> page = factory.get(builder, ProjectTeardown::readIssueKeys);
+            if (page.isEmpty()) {
+                break;
+            }
+            TaskTracker tasks = new TaskTracker("deleting the issues of " + projectKey);
+            for (String issueKey : page) {
+                if (!deleted.add(issueKey)) {
+                    // Without this, an issue which would not go away would have us search forever
+                    throw new RuntimeException("Issue " + issueKey + " was still found after deleting it");
+                }
+                tasks.track(pipeline.getCreateStage().execute(() -> {
+                    UriBuilder deleteBuilder = factory.getJiraRestUriBuilder();
+                    deleteBuilder.path("issue").path(issueKey).queryParam("deleteSubtasks", true);
+                    factory.delete(deleteBuilder);
+                }));
+            }
+            tasks.await();
+        }
+        LOG.info("Deleted " + deleted.size() + " issues of project " + projectKey);
+    }
+
+    private static List<String> readIssueKeys(JsonReader reader) throws IOException {
+        List<String> issueKeys = new ArrayList<>();
+        reader.beginObject();
+        if (!reader.findName("issues")) {
+            throw new IOException("The response has no issues");
+        }
+        reader.beginArray();
+        while (reader.hasNext()) {
+            reader.beginObject();
+            if (!reader.findName("key")) {
+                throw new IOException("An issue has no key");
+            }
+            issueKeys.add(reader.nextString());
+            reader.skipRestOfObject();
+        }
+        return issueKeys;
+    }
+}
@@ -0,0 +1,77 @@
+package org.overbaard.jira.populator;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket limiting how many requests per second we send. It can also be paused altogether, which is what we
+ * do when Jira tells us to back off with a {@code Retry-After} header.
+ *
+ * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
+ */
+class RateLimiter {
+    private final double permitsPerNano;
+    private final double burst;
+
+    // Guarded by this
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+    private long pausedUntil = System.nanoTime();
+
+    /**
+     * @param permitsPerSecond the sustained rate, or {@code <= 0} for no limit
+     * @param burst the number of requests which may be sent at once after a quiet period
+     */
+    RateLimiter(double permitsPerSecond, int burst) {
+        this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.burst = Math.max(burst, 1);
+        this.tokens = this.burst;
+    }
+
+    void acquire() {
+        long waitNanos;
+        while ((waitNanos = tryAcquire()) > 0) {
+            sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Takes a permit if there is one, without waiting.
+     *
+     * @return {@code 0} if a permit was taken, otherwise how long to wait before trying again
+     */
+    synchronized long tryAcquire() {
+        long now = System.nanoTime();
+        if (pausedUntil - now > 0) {
+            return pausedUntil - now;
+        }
+        if (permitsPerNano <= 0) {
+            return 0;
+        }
+        tokens = Math.min(burst, tokens + (now - lastRefill) * permitsPerNano);
+        lastRefill = now;
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return Math.max(1, (long) Math.ceil((1 - tokens) / permitsPerNano));
+    }
+
+    /**
+     * Stops handing out permits for a while.
+     */
+    synchronized void pause(long nanos) {
+        long until = System.nanoTime() + nanos;
+        if (until - pausedUntil > 0) {
+            pausedUntil = until;
+        }
+    }
+
+    static void sleep(long nanos) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted", e);
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package org.overbaard.jira.populator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.ws.rs.HttpMethod;
+
+/**
+ * A gzipped binary log of the requests sent to Jira, for {@link RequestReplayer} to send again. Each entry has the
+ * method, the path and query relative to the Jira URL, the body exactly as it was sent, when it was sent relative to
+ * the start of the log, and the status it got.
+ * <p>
+ * What a request created can't be sent again as it was, since replaying against another Jira, or the same one after a
+ * teardown, gives the issues other keys and everything other ids. So for successful POSTs the entry also has the keys
+ * and ids from the response, which the replayer uses to map the ones recorded in later requests to the new ones.
+ * <p>
+ * Entries are written as their requests complete, so a request always comes after the ones it got its keys from.
+ *
+ * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
+ */
+class RequestLog {
+    // 'OBRR'
+    private static final int MAGIC = 0x4f425252;
+    private static final int VERSION = 1;
+    private static final String[] METHODS = {HttpMethod.GET, HttpMethod.POST, HttpMethod.PUT, HttpMethod.DELETE};
+    private static final int BUFFER_SIZE = 65536;
+
+    private static final Logger LOG = Logger.getLogger(RequestLog.class.getName());
+
+    private RequestLog() {
+    }
+
+    static Writer create(String file) {
+        try {
+            FileChannel channel = FileChannel.open(Paths.get(file),
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE), BUFFER_SIZE));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            return new Writer(file, out);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not create the request log " + file, e);
+        }
+    }
+
+    static Reader open(String file) {
+        try {
+            FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new GZIPInputStream(Channels.newInputStream(channel), BUFFER_SIZE), BUFFER_SIZE));
+            if (in.readInt() != MAGIC) {
+                in.close();
+                throw new IOException("Not a request log");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                in.close();
+                throw new IOException("Unknown request log version " + version);
+            }
+            return new Reader(file, in);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not open the request log " + file, e);
+        }
+    }
+
+    /**
+     * Reads the keys and ids of whatever a POST created from its response. That is either a single entity, or, for a
+     * bulk create, the {@code issues} which were created.
+     */
+    static Created readCreated(byte[] response) {
+        Created created = new Created();
+        if (response == null || response.length == 0) {
+            return created;
+        }
+        try {
+            JsonReader.read(new ByteArrayInputStream(response), reader -> {
+                if (reader.peek() != JsonReader.Token.BEGIN_OBJECT) {
+                    return null;
+                }
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    if (name.equals("issues") && reader.peek() == JsonReader.Token.BEGIN_ARRAY) {
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            readEntity(reader, created);
+                        }
+                        reader.endArray();
+                    } else if (name.equals("key") || name.equals("id")) {
+                        created.add(name, reader.nextString());
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                return null;
+            }, null);
+        } catch (IOException e) {
+            // Not JSON, so it created nothing we know how to refer to
+        }
+        return created;
+    }
+
+    private static void readEntity(JsonReader reader, Created created) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("key") || name.equals("id")) {
+                created.add(name, reader.nextString());
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    static class Entry {
+        final long offsetNanos;
+        final String method;
+        final String path;
+        // null for none
+        final byte[] body;
+        final int status;
+        final Created created;
+
+        Entry(long offsetNanos, String method, String path, byte[] body, int status, Created created) {
+            this.offsetNanos = offsetNanos;
+            this.method = method;
+            this.path = path;
+            this.body = body;
+            this.status = status;
+            this.created = created;
+        }
+    }
+
+    /**
+     * The keys and ids of what a request created, in the order they were in the response.
+     */
+    static class Created {
+        static final Created NONE = new Created(Collections.emptyList(), Collections.emptyList());
+
+        final List<String> keys;
+        final List<String> ids;
+
+        private Created() {
+            this(new ArrayList<>(), new ArrayList<>());
+        }
+
+        private Created(List<String> keys, List<String> ids) {
+            this.keys = keys;
+            this.ids = ids;
+        }
+
+        private void add(String name, String value) {
+            if (value != null) {
+                (name.equals("key") ? keys : ids).add(value);
+            }
+        }
+    }
+
+    static class Writer implements AutoCloseable {
+        private final String file;
+        private final DataOutputStream out;
+        private final long start = System.nanoTime();
+        private boolean failed;
+
+        private Writer(String file, DataOutputStream out) {
+            this.file = file;
+            this.out = out;
+        }
+
+        /**
+         * Adds a request to the log. Failing to write it only gets logged, and stops the recording, since the
+         * populating matters more.
+         *
+         * @param startNanos the {@link System#nanoTime()} the request was first sent at
+         */
+        synchronized void write(long startNanos, String method, String path, byte[] body, int status, Created created) {
+            if (failed) {
+                return;
+            }
+            try {
+                out.writeLong(Math.max(startNanos - start, 0));
+                out.writeByte(methodIndex(method));
+                writeBytes(path.getBytes(StandardCharsets.UTF_8));
+                writeBytes(body);
+                out.writeShort(status);
+                writeStrings(created.keys);
+                writeStrings(created.ids);
+            } catch (IOException e) {
+                failed = true;
+                LOG.log(Level.WARNING, "Could not write to the request log " + file + ", no longer recording", e);
+            }
+        }
+
+        private static int methodIndex(String method) {
+            for (int i = 0; i < METHODS.length; i++) {
+                if (METHODS[i].equals(method)) {
+                    return i;
+                }
+            }
+            throw new IllegalArgumentException("Can't log " + method + " requests");
+        }
+
+        private void writeBytes(byte[] bytes) throws IOException {
+            if (bytes == null) {
+                out.writeInt(-1);
+            } else {
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+
+        private void writeStrings(List<String> strings) throws IOException {
+            out.writeShort(strings.size());
+            for (String string : strings) {
+                out.writeUTF(string);
+            }
+        }
+
+        @Override
+        public synchronized void close() {
+            try {
+                out.close();
+            } catch (IOException e) {
+                throw new RuntimeException("Could not close the request log " + file, e);
+            }
+        }
+    }
+
+    static class Reader implements AutoCloseable {
+        private final String file;
+        private final DataInputStream in;
+
+        private Reader(String file, DataInputStream in) {
+            this.file = file;
+            this.in = in;
+        }
+
+        /**
+         * @return the next entry, or {@code null} at the end of the log
+         */
+        Entry next() {
+            try {
+                final long offsetNanos;
+                try {
+                    offsetNanos = in.readLong();
+                } catch (EOFException e) {
+                    return null;
+                }
+                String method = METHODS[in.readByte()];
+                String path = new String(readBytes(), StandardCharsets.UTF_8);
+                byte[] body = readBytes();
+                int status = in.readShort();
+                List<String> keys = readStrings();
+                List<String> ids = readStrings();
+                return new Entry(offsetNanos, method, path, body, status,
+                        keys.isEmpty() && ids.isEmpty() ? Created.NONE : new Created(keys, ids));
+            } catch (IOException e) {
+                throw new RuntimeException("Could not read the request log " + file, e);
+            }
+        }
+
+        private byte[] readBytes() throws IOException {
+            int length = in.readInt();
+            if (length < 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return bytes;
+        }
+
+        private List<String> readStrings() throws IOException {
+            int count = in.readUnsignedShort();
+            List<String> strings = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                strings.add(in.readUTF());
+            }
+            return strings;
+        }
+
+        @Override
+        public void close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                throw new RuntimeException("Could not close the request log " + file, e);
+            }
+        }
+    }
+}
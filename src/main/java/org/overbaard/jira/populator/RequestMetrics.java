@@ -0,0 +1,252 @@
+package org.overbaard.jira.populator;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import org.jboss.dmr.ModelNode;
+
+/**
+ * Counts what a populate run does: the requests made to each endpoint, how long they took and how many bytes went
+ * each way, and the issues, transitions and links created. While the run is going it logs a progress line every so
+ * often, and at the end it logs a summary and optionally writes a JSON report.
+ * <p>
+ * Endpoints are identified by method and path, with the keys and ids in the path replaced by placeholders so that
+ * e.g. all {@code POST issue/{issueKey}/transitions} requests are counted together.
+ *
+ * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
+ */
+class RequestMetrics implements AutoCloseable {
+    static final int DEFAULT_PROGRESS_INTERVAL_SECONDS = 10;
+
+    private static final Logger LOG = Logger.getLogger(RequestMetrics.class.getName());
+
+    private static final String REST_API_PATH = "rest/api/2/";
+    private static final Pattern ISSUE_KEY = Pattern.compile("[A-Z][A-Z0-9_]*-[0-9]+");
+    private static final Pattern NUMBER = Pattern.compile("[0-9]+");
+
+    private final String basePath;
+    private final long startNanos = System.nanoTime();
+    private final ConcurrentMap<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    private final AtomicLong expectedIssues = new AtomicLong();
+    private final AtomicLong issuesCreated = new AtomicLong();
+    private final AtomicLong issuesResumed = new AtomicLong();
+    private final AtomicLong issuesTransitioned = new AtomicLong();
+    private final AtomicLong issuesLinked = new AtomicLong();
+
+    private final ScheduledExecutorService reporter;
+
+    /**
+     * @param jiraUri the Jira base URI, which along with the REST API path gets stripped from the endpoint paths
+     * @param progressIntervalSeconds how often to log the progress line, or 0 for never
+     */
+    RequestMetrics(String jiraUri, int progressIntervalSeconds) {
+        String path = URI.create(jiraUri).getPath();
+        this.basePath = path == null ? "/" : path.endsWith("/") ? path : path + "/";
+        if (progressIntervalSeconds > 0) {
+            reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "progress-reporter");
+                thread.setDaemon(true);
+                return thread;
+            });
+            reporter.scheduleAtFixedRate(() -> LOG.info(getProgress()),
+                    progressIntervalSeconds, progressIntervalSeconds, TimeUnit.SECONDS);
+        } else {
+            reporter = null;
+        }
+    }
+
+    /**
+     * Records one attempt at a request.
+     *
+     * @param status the HTTP status, or -1 if no response was received
+     */
+    void requestCompleted(String method, URI uri, int status, long latencyNanos, long bytesSent, long bytesReceived) {
+        Endpoint endpoint = endpoints.computeIfAbsent(method + " " + getEndpointPath(uri.getPath()), k -> new Endpoint());
+        endpoint.latency.recordNanos(latencyNanos);
+        if (status < 0 || status >= 400) {
+            endpoint.errors.incrementAndGet();
+        }
+        endpoint.bytesSent.addAndGet(bytesSent);
+        endpoint.bytesReceived.addAndGet(Math.max(bytesReceived, 0));
+    }
+
+    /**
+     * Records the body of a response which was read after {@link #requestCompleted} was called for it.
+     */
+    void bytesReceived(String method, URI uri, long bytes) {
+        endpoints.computeIfAbsent(method + " " + getEndpointPath(uri.getPath()), k -> new Endpoint())
+                .bytesReceived.addAndGet(bytes);
+    }
+
+    void addExpectedIssues(int count) {
+        expectedIssues.addAndGet(count);
+    }
+
+    void issueCreated() {
+        issuesCreated.incrementAndGet();
+    }
+
+    long getIssuesCreated() {
+        return issuesCreated.get();
+    }
+
+    /**
+     * An issue which an earlier run created.
+     */
+    void issueResumed() {
+        issuesResumed.incrementAndGet();
+    }
+
+    void issueTransitioned() {
+        issuesTransitioned.incrementAndGet();
+    }
+
+    void issuesLinked() {
+        issuesLinked.incrementAndGet();
+    }
+
+    private String getEndpointPath(String path) {
+        String relative = path.startsWith(basePath) ? path.substring(basePath.length()) : path;
+        if (relative.startsWith(REST_API_PATH)) {
+            relative = relative.substring(REST_API_PATH.length());
+        }
+        String[] segments = relative.split("/");
+        StringBuilder sb = new StringBuilder();
+        String previous = null;
+        for (String segment : segments) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+            if (sb.length() > 0) {
+                sb.append('/');
+            }
+            if ("project".equals(previous)) {
+                sb.append("{projectKey}");
+            } else if (ISSUE_KEY.matcher(segment).matches()) {
+                sb.append("{issueKey}");
+            } else if (NUMBER.matcher(segment).matches()) {
+                sb.append("{id}");
+            } else {
+                sb.append(segment);
+            }
+            previous = segment;
+        }
+        return sb.toString();
+    }
+
+    String getProgress() {
+        double seconds = getElapsedSeconds();
+        long created = issuesCreated.get();
+        long done = created + issuesResumed.get();
+        long expected = expectedIssues.get();
+        double rate = seconds > 0 ? created / seconds : 0;
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Issues %d/%d (%.1f/s), %d transitioned, %d links, %d requests (%d errors)",
+                done, expected, rate, issuesTransitioned.get(), issuesLinked.get(), getRequests(), getErrors()));
+        if (rate > 0 && expected > done) {
+            long eta = (long) ((expected - done) / rate);
+            sb.append(String.format(", ETA %d:%02d:%02d", eta / 3600, (eta / 60) % 60, eta % 60));
+        }
+        return sb.toString();
+    }
+
+    private double getElapsedSeconds() {
+        return (System.nanoTime() - startNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+
+    private long getRequests() {
+        long requests = 0;
+        for (Endpoint endpoint : endpoints.values()) {
+            requests += endpoint.latency.getCount();
+        }
+        return requests;
+    }
+
+    private long getErrors() {
+        long errors = 0;
+        for (Endpoint endpoint : endpoints.values()) {
+            errors += endpoint.errors.get();
+        }
+        return errors;
+    }
+
+    ModelNode toModelNode() {
+        double seconds = getElapsedSeconds();
+        ModelNode report = new ModelNode();
+        report.get("duration-ms").set((long) (seconds * 1000));
+        ModelNode issues = report.get("issues");
+        issues.get("expected").set(expectedIssues.get());
+        issues.get("created").set(issuesCreated.get());
+        issues.get("resumed").set(issuesResumed.get());
+        issues.get("transitioned").set(issuesTransitioned.get());
+        issues.get("linked").set(issuesLinked.get());
+        issues.get("created-per-second").set(seconds > 0 ? issuesCreated.get() / seconds : 0);
+        ModelNode endpointsNode = report.get("endpoints");
+        endpointsNode.setEmptyObject();
+        for (Map.Entry<String, Endpoint> entry : new TreeMap<>(endpoints).entrySet()) {
+            Endpoint endpoint = entry.getValue();
+            ModelNode node = endpointsNode.get(entry.getKey());
+            node.get("count").set(endpoint.latency.getCount());
+            node.get("errors").set(endpoint.errors.get());
+            node.get("p50-ms").set(endpoint.latency.getPercentileMicros(50) / 1000.0);
+            node.get("p99-ms").set(endpoint.latency.getPercentileMicros(99) / 1000.0);
+            node.get("max-ms").set(endpoint.latency.getMaxMicros() / 1000.0);
+            node.get("bytes-sent").set(endpoint.bytesSent.get());
+            node.get("bytes-received").set(endpoint.bytesReceived.get());
+        }
+        return report;
+    }
+
+    /**
+     * Logs a line per endpoint, followed by the final progress line.
+     */
+    void logSummary() {
+        for (Map.Entry<String, Endpoint> entry : new TreeMap<>(endpoints).entrySet()) {
+            Endpoint endpoint = entry.getValue();
+            LOG.info(String.format("%-45s %7d requests %5d errors  p50 %8.1fms  p99 %8.1fms  max %8.1fms  %,d/%,d bytes",
+                    entry.getKey(), endpoint.latency.getCount(), endpoint.errors.get(),
+                    endpoint.latency.getPercentileMicros(50) / 1000.0,
+                    endpoint.latency.getPercentileMicros(99) / 1000.0,
+                    endpoint.latency.getMaxMicros() / 1000.0,
+                    endpoint.bytesSent.get(), endpoint.bytesReceived.get()));
+        }
+        LOG.info(getProgress());
+    }
+
+    void writeReport(String file) {
+        try {
+            Files.write(Paths.get(file), toModelNode().toJSONString(false).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write the metrics report to " + file, e);
+        }
+        LOG.info("Wrote metrics report to " + file);
+    }
+
+    @Override
+    public void close() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+        }
+    }
+
+    private static class Endpoint {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong bytesSent = new AtomicLong();
+        private final AtomicLong bytesReceived = new AtomicLong();
+    }
+}
@@ -0,0 +1,317 @@
+package org.overbaard.jira.populator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * Sends the requests of a {@link RequestLog} again, as a repeatable load. The bodies are sent as they were recorded,
+ * so nothing is generated or encoded on the way, and the requests are paced at the speed they were recorded at times
+ * {@code speed}. A speed of 0 sends them as fast as the concurrency and the throttle allow.
+ * <p>
+ * Whatever the recorded requests created will get other keys and ids this time round, so those are mapped to the new
+ * ones: in the path, in string values of the body, and in the {@code id} of an object named for what was created, as
+ * in {@code "project": {"id": 10000}}. A request which refers to something created by another waits for that to be
+ * created, and is skipped if it wasn't.
+ * <p>
+ * Failures do not stop the replay; they are counted and logged at the end, along with how many requests got another
+ * status than when they were recorded.
+ *
+ * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
+ */
+class RequestReplayer {
+    static final double DEFAULT_SPEED = 1.0;
+
+    private static final Logger LOG = Logger.getLogger(RequestReplayer.class.getName());
+
+    private final RestClientFactory factory;
+    private final double speed;
+    private final AsyncStage stage;
+    // What the recorded keys and ids are now. Keys are under "k:<key>", and ids under "i:<what>:<id>"
+    private final ConcurrentHashMap<String, CompletableFuture<String>> created = new ConcurrentHashMap<>();
+    private final TaskTracker tracker = new TaskTracker("replay");
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong differentStatus = new AtomicLong();
+
+    RequestReplayer(RestClientFactory factory, double speed, int concurrency) {
+        if (speed < 0) {
+            throw new IllegalArgumentException("The replay speed can't be negative: " + speed);
+        }
+        this.factory = factory;
+        this.speed = speed;
+        this.stage = new AsyncStage("replay", concurrency);
+    }
+
+    void replay(String file) {
+        LOG.info("Replaying " + file + (speed == 0 ? " as fast as possible" : " at " + speed + "x") + "...");
+        final long start = System.nanoTime();
+        try (RequestLog.Reader reader = RequestLog.open(file)) {
+            for (RequestLog.Entry entry = reader.next(); entry != null; entry = reader.next()) {
+                if (speed > 0) {
+                    waitUntil(start + (long) (entry.offsetNanos / speed));
+                }
+                replay(entry);
+            }
+        }
+        tracker.await();
+        LOG.info("Replayed " + file + " in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms. " +
+                "Sent " + sent.get() + " requests, " + failed.get() + " failed and " + skipped.get() +
+                " were skipped since what they refer to was not created. " + differentStatus.get() +
+                " got another status than when they were recorded");
+    }
+
+    private static void waitUntil(long due) {
+        long wait;
+        while ((wait = due - System.nanoTime()) > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted replaying the requests", e);
+            }
+        }
+    }
+
+    private void replay(RequestLog.Entry entry) {
+        // What it refers to is picked out as it is now, since what comes after may create the same again
+        final Map<String, CompletableFuture<String>> referenced = new HashMap<>();
+        final Request recorded = rewrite(entry, token -> {
+            CompletableFuture<String> future = created.get(token);
+            if (future != null) {
+                referenced.put(token, future);
+            }
+            return null;
+        });
+        // Whatever the entry created is registered before anything after it in the log can look for it, but after
+        // looking for what it refers to, since a request may well mention what it creates
+        final List<CompletableFuture<String>> creating = register(entry);
+        tracker.track(stage.submit(() -> {
+            if (referenced.isEmpty()) {
+                return send(entry, recorded, creating);
+            }
+            return CompletableFuture.allOf(referenced.values().toArray(new CompletableFuture<?>[0]))
+                    .thenCompose(v -> {
+                        for (CompletableFuture<String> future : referenced.values()) {
+                            if (future.join() == null) {
+                                skipped.incrementAndGet();
+                                created(creating, null);
+                                return CompletableFuture.completedFuture(null);
+                            }
+                        }
+                        return send(entry, rewrite(entry, token -> {
+                            CompletableFuture<String> future = referenced.get(token);
+                            return future == null ? null : future.join();
+                        }), creating);
+                    });
+        }));
+    }
+
+    private List<CompletableFuture<String>> register(RequestLog.Entry entry) {
+        List<CompletableFuture<String>> creating = new ArrayList<>(entry.created.keys.size() + entry.created.ids.size());
+        for (String key : entry.created.keys) {
+            creating.add(register(keyToken(key)));
+        }
+        String what = getCreatedType(entry.path);
+        for (String id : entry.created.ids) {
+            creating.add(register(idToken(what, id)));
+        }
+        return creating;
+    }
+
+    private CompletableFuture<String> register(String token) {
+        // If it was created again, say after a teardown, what comes after refers to the latest
+        CompletableFuture<String> future = new CompletableFuture<>();
+        created.put(token, future);
+        return future;
+    }
+
+    private CompletableFuture<Void> send(RequestLog.Entry entry, Request request, List<CompletableFuture<String>> creating) {
+        final CompletableFuture<HttpTransport.BufferedResponse> future;
+        try {
+            future = factory.sendAsync(entry.method, request.path, request.body);
+        } catch (RuntimeException e) {
+            failed(entry, e, creating);
+            return CompletableFuture.completedFuture(null);
+        }
+        sent.incrementAndGet();
+        return future.handle((response, failure) -> {
+            if (failure != null) {
+                failed(entry, failure, creating);
+                return null;
+            }
+            if (response.getStatus() != entry.status) {
+                differentStatus.incrementAndGet();
+                LOG.fine(() -> entry.method + " " + request.path + " got " + response.getStatus() +
+                        " rather than the recorded " + entry.status);
+            }
+            if (!creating.isEmpty()) {
+                RequestLog.Created now = response.isSuccessful() ?
+                        RequestLog.readCreated(response.getBody()) : RequestLog.Created.NONE;
+                if (now.keys.size() == entry.created.keys.size() && now.ids.size() == entry.created.ids.size()) {
+                    List<String> values = new ArrayList<>(now.keys);
+                    values.addAll(now.ids);
+                    created(creating, values);
+                } else {
+                    // Without knowing which did not get created, none of them can be mapped
+                    created(creating, null);
+                }
+            }
+            return null;
+        });
+    }
+
+    private void failed(RequestLog.Entry entry, Throwable failure, List<CompletableFuture<String>> creating) {
+        failed.incrementAndGet();
+        LOG.fine(() -> entry.method + " " + entry.path + " failed: " + failure);
+        created(creating, null);
+    }
+
+    /**
+     * @param values what was created, in the same order, or {@code null} if nothing could be
+     */
+    private static void created(List<CompletableFuture<String>> creating, List<String> values) {
+        for (int i = 0; i < creating.size(); i++) {
+            creating.get(i).complete(values == null ? null : values.get(i));
+        }
+    }
+
+    /**
+     * Makes the request with the recorded keys and ids replaced.
+     *
+     * @param mapper gets the new value of a token, or {@code null} to leave it as it was
+     */
+    private static Request rewrite(RequestLog.Entry entry, Function<String, String> mapper) {
+        int query = entry.path.indexOf('?');
+        String[] segments = (query < 0 ? entry.path : entry.path.substring(0, query)).split("/", -1);
+        StringBuilder path = new StringBuilder(entry.path.length());
+        for (int i = 0; i < segments.length; i++) {
+            if (i > 0) {
+                path.append('/');
+            }
+            String mapped = mapper.apply(keyToken(segments[i]));
+            path.append(mapped == null ? segments[i] : mapped);
+        }
+        if (query >= 0) {
+            path.append(entry.path, query, entry.path.length());
+        }
+        if (entry.body == null) {
+            return new Request(path.toString(), null);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(entry.body.length + 16);
+        try {
+            JsonWriter.write(writer -> JsonReader.read(new ByteArrayInputStream(entry.body), reader -> {
+                copy(reader, writer, null, null, mapper);
+                return null;
+            }, null), out);
+        } catch (IOException e) {
+            // Not something we know how to look inside, so send it as it was
+            return new Request(path.toString(), entry.body);
+        }
+        return new Request(path.toString(), out.toByteArray());
+    }
+
+    /**
+     * Copies a value, mapping the keys and ids in it.
+     *
+     * @param object the name of the object the value is in, or {@code null}
+     * @param name the name of the value in that object, or {@code null}
+     */
+    private static void copy(JsonReader reader, JsonWriter writer, String object, String name,
+                             Function<String, String> mapper) throws IOException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                reader.beginObject();
+                writer.beginObject();
+                while (reader.hasNext()) {
+                    String field = reader.nextName();
+                    writer.name(field);
+                    copy(reader, writer, name, field, mapper);
+                }
+                reader.endObject();
+                writer.endObject();
+                break;
+            case BEGIN_ARRAY:
+                reader.beginArray();
+                writer.beginArray();
+                while (reader.hasNext()) {
+                    copy(reader, writer, object, name, mapper);
+                }
+                reader.endArray();
+                writer.endArray();
+                break;
+            case STRING: {
+                String value = reader.nextString();
+                String mapped = map(object, name, value, mapper);
+                writer.value(mapped == null ? value : mapped);
+                break;
+            }
+            case NUMBER: {
+                String value = reader.nextString();
+                String mapped = map(object, name, value, mapper);
+                writer.rawValue(mapped == null ? value : mapped);
+                break;
+            }
+            case BOOLEAN:
+                writer.rawValue(reader.nextString());
+                break;
+            case NULL:
+                reader.nextString();
+                writer.rawValue("null");
+                break;
+            default:
+                throw new IOException("Unexpected " + reader.peek());
+        }
+    }
+
+    private static String map(String object, String name, String value, Function<String, String> mapper) {
+        if (object != null && "id".equals(name)) {
+            String mapped = mapper.apply(idToken(object, value));
+            if (mapped != null) {
+                return mapped;
+            }
+        }
+        return mapper.apply(keyToken(value));
+    }
+
+    /**
+     * Works out what a POST creates from where it was sent, e.g. {@code rest/api/2/project} creates a project and
+     * {@code rest/api/2/issue/bulk} creates issues.
+     */
+    private static String getCreatedType(String path) {
+        int end = path.indexOf('?');
+        String[] segments = (end < 0 ? path : path.substring(0, end)).split("/");
+        String last = segments[segments.length - 1];
+        return last.equals("bulk") && segments.length > 1 ? segments[segments.length - 2] : last;
+    }
+
+    private static String keyToken(String key) {
+        return "k:" + key;
+    }
+
+    private static String idToken(String what, String id) {
+        return "i:" + what + ":" + id;
+    }
+
+    private static class Request {
+        final String path;
+        final byte[] body;
+
+        Request(String path, byte[] body) {
+            this.path = path;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package org.overbaard.jira.populator;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides when {@link RestClientFactory} may send a request, and whether and when to retry one which failed for a
+ * transient reason. Requests go through a fixed {@link RateLimiter} and an {@link AimdConcurrencyLimiter}, which
+ * together settle on the highest load the server takes without throttling us. Retries are delayed by an exponential
+ * backoff with full jitter, or for as long as the server asked in its {@code Retry-After} header if that is longer.
+ *
+ * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
+ */
+class RequestThrottle {
+    static final double DEFAULT_RATE_LIMIT = 0;
+    static final int DEFAULT_MAX_RETRIES = 5;
+    static final int DEFAULT_BASE_DELAY_MS = 200;
+    static final int DEFAULT_MAX_DELAY_MS = 30000;
+    static final double DEFAULT_LATENCY_TOLERANCE = 3.0;
+
+    private final RateLimiter rateLimiter;
+    private final AimdConcurrencyLimiter concurrencyLimiter;
+    private final int maxRetries;
+    private final long baseDelayNanos;
+    private final long maxDelayNanos;
+
+    RequestThrottle(double rateLimit, int rateBurst, int maxConcurrency, double latencyTolerance,
+                    int maxRetries, int baseDelayMs, int maxDelayMs) {
+        this.rateLimiter = new RateLimiter(rateLimit, rateBurst);
+        this.concurrencyLimiter = new AimdConcurrencyLimiter(1, maxConcurrency, latencyTolerance);
+        this.maxRetries = maxRetries;
+        this.baseDelayNanos = TimeUnit.MILLISECONDS.toNanos(baseDelayMs);
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMs);
+    }
+
+    /**
+     * Blocks until the request may be sent. Must be followed by exactly one of {@link #onResponse(long)},
+     * {@link #onThrottled(long)} or {@link #onFailed()}.
+     */
+    void beforeRequest() {
+        rateLimiter.acquire();
+        concurrencyLimiter.acquire();
+    }
+
+    /**
+     * Like {@link #beforeRequest()}, but rather than blocking returns a future which completes once the request may
+     * be sent.
+     *
+     * @param scheduler used to wait for the rate limiter
+     */
+    CompletableFuture<Void> beforeRequestAsync(ScheduledExecutorService scheduler) {
+        long waitNanos = rateLimiter.tryAcquire();
+        if (waitNanos > 0) {
+            return delay(scheduler, waitNanos).thenCompose(v -> beforeRequestAsync(scheduler));
+        }
+        return concurrencyLimiter.acquireAsync();
+    }
+
+    void onResponse(long latencyNanos) {
+        concurrencyLimiter.onSuccess(latencyNanos);
+    }
+
+    /**
+     * @param retryAfterNanos how long the server asked us to wait, or {@code 0} if it did not say
+     */
+    void onThrottled(long retryAfterNanos) {
+        concurrencyLimiter.onThrottled();
+        if (retryAfterNanos > 0) {
+            // Hold back everybody, not just the request which got throttled
+            rateLimiter.pause(retryAfterNanos);
+        }
+    }
+
+    void onFailed() {
+        concurrencyLimiter.onDropped();
+    }
+
+    boolean canRetry(int attempt) {
+        return attempt < maxRetries;
+    }
+
+    /**
+     * Waits before the given retry of a request.
+     */
+    void backoff(int attempt, long retryAfterNanos) {
+        RateLimiter.sleep(getBackoffNanos(attempt, retryAfterNanos));
+    }
+
+    /**
+     * Like {@link #backoff(int, long)}, but returns a future which completes once the retry may be sent.
+     */
+    CompletableFuture<Void> backoffAsync(ScheduledExecutorService scheduler, int attempt, long retryAfterNanos) {
+        return delay(scheduler, getBackoffNanos(attempt, retryAfterNanos));
+    }
+
+    private long getBackoffNanos(int attempt, long retryAfterNanos) {
+        long ceiling = Math.min(maxDelayNanos, baseDelayNanos << Math.min(attempt, 30));
+        long delay = ThreadLocalRandom.current().nextLong(ceiling + 1);
+        return Math.max(delay, retryAfterNanos);
+    }
+
+    private static CompletableFuture<Void> delay(ScheduledExecutorService scheduler, long nanos) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        scheduler.schedule(() -> future.complete(null), nanos, TimeUnit.NANOSECONDS);
+        return future;
+    }
+}
@@ -0,0 +1,26 @@
+package org.overbaard.jira.populator;
+
+import java.io.IOException;
+
+/**
+ * Reads what we need from a response body as it streams in. It may stop reading as soon as it has found it.
+ *
+ * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
+ */
+@FunctionalInterface
+interface ResponseReader<T> {
+    T read(JsonReader reader) throws IOException;
+
+    /**
+     * Reads a top level field of the response object, e.g. the {@code key} of a created issue.
+     */
+    static ResponseReader<String> field(String name) {
+        return reader -> {
+            reader.beginObject();
+            if (!reader.findName(name)) {
+                throw new IOException("The response has no " + name);
+            }
+            return reader.nextString();
+        };
+    }
+}
@@ -20,29 +20,50 @@
 
 package org.overbaard.jira.populator;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.net.URI;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
 
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.ProcessingException;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.ClientRequestContext;
 import javax.ws.rs.client.ClientRequestFilter;
 import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.Invocation;
 import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriBuilder;
+import javax.ws.rs.ext.MessageBodyWriter;
 import javax.xml.bind.DatatypeConverter;
 
-import org.apache.http.client.HttpClient;
-import org.apache.http.conn.HttpClientConnectionManager;
-import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.jboss.dmr.ModelNode;
 import org.jboss.resteasy.client.jaxrs.ResteasyClientBuilder;
-import org.jboss.resteasy.client.jaxrs.engines.ApacheHttpClient4Engine;
 
 /**
  * @author Kabir Khan
@@ -51,6 +72,11 @@ class RestClientFactory implements AutoCloseable {
 
     private static final Charset CHARACTER_SET = Charset.forName("iso-8859-1");
 
+    private static final Logger LOG = Logger.getLogger(RestClientFactory.class.getName());
+
+    // Asynchronous requests are in flight without a thread; these just handle the responses and the waits
+    private static final int ASYNC_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
     private final String jiraUri;
     private final String username;
     private final String password;
@@ -58,25 +84,59 @@ class RestClientFactory implements AutoCloseable {
     //Set this for each request
     private volatile long lastAccess = System.currentTimeMillis();
     private volatile long nextRefresh = 0;
-    //Lazy initialize this for requests which need it, and clear it when the request is done'
-    private volatile Client client = null;
+
+    // The client and its transport live as long as this factory, so that connections are kept alive and reused
+    // between requests. They are only released in close()
+    private final HttpTransport transport;
+    private final Client client;
+    private final RequestThrottle throttle;
+    private final RequestMetrics metrics;
+    private final ScheduledExecutorService asyncExecutor;
+    private final Map<String, String> asyncHeaders;
+    private final Map<String, String> asyncJsonHeaders;
+    // When set, every request which gets a response is written to this
+    private volatile RequestLog.Writer recorder;
 
     RestClientFactory(String jiraUri, String username, String password) {
+        this(jiraUri, username, password,
+                new ApacheHttpTransport(ApacheHttpTransport.DEFAULT_MAX_CONNECTIONS,
+                        ApacheHttpTransport.DEFAULT_MAX_CONNECTIONS_PER_ROUTE, ApacheHttpTransport.DEFAULT_IDLE_TIMEOUT_SECONDS),
+                new RequestThrottle(RequestThrottle.DEFAULT_RATE_LIMIT, 1, ApacheHttpTransport.DEFAULT_MAX_CONNECTIONS,
+                        RequestThrottle.DEFAULT_LATENCY_TOLERANCE, RequestThrottle.DEFAULT_MAX_RETRIES,
+                        RequestThrottle.DEFAULT_BASE_DELAY_MS, RequestThrottle.DEFAULT_MAX_DELAY_MS),
+                new RequestMetrics(jiraUri, 0));
+    }
+
+    RestClientFactory(String jiraUri, String username, String password,
+                      HttpTransport transport, RequestThrottle throttle, RequestMetrics metrics) {
         this.jiraUri = jiraUri.charAt(jiraUri.length() - 1) == '/' ? jiraUri : jiraUri + "/";
         this.username = username;
         this.password = password;
+        this.throttle = throttle;
+        this.metrics = metrics;
+        this.transport = transport;
+
+        client = ((ResteasyClientBuilder) ClientBuilder.newBuilder())
+                .httpEngine(transport.getEngine())
+                .register(new Authenticator())
+                .register(new JsonBodyWriter())
+                .build();
+
+        AtomicInteger threads = new AtomicInteger();
+        asyncExecutor = new ScheduledThreadPoolExecutor(ASYNC_THREADS, r -> {
+            Thread thread = new Thread(r, "async-requests-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Map<String, String> headers = new HashMap<>();
+        headers.put(HttpHeaders.AUTHORIZATION, new Authenticator().getBasicAuthentication());
+        headers.put(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON);
+        asyncHeaders = Collections.unmodifiableMap(new HashMap<>(headers));
+        headers.put(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON);
+        asyncJsonHeaders = Collections.unmodifiableMap(headers);
     }
 
     private Client getClient() {
-        if (client == null) {
-            HttpClientConnectionManager cm = new PoolingHttpClientConnectionManager();
-            HttpClient httpClient = HttpClientBuilder.create().build();
-            ApacheHttpClient4Engine engine = new ApacheHttpClient4Engine(httpClient);
-            client = ((ResteasyClientBuilder) ClientBuilder.newBuilder())
-                    .httpEngine(engine)
-                    .register(new Authenticator())
-                    .build();
-        }
         return client;
     }
 
@@ -92,75 +152,446 @@ class RestClientFactory implements AutoCloseable {
         return getJiraUriBuilder().path("rest").path("api").path("2");
     }
 
+    RequestMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Records every request sent from now on, to be replayed by a {@link RequestReplayer}. The log is closed along
+     * with this factory.
+     */
+    void record(RequestLog.Writer recorder) {
+        this.recorder = recorder;
+    }
 
     @Override
     public void close() {
-        if (client != null) {
-            client.close();
+        asyncExecutor.shutdownNow();
+        client.close();
+        transport.close();
+        if (recorder != null) {
+            recorder.close();
         }
-        client = null;
+    }
+
+    /**
+     * Reads the response body into memory so that the underlying connection is handed back to the pool straight
+     * away, even if the caller never reads the entity.
+     */
+    private Response release(Response response) {
+        if (!response.hasEntity() || !response.bufferEntity()) {
+            response.close();
+        }
+        return response;
     }
 
     Response get(UriBuilder builder, boolean error) {
-        try {
-            final WebTarget target = getClient().target(builder);
-            final Response response = target.request(MediaType.APPLICATION_JSON_TYPE).get();
+        final Response response = execute(HttpMethod.GET, builder, null, false);
 
-            if (error && response.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
-                throw new RuntimeException("Error looking up the avatars: " + response.readEntity(String.class));
-            }
-            return response;
-        } finally {
-            // Close the client
-            close();
+        if (error && response.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
+            throw new RuntimeException("Error looking up the avatars: " + response.readEntity(String.class));
         }
+        return response;
     }
 
     public Response post(UriBuilder builder, ModelNode payload) {
-        try {
-            final WebTarget target = getClient().target(builder);
-            final Response response =
-                    target.request(MediaType.APPLICATION_JSON_TYPE).post(Entity.json((payload.toJSONString(true))));
+        return post(builder, JsonPayload.of(payload), true);
+    }
+
+    public Response post(UriBuilder builder, ModelNode payload, boolean error) {
+        return post(builder, JsonPayload.of(payload), error);
+    }
 
+    Response post(UriBuilder builder, JsonPayload payload) {
+        return post(builder, payload, true);
+    }
+
+    Response post(UriBuilder builder, JsonPayload payload, boolean error) {
+        final Response response = execute(HttpMethod.POST, builder, payload, false);
+
+        if (error && response.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
+            throw new RuntimeException(response.readEntity(String.class));
+        }
+        return response;
+    }
+
+    public Response put(UriBuilder builder, ModelNode payload) {
+        return put(builder, JsonPayload.of(payload));
+    }
+
+    Response put(UriBuilder builder, JsonPayload payload) {
+        final Response response = execute(HttpMethod.PUT, builder, payload, false);
+
+        if (response.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
+            throw new RuntimeException(response.readEntity(String.class));
+        }
+        return response;
+    }
+
+    public Response delete(UriBuilder builder) {
+        final Response response = execute(HttpMethod.DELETE, builder, null, false);
+
+        if (response.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
+            throw new RuntimeException(response.readEntity(String.class));
+        }
+        return response;
+    }
+
+    <T> T get(UriBuilder builder, ResponseReader<T> reader) {
+        return read(HttpMethod.GET, builder, null, reader, true);
+    }
+
+    /**
+     * @param error whether to throw an exception if the request fails, rather than returning {@code null}
+     */
+    <T> T get(UriBuilder builder, ResponseReader<T> reader, boolean error) {
+        return read(HttpMethod.GET, builder, null, reader, error);
+    }
+
+    <T> T post(UriBuilder builder, JsonPayload payload, ResponseReader<T> reader) {
+        return read(HttpMethod.POST, builder, payload, reader, true);
+    }
+
+    /**
+     * @param error whether to throw an exception if the request fails, rather than returning {@code null}
+     */
+    <T> T post(UriBuilder builder, JsonPayload payload, ResponseReader<T> reader, boolean error) {
+        return read(HttpMethod.POST, builder, payload, reader, error);
+    }
+
+    /**
+     * Sends the request and reads what we need from the response as it streams in, rather than buffering it. When
+     * recording, the response is buffered after all, so that what it created can be recorded.
+     */
+    private <T> T read(String method, UriBuilder builder, JsonPayload payload, ResponseReader<T> reader, boolean error) {
+        final Response response = execute(method, builder, payload, recorder == null);
+        try {
             if (response.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
-                throw new RuntimeException(response.readEntity(String.class));
+                if (error) {
+                    throw new RuntimeException(response.readEntity(String.class));
+                }
+                return null;
+            }
+            final long[] length = new long[1];
+            try (InputStream in = response.readEntity(InputStream.class)) {
+                // Read to the end, which both counts the bytes and leaves the connection fit to be re-used
+                return JsonReader.read(in, reader, length);
+            } catch (IOException e) {
+                throw new RuntimeException("Error reading the response to " + method + " " + builder.toTemplate(), e);
+            } finally {
+                metrics.bytesReceived(method, builder.build(), length[0]);
             }
-            return response;
         } finally {
-            // Close the client
-            close();
+            response.close();
         }
     }
 
-    public Response put(UriBuilder builder, ModelNode payload) {
-        try {
-            final WebTarget target = getClient().target(builder);
-            final Response response =
-                    target.request(MediaType.APPLICATION_JSON_TYPE).put(Entity.json((payload.toJSONString(true))));
+    <T> CompletableFuture<T> getAsync(UriBuilder builder, ResponseReader<T> reader) {
+        return readAsync(HttpMethod.GET, builder, null, reader, true);
+    }
 
-            if (response.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
-                throw new RuntimeException(response.readEntity(String.class));
+    CompletableFuture<Void> postAsync(UriBuilder builder, JsonPayload payload) {
+        return readAsync(HttpMethod.POST, builder, payload, null, true);
+    }
+
+    <T> CompletableFuture<T> postAsync(UriBuilder builder, JsonPayload payload, ResponseReader<T> reader) {
+        return readAsync(HttpMethod.POST, builder, payload, reader, true);
+    }
+
+    /**
+     * @param error whether to fail if the request fails, rather than completing with {@code null}
+     */
+    <T> CompletableFuture<T> postAsync(UriBuilder builder, JsonPayload payload, ResponseReader<T> reader, boolean error) {
+        return readAsync(HttpMethod.POST, builder, payload, reader, error);
+    }
+
+    CompletableFuture<Void> putAsync(UriBuilder builder, JsonPayload payload) {
+        return readAsync(HttpMethod.PUT, builder, payload, null, true);
+    }
+
+    CompletableFuture<Void> deleteAsync(UriBuilder builder) {
+        return readAsync(HttpMethod.DELETE, builder, null, null, true);
+    }
+
+    /**
+     * The asynchronous counterpart of {@link #read}. The request body is encoded up front by the calling thread, and
+     * the response is read into memory by the transport before being handed to the reader on one of our own
+     * threads. Dependent stages run on those threads too, so they must not block.
+     *
+     * @param reader reads the response, or {@code null} if we don't need anything from it
+     */
+    private <T> CompletableFuture<T> readAsync(String method, UriBuilder builder, JsonPayload payload, ResponseReader<T> reader,
+                                               boolean error) {
+        final URI uri = builder.build();
+        final byte[] body = payload == null ? null : encode(method, uri, payload);
+        return sendAsync(method, uri, body).thenApply(response -> {
+            if (!response.isSuccessful()) {
+                if (error) {
+                    throw new RuntimeException(new String(response.getBody(), StandardCharsets.UTF_8));
+                }
+                return null;
             }
+            if (reader == null) {
+                return null;
+            }
+            try {
+                return JsonReader.read(new ByteArrayInputStream(response.getBody()), reader, null);
+            } catch (IOException e) {
+                throw new RuntimeException("Error reading the response to " + method + " " + uri, e);
+            }
+        });
+    }
+
+    /**
+     * Sends a request whose body has already been encoded, such as one being replayed, and records it if we are
+     * recording.
+     *
+     * @param path the path and query of the request, relative to the Jira URL
+     */
+    CompletableFuture<HttpTransport.BufferedResponse> sendAsync(String method, String path, byte[] body) {
+        return sendAsync(method, URI.create(jiraUri + path), body);
+    }
+
+    private CompletableFuture<HttpTransport.BufferedResponse> sendAsync(String method, URI uri, byte[] body) {
+        final long start = System.nanoTime();
+        CompletableFuture<HttpTransport.BufferedResponse> future = executeAsync(method, uri, body, 0);
+        if (recorder == null) {
+            return future;
+        }
+        return future.thenApply(response -> {
+            record(start, method, uri, body, response.getStatus(), response.getBody());
             return response;
-        } finally {
-            // Close the client
-            close();
+        });
+    }
+
+    /**
+     * The asynchronous counterpart of {@link #execute}, with the same throttling and retries. Rather than blocking,
+     * waiting for the throttle or for a retry completes a future from our scheduler.
+     */
+    private CompletableFuture<HttpTransport.BufferedResponse> executeAsync(String method, URI uri, byte[] body, int attempt) {
+        final boolean idempotent = !method.equals(HttpMethod.POST);
+        final long bytesSent = body == null ? 0 : body.length;
+        return throttle.beforeRequestAsync(asyncExecutor).thenComposeAsync(v -> {
+            final long start = System.nanoTime();
+            CompletableFuture<HttpTransport.BufferedResponse> sent;
+            try {
+                sent = transport.sendAsync(method, uri, body == null ? asyncHeaders : asyncJsonHeaders, body);
+            } catch (RuntimeException e) {
+                // Handle it below, so that the throttle hears about it
+                sent = new CompletableFuture<>();
+                sent.completeExceptionally(e);
+            }
+            return sent.handleAsync((response, failure) -> {
+                final long latency = System.nanoTime() - start;
+                if (failure != null) {
+                    final Throwable cause = failure instanceof CompletionException && failure.getCause() != null ?
+                            failure.getCause() : failure;
+                    metrics.requestCompleted(method, uri, -1, latency, bytesSent, 0);
+                    throttle.onFailed();
+                    if (idempotent && throttle.canRetry(attempt)) {
+                        LOG.warning(method + " " + uri + " failed (" + cause + "), retrying");
+                        return retryAsync(method, uri, body, attempt, 0);
+                    }
+                    CompletableFuture<HttpTransport.BufferedResponse> failed = new CompletableFuture<>();
+                    failed.completeExceptionally(new ProcessingException(method + " " + uri + " failed", cause));
+                    return failed;
+                }
+                final int status = response.getStatus();
+                metrics.requestCompleted(method, uri, status, latency, bytesSent, response.getBody().length);
+                if (status == 429 || status == 503 || (idempotent && (status == 502 || status == 504))) {
+                    final long retryAfterNanos = getRetryAfterNanos(response.getRetryAfter());
+                    throttle.onThrottled(retryAfterNanos);
+                    if (throttle.canRetry(attempt)) {
+                        LOG.info(method + " " + uri + " got " + status + ", retrying");
+                        return retryAsync(method, uri, body, attempt, retryAfterNanos);
+                    }
+                } else {
+                    throttle.onResponse(latency);
+                }
+                return CompletableFuture.completedFuture(response);
+            }, asyncExecutor).thenCompose(response -> response);
+        }, asyncExecutor);
+    }
+
+    private CompletableFuture<HttpTransport.BufferedResponse> retryAsync(String method, URI uri, byte[] body, int attempt,
+                                                                         long retryAfterNanos) {
+        return throttle.backoffAsync(asyncExecutor, attempt, retryAfterNanos)
+                .thenCompose(v -> executeAsync(method, uri, body, attempt + 1));
+    }
+
+    /**
+     * Sends the request once the throttle lets us, retrying it if it fails for a reason which is likely to go away.
+     * Throttling (429) and unavailable (503) responses mean the server did not process the request, so those are
+     * retried for any method. Gateway errors and I/O failures leave us not knowing whether a POST went through, so
+     * those are only retried for the other methods, which are idempotent.
+     * <p>
+     * The response body is buffered so that the connection goes straight back to the pool, unless {@code stream} is
+     * set and the request succeeded. In that case the caller must read the body and close the response.
+     */
+    private Response execute(String method, UriBuilder builder, JsonPayload payload, boolean stream) {
+        final WebTarget target = getClient().target(builder);
+        final JsonBody body = payload == null ? null : new JsonBody(payload);
+        final Entity<JsonBody> entity = body == null ? null : Entity.json(body);
+        final boolean idempotent = !method.equals(HttpMethod.POST);
+        final long firstStart = System.nanoTime();
+        for (int attempt = 0 ; ; attempt++) {
+            throttle.beforeRequest();
+            // Whatever goes wrong, the throttle must hear how the request went, or its permit is never given back
+            boolean settled = false;
+            try {
+                final long start = System.nanoTime();
+                final Response response;
+                try {
+                    final Invocation.Builder request = target.request(MediaType.APPLICATION_JSON_TYPE);
+                    response = entity == null ? request.method(method) : request.method(method, entity);
+                } catch (ProcessingException e) {
+                    metrics.requestCompleted(method, target.getUri(), -1, System.nanoTime() - start,
+                            body == null ? 0 : body.length, 0);
+                    settled = true;
+                    throttle.onFailed();
+                    if (idempotent && throttle.canRetry(attempt)) {
+                        LOG.warning(method + " " + target.getUri() + " failed (" + e + "), retrying");
+                        throttle.backoff(attempt, 0);
+                        continue;
+                    }
+                    throw e;
+                }
+                final int status = response.getStatus();
+                final boolean retryable = status == 429 || status == 503 || (idempotent && (status == 502 || status == 504));
+                final boolean streamed = stream && !retryable && response.getStatusInfo().getFamily() == Response.Status.Family.SUCCESSFUL;
+                if (!streamed) {
+                    release(response);
+                }
+                final long latency = System.nanoTime() - start;
+                metrics.requestCompleted(method, target.getUri(), status, latency,
+                        body == null ? 0 : body.length, streamed ? 0 : getLength(response));
+                if (retryable) {
+                    final long retryAfterNanos = getRetryAfterNanos(response.getHeaderString(HttpHeaders.RETRY_AFTER));
+                    settled = true;
+                    throttle.onThrottled(retryAfterNanos);
+                    if (throttle.canRetry(attempt)) {
+                        LOG.info(method + " " + target.getUri() + " got " + status + ", retrying");
+                        throttle.backoff(attempt, retryAfterNanos);
+                        continue;
+                    }
+                } else {
+                    settled = true;
+                    throttle.onResponse(latency);
+                }
+                if (recorder != null) {
+                    record(firstStart, method, target.getUri(), payload == null ? null : encode(method, target.getUri(), payload),
+                            status, streamed ? null : getBody(response));
+                }
+                return response;
+            } finally {
+                if (!settled) {
+                    throttle.onFailed();
+                }
+            }
         }
     }
 
-    public Response delete(UriBuilder builder) {
+    private static byte[] encode(String method, URI uri, JsonPayload payload) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(512);
         try {
-            final WebTarget target = getClient().target(builder);
-            final Response response =
-                    target.request(MediaType.APPLICATION_JSON_TYPE).delete();
+            JsonWriter.write(payload, out);
+        } catch (IOException e) {
+            throw new RuntimeException("Error writing the request to " + method + " " + uri, e);
+        }
+        return out.toByteArray();
+    }
 
-            if (response.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
-                throw new RuntimeException(response.readEntity(String.class));
+    /**
+     * Writes a request to the recording. Only what successful POSTs created is of interest to the replay, so the
+     * other responses are not looked at.
+     */
+    private void record(long start, String method, URI uri, byte[] body, int status, byte[] response) {
+        final RequestLog.Writer recorder = this.recorder;
+        if (recorder == null) {
+            return;
+        }
+        final String path = uri.toString();
+        final RequestLog.Created created = method.equals(HttpMethod.POST) && status >= 200 && status < 300 ?
+                RequestLog.readCreated(response) : RequestLog.Created.NONE;
+        recorder.write(start, method, path.startsWith(jiraUri) ? path.substring(jiraUri.length()) : path,
+                body, status, created);
+    }
+
+    /**
+     * Gets the size of the response body. Jira usually sends its JSON chunked, in which case there is no
+     * Content-Length and we have to measure the buffered entity instead.
+     */
+    private static long getLength(Response response) {
+        int length = response.getLength();
+        if (length >= 0) {
+            return length;
+        }
+        byte[] entity = getBody(response);
+        return entity == null ? 0 : entity.length;
+    }
+
+    /**
+     * Gets the buffered response body, or {@code null} if there is none.
+     */
+    private static byte[] getBody(Response response) {
+        try {
+            // An empty body, as in a 204, may still count as an entity but reads as null
+            return response.hasEntity() ? response.readEntity(byte[].class) : null;
+        } catch (IllegalStateException e) {
+            // It was closed rather than buffered
+            return null;
+        }
+    }
+
+    private static long getRetryAfterNanos(String retryAfter) {
+        if (retryAfter == null) {
+            return 0;
+        }
+        try {
+            return TimeUnit.SECONDS.toNanos(Long.parseLong(retryAfter.trim()));
+        } catch (NumberFormatException e) {
+            // It may also be an HTTP date
+            try {
+                long millis = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME)
+                        .toInstant().toEpochMilli() - System.currentTimeMillis();
+                return TimeUnit.MILLISECONDS.toNanos(Math.max(millis, 0));
+            } catch (DateTimeParseException ignore) {
+                return 0;
             }
-            return response;
-        } finally {
-            // Close the client
-            close();
+        }
+    }
+
+    /**
+     * A request body, which keeps track of how big it came out.
+     */
+    private static class JsonBody {
+        private final JsonPayload payload;
+        private volatile long length;
+
+        JsonBody(JsonPayload payload) {
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * Encodes request bodies straight into the entity stream, rather than into a String which then gets copied.
+     */
+    private static class JsonBodyWriter implements MessageBodyWriter<JsonBody> {
+        @Override
+        public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+            return type == JsonBody.class;
+        }
+
+        @Override
+        public long getSize(JsonBody body, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+            return -1;
+        }
+
+        @Override
+        public void writeTo(JsonBody body, Class<?> type, Type genericType, Annotation[] annotations,
+                            MediaType mediaType, MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream)
+                throws IOException {
+            body.length = JsonWriter.write(body.payload, entityStream);
         }
     }
 
@@ -0,0 +1,86 @@
+package org.overbaard.jira.populator;
+
+/**
+ * Which part of the dataset a populate run is doing, when it is split between several processes or machines so that
+ * no one client's CPU or rate limit holds it back. Each project's issues are split into {@code count} contiguous
+ * ranges of indices, and shard {@code index} creates and transitions the issues in its range. Since everything about
+ * an issue comes from its index, the shards together create the same issues a single run would.
+ * <p>
+ * The shards don't talk to each other. The first creates the users, tears down existing projects if asked to, and
+ * creates the projects with their components and versions, while the others wait for the projects to be ready before
+ * adding their issues to them. The first marks each project as ready with a property holding the id of the run, which
+ * all the shards are given, so a project left by an earlier run is not mistaken for a ready one. Each shard
+ * links the issues within its own ranges. The links between the ranges of different shards need the keys of both
+ * issues, so each shard writes the keys of its issues to a file, and a merge run reads them all and makes those
+ * links.
+ *
+ * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
+ */
+class Shard {
+    static final Shard ALL = new Shard(0, 1);
+    // How long the other shards wait for the first to set up the projects, and how often they look
+    static final int DEFAULT_WAIT_SECONDS = 600;
+    static final int POLL_INTERVAL_MS = 1000;
+
+    private final int index;
+    private final int count;
+
+    Shard(int index, int count) {
+        if (count < 1 || index < 0 || index >= count) {
+            throw new IllegalArgumentException("Bad shard " + index + " of " + count +
+                    ", the index must be from 0 up to the count");
+        }
+        this.index = index;
+        this.count = count;
+    }
+
+    int getIndex() {
+        return index;
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * @return whether this is the shard which sets up the users and projects
+     */
+    boolean isFirst() {
+        return index == 0;
+    }
+
+    /**
+     * @return the first index of this shard's issues, out of a project with the given number of issues
+     */
+    int getStart(int numberIssues) {
+        return getStart(numberIssues, index);
+    }
+
+    /**
+     * @return the index after the last of this shard's issues, out of a project with the given number of issues
+     */
+    int getEnd(int numberIssues) {
+        return getStart(numberIssues, index + 1);
+    }
+
+    boolean contains(int numberIssues, int issueIndex) {
+        return getOwner(numberIssues, issueIndex, count) == index;
+    }
+
+    /**
+     * @return the index of the shard which creates the issue, when there are {@code count} shards
+     */
+    static int getOwner(int numberIssues, int issueIndex, int count) {
+        // The largest shard whose range starts at or before the issue
+        return (int) (((issueIndex + 1L) * count - 1) / numberIssues);
+    }
+
+    private int getStart(int numberIssues, int shard) {
+        return (int) ((long) numberIssues * shard / count);
+    }
+
+    @Override
+    public String toString() {
+        return "shard " + index + " of " + count;
+    }
+}
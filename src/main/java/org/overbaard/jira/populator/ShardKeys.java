@@ -0,0 +1,111 @@
+package org.overbaard.jira.populator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.overbaard.jira.populator.ProjectPopulator.ProjectInfo;
+
+/**
+ * The file a {@link Shard} writes the keys of its issues to, for the merge run to link them to the issues of the other
+ * shards. As with {@link IssueKeys} only the numbers of the keys are written, four bytes an issue:
+ * <pre>
+ *     int 'OBSK', int version, int shard index, int shard count, int number of projects
+ *     for each project: UTF key, int number of issues, int start, int end, int number for each issue in the range
+ * </pre>
+ * A number of 0 means the issue did not get created.
+ *
+ * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
+ */
+class ShardKeys {
+    // 'OBSK'
+    private static final int MAGIC = 0x4f42534b;
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 65536;
+
+    private static final Logger LOG = Logger.getLogger(ShardKeys.class.getName());
+
+    private ShardKeys() {
+    }
+
+    static void write(String file, Shard shard, List<ProjectInfo> projects, IssueLinker linker) {
+        LOG.info("Writing the issue keys of " + shard + " to " + file + "...");
+        try (FileChannel channel = FileChannel.open(Paths.get(file),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(shard.getIndex());
+            out.writeInt(shard.getCount());
+            out.writeInt(projects.size());
+            for (int project = 0; project < projects.size(); project++) {
+                IssueKeys keys = linker.getIssueKeys(project);
+                int numberIssues = keys.getNumberIssues();
+                int start = shard.getStart(numberIssues);
+                int end = shard.getEnd(numberIssues);
+                out.writeUTF(projects.get(project).getKey());
+                out.writeInt(numberIssues);
+                out.writeInt(start);
+                out.writeInt(end);
+                for (int issue = start; issue < end; issue++) {
+                    out.writeInt(keys.getNumber(issue));
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write the issue keys to " + file, e);
+        }
+    }
+
+    /**
+     * Reads the keys a shard wrote into the keys of the whole dataset, checking that the shard was populating the same
+     * projects.
+     *
+     * @param shardCount the number of shards the files being merged should all have been written by
+     * @return the shard which wrote the file
+     */
+    static Shard read(String file, List<ProjectInfo> projects, IssueLinker linker, int shardCount) {
+        LOG.info("Reading the issue keys in " + file + "...");
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not an issue keys file");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unknown issue keys version " + version);
+            }
+            Shard shard = new Shard(in.readInt(), in.readInt());
+            if (shard.getCount() != shardCount) {
+                throw new IllegalArgumentException(file + " was written by " + shard + " rather than one of " + shardCount);
+            }
+            if (in.readInt() != projects.size()) {
+                throw new IllegalArgumentException(file + " was written for another dataset");
+            }
+            for (int project = 0; project < projects.size(); project++) {
+                IssueKeys keys = linker.getIssueKeys(project);
+                String projectKey = in.readUTF();
+                int numberIssues = in.readInt();
+                int start = in.readInt();
+                int end = in.readInt();
+                if (!projectKey.equals(projects.get(project).getKey()) || numberIssues != keys.getNumberIssues() ||
+                        start != shard.getStart(numberIssues) || end != shard.getEnd(numberIssues)) {
+                    throw new IllegalArgumentException(file + " was written for another dataset");
+                }
+                for (int issue = start; issue < end; issue++) {
+                    keys.setNumber(issue, in.readInt());
+                }
+            }
+            return shard;
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read the issue keys in " + file, e);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package org.overbaard.jira.populator;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Keeps count of outstanding tasks without holding on to them, so that a stage can wait for any number of tasks to
+ * finish with flat memory use. Tasks may be tracked from any thread, including from other tracked tasks, as long as
+ * that happens before the tracking task completes.
+ *
+ * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
+ */
+class TaskTracker {
+    private final String name;
+    private int outstanding;
+    private Throwable failure;
+
+    TaskTracker(String name) {
+        this.name = name;
+    }
+
+    synchronized <T> CompletableFuture<T> track(CompletableFuture<T> future) {
+        outstanding++;
+        future.whenComplete((result, t) -> done(t));
+        return future;
+    }
+
+    private synchronized void done(Throwable t) {
+        if (t != null && failure == null) {
+            failure = t;
+        }
+        outstanding--;
+        notifyAll();
+    }
+
+    /**
+     * Waits until all tracked tasks are done, or until one of them fails in which case the failure is rethrown.
+     */
+    synchronized void await() {
+        while (outstanding > 0 && failure == null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted waiting for " + name, e);
+            }
+        }
+        if (failure != null) {
+            Throwable cause = failure instanceof CompletionException && failure.getCause() != null ?
+                    failure.getCause() : failure;
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException("Error in " + name, cause);
+        }
+    }
+}
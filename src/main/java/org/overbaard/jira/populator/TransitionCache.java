@@ -0,0 +1,352 @@
+package org.overbaard.jira.populator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import javax.ws.rs.core.UriBuilder;
+
+/**
+ * Caches the transitions available from each workflow state. All issues of a given type in a project share a
+ * workflow, so the transitions are looked up with {@code GET issue/{key}/transitions} only for the first issue found
+ * in each state, rather than for every issue we want to move.
+ *
+ * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
+ */
+class TransitionCache {
+    /**
+     * The status of issues we have just created. We don't know its id without asking Jira, but it is the same for
+     * every new issue of a type in a project.
+     */
+    static final String CREATED_STATUS = "<created>";
+
+    private static final Logger LOG = Logger.getLogger(TransitionCache.class.getName());
+
+    private final RestClientFactory factory;
+    private final ConcurrentMap<String, CompletableFuture<List<Transition>>> transitions = new ConcurrentHashMap<>();
+
+    TransitionCache(RestClientFactory factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * Gets the transitions available from a status, looking them up via the given issue (which must be in that status)
+     * if nobody has done so yet. Concurrent callers for the same status wait for the first lookup rather than making
+     * their own.
+     */
+    List<Transition> getTransitions(String projectKey, String issueType, String statusId, String issueKey) {
+        return getTransitions(projectKey, issueType, statusId,
+                () -> CompletableFuture.completedFuture(loadTransitions(issueKey))).join();
+    }
+
+    /**
+     * Like {@link #getTransitions(String, String, String, String)}, but does not block waiting for the lookup.
+     */
+    CompletableFuture<List<Transition>> getTransitionsAsync(String projectKey, String issueType, String statusId, String issueKey) {
+        return getTransitions(projectKey, issueType, statusId, () -> loadTransitionsAsync(issueKey));
+    }
+
+    /**
+     * @return the transitions from the status new issues of the type start in, or {@code null} if none of them have
+     * been looked up yet
+     */
+    List<Transition> getCreatedTransitions(String projectKey, String issueType) {
+        CompletableFuture<List<Transition>> future = transitions.get(getKey(projectKey, issueType, CREATED_STATUS));
+        return future != null && future.isDone() && !future.isCompletedExceptionally() ? future.join() : null;
+    }
+
+    private CompletableFuture<List<Transition>> getTransitions(String projectKey, String issueType, String statusId,
+                                                               Supplier<CompletableFuture<List<Transition>>> loader) {
+        String key = getKey(projectKey, issueType, statusId);
+        CompletableFuture<List<Transition>> future = transitions.get(key);
+        if (future == null) {
+            CompletableFuture<List<Transition>> loading = new CompletableFuture<>();
+            future = transitions.putIfAbsent(key, loading);
+            if (future == null) {
+                future = loading;
+                CompletableFuture<List<Transition>> loaded;
+                try {
+                    loaded = loader.get();
+                } catch (RuntimeException | Error e) {
+                    loaded = new CompletableFuture<>();
+                    loaded.completeExceptionally(e);
+                }
+                loaded.whenComplete((result, failure) -> {
+                    if (failure != null) {
+                        // Let the next caller try again
+                        transitions.remove(key, loading);
+                        loading.completeExceptionally(failure);
+                    } else {
+                        loading.complete(result);
+                    }
+                });
+            }
+        }
+        return future;
+    }
+
+    private static String getKey(String projectKey, String issueType, String statusId) {
+        return projectKey + "/" + issueType + "/" + statusId;
+    }
+
+    /**
+     * Moves an issue along a route of statuses, ending with the one it should end up in. The transitions are looked up
+     * for each status the issue gets to, re-using the cached ones, and each hop goes to the first status left in the
+     * route which can be reached from there. So the statuses on the way which the workflow does not lead through
+     * are skipped, rather than failing the move.
+     *
+     * @return the id of the status the issue ends up in
+     */
+    String moveIssue(String projectKey, String issueType, String issueKey, String statusId, List<String> route) {
+        String currentStatusId = statusId;
+        int next = 0;
+        while (next < route.size()) {
+            List<Transition> transitions = getTransitions(projectKey, issueType, currentStatusId, issueKey);
+            next = findNextHop(transitions, route, next, issueKey, currentStatusId);
+            Transition transition = findTransition(transitions, route.get(next++));
+            transitionIssue(issueKey, transition);
+            currentStatusId = transition.getToStatusId();
+        }
+        return currentStatusId;
+    }
+
+    /**
+     * Like {@link #moveIssue(String, String, String, String, List)}, but chains the lookups and transitions without
+     * blocking.
+     *
+     * @return the id of the status the issue ends up in
+     */
+    CompletableFuture<String> moveIssueAsync(String projectKey, String issueType, String issueKey, String statusId, List<String> route) {
+        return moveIssueAsync(projectKey, issueType, issueKey, statusId, route, 0);
+    }
+
+    private CompletableFuture<String> moveIssueAsync(String projectKey, String issueType, String issueKey, String statusId,
+                                                     List<String> route, int next) {
+        if (next == route.size()) {
+            return CompletableFuture.completedFuture(statusId);
+        }
+        return getTransitionsAsync(projectKey, issueType, statusId, issueKey).thenCompose(transitions -> {
+            int hop = findNextHop(transitions, route, next, issueKey, statusId);
+            Transition transition = findTransition(transitions, route.get(hop));
+            return transitionIssueAsync(issueKey, transition).thenCompose(v ->
+                    moveIssueAsync(projectKey, issueType, issueKey, transition.getToStatusId(), route, hop + 1));
+        });
+    }
+
+    /**
+     * @return the index of the first status in the route from {@code next} on which one of the transitions goes to
+     */
+    private static int findNextHop(List<Transition> transitions, List<String> route, int next, String issueKey, String statusId) {
+        for (int i = next; i < route.size(); i++) {
+            if (findTransition(transitions, route.get(i)) != null) {
+                return i;
+            }
+        }
+        throw new RuntimeException("No transition from status " + statusId + " towards " +
+                route.get(route.size() - 1) + " for " + issueKey);
+    }
+
+    private static Transition findTransition(List<Transition> transitions, String targetStatus) {
+        for (Transition candidate : transitions) {
+            if (candidate.getToStatusName().equals(targetStatus)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    void transitionIssue(String issueKey, Transition transition) {
+        LOG.fine(() -> "Moving issue " + issueKey + " to " + transition.getName() + "...");
+        UriBuilder builder = factory.getJiraRestUriBuilder();
+        builder.path("issue").path(issueKey).path("transitions");
+        factory.post(builder, writer -> writer.beginObject()
+                .name("transition").beginObject().name("id").value(transition.getId()).endObject()
+                .endObject());
+        LOG.fine(() -> "Moved issue " + issueKey + " to " + transition.getName());
+    }
+
+    CompletableFuture<Void> transitionIssueAsync(String issueKey, Transition transition) {
+        LOG.fine(() -> "Moving issue " + issueKey + " to " + transition.getName() + "...");
+        UriBuilder builder = factory.getJiraRestUriBuilder();
+        builder.path("issue").path(issueKey).path("transitions");
+        return factory.postAsync(builder, writer -> writer.beginObject()
+                .name("transition").beginObject().name("id").value(transition.getId()).endObject()
+                .endObject())
+                .thenRun(() -> LOG.fine(() -> "Moved issue " + issueKey + " to " + transition.getName()));
+    }
+
+    /**
+     * Looks up the status an issue is in, for an issue which may or may not have been moved since it was created.
+     */
+    Status getStatus(String issueKey) {
+        return factory.get(getStatusUriBuilder(issueKey), TransitionCache::readStatus);
+    }
+
+    /**
+     * Like {@link #getStatus(String)}, but does not block.
+     */
+    CompletableFuture<Status> getStatusAsync(String issueKey) {
+        return factory.getAsync(getStatusUriBuilder(issueKey), TransitionCache::readStatus);
+    }
+
+    private UriBuilder getStatusUriBuilder(String issueKey) {
+        UriBuilder builder = factory.getJiraRestUriBuilder();
+        builder.path("issue").path(issueKey).queryParam("fields", "status");
+        return builder;
+    }
+
+    /**
+     * Reads the id and name of the status from an issue with only its status field.
+     */
+    static Status readStatus(JsonReader reader) throws IOException {
+        reader.beginObject();
+        if (!reader.findName("fields")) {
+            throw new IOException("The response has no fields");
+        }
+        reader.beginObject();
+        if (!reader.findName("status")) {
+            throw new IOException("The response has no status");
+        }
+        String id = null;
+        String name = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            if (field.equals("id")) {
+                id = reader.nextString();
+            } else if (field.equals("name")) {
+                name = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        if (id == null || name == null) {
+            throw new IOException("The status has no id or name");
+        }
+        // That is all we want, so don't bother parsing the rest
+        return new Status(id, name);
+    }
+
+    private List<Transition> loadTransitions(String issueKey) {
+        UriBuilder builder = factory.getJiraRestUriBuilder();
+        builder.path("issue").path(issueKey).path("transitions");
+        return Collections.unmodifiableList(factory.get(builder, TransitionCache::readTransitions));
+    }
+
+    private CompletableFuture<List<Transition>> loadTransitionsAsync(String issueKey) {
+        UriBuilder builder = factory.getJiraRestUriBuilder();
+        builder.path("issue").path(issueKey).path("transitions");
+        return factory.getAsync(builder, TransitionCache::readTransitions).thenApply(Collections::unmodifiableList);
+    }
+
+    /**
+     * Reads the id and name of each transition and of the status it goes to, skipping everything else.
+     */
+    static List<Transition> readTransitions(JsonReader reader) throws IOException {
+        List<Transition> transitions = new ArrayList<>();
+        reader.beginObject();
+        if (!reader.findName("transitions")) {
+            throw new IOException("The response has no transitions");
+        }
+        reader.beginArray();
+        while (reader.hasNext()) {
+            int id = 0;
+            String name = null;
+            String toStatusId = null;
+            String toStatusName = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "id":
+                        id = reader.nextInt();
+                        break;
+                    case "name":
+                        name = reader.nextString();
+                        break;
+                    case "to":
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            String field = reader.nextName();
+                            if (field.equals("id")) {
+                                toStatusId = reader.nextString();
+                            } else if (field.equals("name")) {
+                                toStatusName = reader.nextString();
+                            } else {
+                                reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+            transitions.add(new Transition(id, name, toStatusId, toStatusName));
+        }
+        // That is all we want, so don't bother parsing the rest
+        return transitions;
+    }
+
+    static class Status {
+        /**
+         * Where issues we have just created are.
+         */
+        static final Status CREATED = new Status(CREATED_STATUS, null);
+
+        private final String id;
+        private final String name;
+
+        Status(String id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * @return the name of the status, or {@code null} for {@link #CREATED} whose name we don't know
+         */
+        public String getName() {
+            return name;
+        }
+    }
+
+    static class Transition {
+        private final int id;
+        private final String name;
+        private final String toStatusId;
+        private final String toStatusName;
+
+        Transition(int id, String name, String toStatusId, String toStatusName) {
+            this.id = id;
+            this.name = name;
+            this.toStatusId = toStatusId;
+            this.toStatusName = toStatusName;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getToStatusId() {
+            return toStatusId;
+        }
+
+        public String getToStatusName() {
+            return toStatusName;
+        }
+    }
+}
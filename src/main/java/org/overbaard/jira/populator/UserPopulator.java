@@ -1,28 +1,42 @@
 package org.overbaard.jira.populator;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
 
-import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriBuilder;
 
 import org.jboss.dmr.ModelNode;
 
 /**
+ * Creates the users which are not there yet. Which ones already exist is found with a paged sweep of the user search
+ * up front, and the missing users are then created concurrently on the create stage.
+ *
  * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
  */
 class UserPopulator {
+    private static final Logger LOG = Logger.getLogger(UserPopulator.class.getName());
+
+    // The most users Jira returns in one page of a search
+    static final int USER_SEARCH_PAGE_SIZE = 1000;
 
     private final RestClientFactory factory;
+    private final Pipeline pipeline;
+    private final List<UserInfo> userInfos;
     private String[] users;
 
-    UserPopulator(RestClientFactory factory) {
+    UserPopulator(RestClientFactory factory, Pipeline pipeline, List<UserInfo> userInfos) {
         this.factory = factory;
+        this.pipeline = pipeline;
+        this.userInfos = userInfos;
     }
 
-    static UserPopulator createUsers(RestClientFactory factory) {
-        UserPopulator populator = new UserPopulator(factory);
+    static UserPopulator createUsers(RestClientFactory factory, Pipeline pipeline, List<UserInfo> userInfos) {
+        UserPopulator populator = new UserPopulator(factory, pipeline, userInfos);
         populator.create();
         return populator;
     }
@@ -31,34 +45,46 @@ class UserPopulator {
         return users;
     }
 
+    /**
+     * Gets the usernames of users which some other run is creating.
+     */
+    static String[] getUsernames(List<UserInfo> userInfos) {
+        String[] usernames = new String[userInfos.size()];
+        for (int i = 0; i < usernames.length; i++) {
+            usernames[i] = userInfos.get(i).username;
+        }
+        return usernames;
+    }
+
     private void create() {
         List<Integer> avatars = loadAvatars();
-
-        List<UserInfo> userInfos = new ArrayList<>();
-        userInfos.add(new UserInfo("kabir", "Kabir Khan"));
-        userInfos.add(new UserInfo("rostislav", "Rostislav Svoboda"));
-        userInfos.add(new UserInfo("james", "James Perkins"));
-        userInfos.add(new UserInfo("jason", "Jason Greene"));
-        userInfos.add(new UserInfo("brian", "Brian Stansberry"));
-        userInfos.add(new UserInfo("stuart", "Stuart Douglas"));
-        userInfos.add(new UserInfo("jeff", "Jeff Mesnil"));
+        Set<String> existing = loadExistingUsers();
+        if (existing != null) {
+            LOG.info("Creating " + (userInfos.size() - existing.size()) + " users, " + existing.size() + " already exist...");
+        } else {
+            LOG.info("Creating users....");
+        }
 
         List<String> users = new ArrayList<>();
-
-        int i = avatars.size() - 1;
-        for (UserInfo userInfo : userInfos) {
-            if (!userExists(userInfo)) {
-                createUser(avatars, userInfo);
-                setUserAvatar(userInfo.username, avatars.get(i));
-                if (i > 0) {
-                    i--;
-                } else {
-                    i = avatars.size() - 1;
-                }
-            }
+        TaskTracker tasks = new TaskTracker("users");
+        for (int i = 0; i < userInfos.size(); i++) {
+            final UserInfo userInfo = userInfos.get(i);
             users.add(userInfo.username);
+            if (existing != null && existing.contains(userInfo.username)) {
+                continue;
+            }
+            // Hand out the avatars from the last one down
+            final int avatarId = avatars.get(avatars.size() - 1 - i % avatars.size());
+            tasks.track(pipeline.getCreateStage().execute(() -> {
+                if (existing != null || !userExists(userInfo)) {
+                    createUser(userInfo);
+                    setUserAvatar(userInfo.username, avatarId);
+                }
+            }));
         }
+        tasks.await();
         this.users = users.toArray(new String[users.size()]);
+        LOG.info("Created users");
     }
 
     private List<Integer> loadAvatars() {
@@ -66,15 +92,83 @@ class UserPopulator {
         builder.path("avatar/user/system");
 
 
-        List<Integer> avatars = new ArrayList<>();
-        ModelNode modelNode = ModelNode.fromJSONString(factory.get(builder, true).readEntity(String.class));
+        return factory.get(builder, UserPopulator::readAvatarIds);
+    }
 
-        for (ModelNode avatarNode : modelNode.get("system").asList()) {
-            avatars.add(avatarNode.get("id").asInt());
+    private static List<Integer> readAvatarIds(JsonReader reader) throws IOException {
+        List<Integer> avatars = new ArrayList<>();
+        reader.beginObject();
+        if (!reader.findName("system")) {
+            throw new IOException("The response has no system avatars");
+        }
+        reader.beginArray();
+        while (reader.hasNext()) {
+            reader.beginObject();
+            if (!reader.findName("id")) {
+                throw new IOException("An avatar has no id");
+            }
+            avatars.add(reader.nextInt());
+            reader.skipRestOfObject();
         }
         return avatars;
     }
 
+    /**
+     * Pages through all the users in Jira to find which of ours are already there, which takes a request per
+     * thousand users rather than one per user. It stops as soon as all of ours have been found, so re-running
+     * against an instance we populated before typically takes a single request.
+     *
+     * @return the usernames of ours which exist, or {@code null} if the users could not be searched, in which case
+     * each one has to be looked up on its own
+     */
+    private Set<String> loadExistingUsers() {
+        Set<String> missing = new HashSet<>();
+        for (UserInfo userInfo : userInfos) {
+            missing.add(userInfo.username);
+        }
+        Set<String> existing = new HashSet<>();
+        int startAt = 0;
+        while (!missing.isEmpty()) {
+            UriBuilder builder = factory.getJiraRestUriBuilder();
+            // Jira matches '.' against every user
+            builder.path("user").path("search")
+                    .queryParam("username", ".")
+                    .queryParam("startAt", startAt)
+                    .queryParam("maxResults", USER_SEARCH_PAGE_SIZE)
+                    .queryParam("includeInactive", true);
+            List<String> page = factory.get(builder, UserPopulator::readUsernames, false);
+            if (page == null) {
+                LOG.warning("Could not search the users, looking each one up instead");
+                return null;
+            }
+            if (page.isEmpty()) {
+                // Jira may cap the page at less than we asked for, so only an empty one tells us we are done
+                break;
+            }
+            for (String username : page) {
+                if (missing.remove(username)) {
+                    existing.add(username);
+                }
+            }
+            startAt += page.size();
+        }
+        return existing;
+    }
+
+    private static List<String> readUsernames(JsonReader reader) throws IOException {
+        List<String> usernames = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            reader.beginObject();
+            if (!reader.findName("name")) {
+                throw new IOException("A user has no name");
+            }
+            usernames.add(reader.nextString());
+            reader.skipRestOfObject();
+        }
+        return usernames;
+    }
+
     private boolean userExists(UserInfo userInfo) {
         UriBuilder builder = factory.getJiraRestUriBuilder();
         builder.path("user").queryParam("username", userInfo.username);
@@ -91,7 +185,7 @@ class UserPopulator {
     }
 
 
-    private void createUser(List<Integer> avatars, UserInfo userInfo) {
+    private void createUser(UserInfo userInfo) {
         ModelNode user = new ModelNode();
         user.get("name").set(userInfo.username);
         user.get("password").set(userInfo.username);
@@ -0,0 +1,212 @@
+package org.overbaard.jira.populator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.overbaard.jira.populator.ProjectPopulator.ProjectInfo;
+
+/**
+ * Creates the issues in all sorts of orders, and checks that each link of the graph is sent exactly once, and only
+ * after both of its issues have been created.
+ *
+ * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
+ */
+public class IssueLinkerTest {
+    private static final List<ProjectInfo> PROJECTS = Arrays.asList(
+            new ProjectInfo("UP", "Upstream", new String[0], new String[0], new String[0], 50),
+            new ProjectInfo("FEAT", "Feature", new String[0], new String[0], new String[0], 31),
+            new ProjectInfo("SUP", "Support", new String[0], new String[0], new String[0], 7));
+    private static final LinkGraph GENERATED = LinkGraph.generate(PROJECTS, new String[]{"Blocks", "Relates"}, 3, 0.5);
+
+    @Test
+    public void testLinksInCreationOrder() {
+        checkLinks(LinkGraph.createDefault(PROJECTS), getIssues(null));
+        checkLinks(GENERATED, getIssues(null));
+    }
+
+    @Test
+    public void testLinksInReverseOrder() {
+        List<int[]> issues = getIssues(null);
+        Collections.reverse(issues);
+        checkLinks(LinkGraph.createDefault(PROJECTS), issues);
+        checkLinks(GENERATED, issues);
+    }
+
+    @Test
+    public void testLinksInRandomOrder() {
+        for (int seed = 0; seed < 10; seed++) {
+            List<int[]> issues = getIssues(null);
+            Collections.shuffle(issues, new Random(seed));
+            checkLinks(GENERATED, issues);
+        }
+    }
+
+    @Test
+    public void testLinksFromSeveralThreads() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            for (int seed = 0; seed < 10; seed++) {
+                List<int[]> issues = getIssues(null);
+                Collections.shuffle(issues, new Random(seed));
+                Recorder recorder = new Recorder();
+                IssueLinker linker = new IssueLinker(GENERATED, PROJECTS, Shard.ALL, recorder);
+                List<Future<?>> futures = new ArrayList<>();
+                for (int[] issue : issues) {
+                    futures.add(executor.submit(() -> create(linker, recorder, issue[0], issue[1])));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+                linker.await();
+                assertEquals(getLinks(GENERATED, null), recorder.links);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testAbandonedProjectIsNotWaitedFor() {
+        Recorder recorder = new Recorder();
+        IssueLinker linker = new IssueLinker(GENERATED, PROJECTS, Shard.ALL, recorder);
+        linker.abandon(1);
+        for (int[] issue : getIssues(null)) {
+            if (issue[0] != 1) {
+                create(linker, recorder, issue[0], issue[1]);
+            }
+        }
+        linker.await();
+
+        Set<List<String>> expected = new HashSet<>();
+        for (List<String> link : getLinks(GENERATED, null)) {
+            if (!link.get(1).startsWith("FEAT-") && !link.get(2).startsWith("FEAT-")) {
+                expected.add(link);
+            }
+        }
+        assertEquals(expected, recorder.links);
+    }
+
+    @Test
+    public void testShardsAndMerge() {
+        int count = 3;
+        Set<List<String>> links = new HashSet<>();
+        for (int index = 0; index < count; index++) {
+            Shard shard = new Shard(index, count);
+            List<int[]> issues = getIssues(shard);
+            Collections.shuffle(issues, new Random(index));
+            Recorder recorder = new Recorder();
+            IssueLinker linker = new IssueLinker(GENERATED, PROJECTS, shard, recorder);
+            for (int[] issue : issues) {
+                create(linker, recorder, issue[0], issue[1]);
+            }
+            linker.await();
+            assertEquals(getLinks(GENERATED, shard), recorder.links);
+            for (List<String> link : recorder.links) {
+                assertTrue("Linked by more than one shard " + link, links.add(link));
+            }
+        }
+
+        // The merge run has the keys of all the shards
+        Recorder recorder = new Recorder();
+        IssueLinker linker = new IssueLinker(GENERATED, PROJECTS, Shard.ALL, recorder);
+        for (int[] issue : getIssues(null)) {
+            String key = getKey(issue[0], issue[1]);
+            recorder.created.add(key);
+            linker.getIssueKeys(issue[0]).set(issue[1], key);
+        }
+        linker.linkAcrossShards(count);
+        linker.await();
+        for (List<String> link : recorder.links) {
+            assertTrue("Linked by a shard and the merge " + link, links.add(link));
+        }
+        assertEquals(getLinks(GENERATED, null), links);
+    }
+
+    private static void checkLinks(LinkGraph linkGraph, List<int[]> issues) {
+        Recorder recorder = new Recorder();
+        IssueLinker linker = new IssueLinker(linkGraph, PROJECTS, Shard.ALL, recorder);
+        for (int[] issue : issues) {
+            create(linker, recorder, issue[0], issue[1]);
+        }
+        linker.await();
+        assertEquals(getLinks(linkGraph, null), recorder.links);
+    }
+
+    private static void create(IssueLinker linker, Recorder recorder, int project, int issue) {
+        String key = getKey(project, issue);
+        recorder.created.add(key);
+        linker.getIssueKeys(project).set(issue, key);
+        linker.issueCreated(project, issue);
+    }
+
+    /**
+     * @param shard the shard whose issues to return, or {@code null} for all of them
+     * @return the project and issue indexes, in the order they would be created in
+     */
+    private static List<int[]> getIssues(Shard shard) {
+        List<int[]> issues = new ArrayList<>();
+        for (int project = 0; project < PROJECTS.size(); project++) {
+            int numberIssues = PROJECTS.get(project).getNumberIssues();
+            for (int issue = 0; issue < numberIssues; issue++) {
+                if (shard == null || shard.contains(numberIssues, issue)) {
+                    issues.add(new int[]{project, issue});
+                }
+            }
+        }
+        return issues;
+    }
+
+    /**
+     * @param shard if not {@code null}, only the links between the issues of the shard
+     */
+    private static Set<List<String>> getLinks(LinkGraph linkGraph, Shard shard) {
+        Set<List<String>> links = new HashSet<>();
+        for (int project = 0; project < PROJECTS.size(); project++) {
+            int numberIssues = PROJECTS.get(project).getNumberIssues();
+            for (int issue = 0; issue < numberIssues; issue++) {
+                if (shard != null && !shard.contains(numberIssues, issue)) {
+                    continue;
+                }
+                String key = getKey(project, issue);
+                linkGraph.forEachLink(project, issue, (type, linkedProject, linkedIssue) -> {
+                    if (shard == null || shard.contains(PROJECTS.get(linkedProject).getNumberIssues(), linkedIssue)) {
+                        assertTrue(links.add(Arrays.asList(type, key, getKey(linkedProject, linkedIssue))));
+                    }
+                });
+            }
+        }
+        return links;
+    }
+
+    private static String getKey(int project, int issue) {
+        return PROJECTS.get(project).getKey() + "-" + (issue + 1);
+    }
+
+    private static class Recorder implements IssueLinker.Sender {
+        private final Set<String> created = ConcurrentHashMap.newKeySet();
+        private final Set<List<String>> links = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public CompletableFuture<Void> link(String type, String issueKey, String linkedIssueKey) {
+            assertTrue("Linked " + issueKey + " before it was created", created.contains(issueKey));
+            assertTrue("Linked " + linkedIssueKey + " before it was created", created.contains(linkedIssueKey));
+            assertTrue("Linked twice " + issueKey + " " + linkedIssueKey,
+                    links.add(Arrays.asList(type, issueKey, linkedIssueKey)));
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+}
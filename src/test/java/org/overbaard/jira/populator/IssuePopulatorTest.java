@@ -0,0 +1,300 @@
+package org.overbaard.jira.populator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Populates a {@link MockJiraServer}, and checks that every issue ended up with the index and status it should have.
+ *
+ * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
+ */
+public class IssuePopulatorTest {
+    private static final int ISSUES_PER_PROJECT = 40;
+    private static final String[] PROJECTS = {"UP", "FEAT", "SUP"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockJiraServer server;
+
+    @Before
+    public void startServer() {
+        server = MockJiraServer.start(0, 0, 0, 0);
+    }
+
+    @After
+    public void stopServer() {
+        server.close();
+    }
+
+    @Test
+    public void testReadBulkResult() throws IOException {
+        String json = "{\"issues\":[" +
+                "{\"id\":\"10000\",\"key\":\"UP-1\",\"self\":\"http://localhost/jira/rest/api/2/issue/10000\"}," +
+                "{\"id\":\"10001\",\"key\":\"UP-2\",\"self\":\"http://localhost/jira/rest/api/2/issue/10001\"}]," +
+                "\"errors\":[" +
+                "{\"status\":400,\"elementErrors\":{\"errorMessages\":[],\"errors\":{\"summary\":\"Too long\"}},\"failedElementNumber\":1}," +
+                "{\"status\":400,\"elementErrors\":{\"errors\":{}},\"failedElementNumber\":3}]}";
+        IssuePopulator.BulkResult result = JsonReader.read(
+                new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), IssuePopulator::readBulkResult, null);
+        assertEquals(Arrays.asList("UP-1", "UP-2"), result.getKeys());
+        assertEquals(new HashSet<>(Arrays.asList(1, 3)), result.getFailed());
+    }
+
+    @Test
+    public void testBulkCreate() {
+        checkBulkCreate(false);
+    }
+
+    @Test
+    public void testBulkCreateAsync() {
+        checkBulkCreate(true);
+    }
+
+    /**
+     * Jira leaves the rejected issues out of the created ones, so the keys of the ones after them only map back to
+     * the right issues if the rejected positions are taken into account.
+     */
+    private void checkBulkCreate(boolean async) {
+        AtomicInteger rejected = new AtomicInteger();
+        server.setBulkRejects(index -> {
+            if (index % 5 == 2 || index % 7 == 0) {
+                rejected.incrementAndGet();
+                return true;
+            }
+            return false;
+        });
+        Properties properties = getProperties();
+        properties.setProperty(JiraPopulatorMain.BULK_SIZE_PROP_NAME, "6");
+        properties.setProperty(JiraPopulatorMain.ASYNC_PROP_NAME, String.valueOf(async));
+        RequestMetrics metrics = populate(properties);
+
+        assertTrue(rejected.get() > 0);
+        assertEquals(PROJECTS.length * ISSUES_PER_PROJECT, metrics.getIssuesCreated());
+        checkIssues();
+    }
+
+    @Test
+    public void testReconcile() {
+        checkReconcile(false, false);
+    }
+
+    @Test
+    public void testReconcileStepwise() {
+        checkReconcile(true, false);
+    }
+
+    @Test
+    public void testReconcileStepwiseAsync() {
+        checkReconcile(true, true);
+    }
+
+    /**
+     * Moves the issues back part of the way they should have gone, and checks that reconciling moves them on again
+     * from where they are.
+     */
+    private void checkReconcile(boolean stepwise, boolean async) {
+        Properties properties = getProperties();
+        properties.setProperty(JiraPopulatorMain.STEPWISE_TRANSITIONS_PROP_NAME, String.valueOf(stepwise));
+        properties.setProperty(JiraPopulatorMain.ASYNC_PROP_NAME, String.valueOf(async));
+        populate(properties);
+        checkIssues();
+
+        int moved = 0;
+        for (String key : server.getIssueKeys()) {
+            int status = server.getIssueStatus(key);
+            if (status > 1) {
+                server.setIssueStatus(key, status - 1 - (moved++ % 2));
+            }
+        }
+        assertTrue(moved > 0);
+        int transitions = server.getTransitionCount();
+
+        properties.setProperty(JiraPopulatorMain.RECONCILE_PROP_NAME, "true");
+        populate(properties);
+        assertEquals(PROJECTS.length * ISSUES_PER_PROJECT, server.getIssueCount());
+        checkIssues();
+        assertTrue(server.getTransitionCount() - transitions >= moved);
+    }
+
+    @Test
+    public void testResumeWithoutTransitionRecords() throws IOException {
+        checkResumeWithoutTransitionRecords(false);
+    }
+
+    @Test
+    public void testResumeWithoutTransitionRecordsAsync() throws IOException {
+        checkResumeWithoutTransitionRecords(true);
+    }
+
+    /**
+     * A crash may lose the journal records saying which issues were transitioned. The issues are then looked up and
+     * moved on from where they are, rather than taken through the whole workflow again.
+     */
+    private void checkResumeWithoutTransitionRecords(boolean async) throws IOException {
+        File journal = folder.newFile();
+        Properties properties = getProperties();
+        properties.setProperty(JiraPopulatorMain.JOURNAL_PROP_NAME, journal.getPath());
+        properties.setProperty(JiraPopulatorMain.STEPWISE_TRANSITIONS_PROP_NAME, "true");
+        properties.setProperty(JiraPopulatorMain.ASYNC_PROP_NAME, String.valueOf(async));
+        populate(properties);
+        checkIssues();
+
+        List<String> records = Files.readAllLines(journal.toPath(), StandardCharsets.UTF_8);
+        assertTrue(records.removeIf(record -> record.startsWith("T\t")));
+        Files.write(journal.toPath(), records, StandardCharsets.UTF_8);
+        int moved = 0;
+        int steps = 0;
+        for (String key : server.getIssueKeys()) {
+            int status = server.getIssueStatus(key);
+            if (status > 1) {
+                int back = 1 + (moved++ % 2);
+                server.setIssueStatus(key, status - back);
+                steps += back;
+            }
+        }
+        assertTrue(moved > 0);
+        int transitions = server.getTransitionCount();
+
+        populate(properties);
+        assertEquals(PROJECTS.length * ISSUES_PER_PROJECT, server.getIssueCount());
+        checkIssues();
+        assertEquals(steps, server.getTransitionCount() - transitions);
+    }
+
+    @Test
+    public void testResumeInLinearWorkflow() throws IOException {
+        checkResumeInLinearWorkflow(false);
+    }
+
+    @Test
+    public void testResumeInLinearWorkflowAsync() throws IOException {
+        checkResumeInLinearWorkflow(true);
+    }
+
+    /**
+     * Where the workflow is not all-to-all, an issue part of the way through it can't get to the state the dataset
+     * puts it in the way a new one does. So the statuses have to be taken from where new issues start, and the issue
+     * moved on from where it is one status at a time.
+     */
+    private void checkResumeInLinearWorkflow(boolean async) throws IOException {
+        server.setLinearWorkflow(true);
+        File journal = folder.newFile();
+        Properties properties = getProperties();
+        properties.setProperty(JiraPopulatorMain.JOURNAL_PROP_NAME, journal.getPath());
+        properties.setProperty(JiraPopulatorMain.STEPWISE_TRANSITIONS_PROP_NAME, "true");
+        properties.setProperty(JiraPopulatorMain.ASYNC_PROP_NAME, String.valueOf(async));
+        populate(properties);
+        checkIssues();
+
+        // Lose the transitions and half the issues, and have someone move some of the rest back. Which statuses are
+        // which is only known from the new issues, so this needs some of each type
+        Set<String> deleted = new HashSet<>();
+        int moved = 0;
+        for (String key : server.getIssueKeys()) {
+            if (server.getIssueIndex(key) % 2 == 0) {
+                assertTrue(server.deleteIssue(key));
+                deleted.add(key);
+            } else if (server.getIssueStatus(key) > 1) {
+                server.setIssueStatus(key, server.getIssueStatus(key) - 1 - (moved++ % 2));
+            }
+        }
+        assertTrue(moved > 0);
+        List<String> records = Files.readAllLines(journal.toPath(), StandardCharsets.UTF_8);
+        records.removeIf(record -> record.startsWith("T\t") ||
+                record.startsWith("I\t") && deleted.contains(record.substring(record.lastIndexOf('\t') + 1)));
+        Files.write(journal.toPath(), records, StandardCharsets.UTF_8);
+
+        populate(properties);
+        assertEquals(PROJECTS.length * ISSUES_PER_PROJECT, server.getIssueCount());
+        checkIssues();
+    }
+
+    /**
+     * The projects left by an earlier run are there before the first shard has torn them down, so the other shards
+     * must wait for it to say it has set them up for this run.
+     */
+    @Test
+    public void testShardsWaitForSetUp() throws Exception {
+        populate(getProperties());
+
+        CompletableFuture<RequestMetrics> secondShard = CompletableFuture.supplyAsync(() -> populate(getShardProperties(1)));
+        // Give it the chance to wrongly get going with the old projects
+        Thread.sleep(500);
+        populate(getShardProperties(0));
+        secondShard.get(1, TimeUnit.MINUTES);
+        assertEquals(PROJECTS.length * ISSUES_PER_PROJECT, server.getIssueCount());
+        checkIssues();
+    }
+
+    private Properties getShardProperties(int index) {
+        Properties properties = getProperties();
+        properties.setProperty(JiraPopulatorMain.DELETE_EXISTING_PROJECTS_PROP_NAME, "true");
+        properties.setProperty(JiraPopulatorMain.SHARD_INDEX_PROP_NAME, String.valueOf(index));
+        properties.setProperty(JiraPopulatorMain.SHARD_COUNT_PROP_NAME, "2");
+        properties.setProperty(JiraPopulatorMain.SHARD_RUN_PROP_NAME, "second");
+        return properties;
+    }
+
+    private static RequestMetrics populate(Properties properties) {
+        PopulatorConfig config = PopulatorConfig.fromSystemProperties(properties);
+        config.configureLogging();
+        return JiraPopulatorMain.populate(config);
+    }
+
+    private Properties getProperties() {
+        Properties properties = new Properties();
+        properties.setProperty(JiraPopulatorMain.JIRA_URL_PROP_NAME, server.getJiraUrl());
+        properties.setProperty(JiraPopulatorMain.DATASET_ISSUES_PROP_NAME, String.valueOf(ISSUES_PER_PROJECT));
+        properties.setProperty(JiraPopulatorMain.CONCURRENCY_PROP_NAME, "4");
+        properties.setProperty(JiraPopulatorMain.PROGRESS_INTERVAL_PROP_NAME, "0");
+        properties.setProperty(JiraPopulatorMain.LOG_LEVEL_PROP_NAME, "WARNING");
+        return properties;
+    }
+
+    /**
+     * Checks that each project has one issue for each index, in the status the index says.
+     */
+    private void checkIssues() {
+        Map<String, BitSet> indexes = new HashMap<>();
+        for (String key : server.getIssueKeys()) {
+            Integer index = server.getIssueIndex(key);
+            assertNotNull(key, index);
+            BitSet projectIndexes = indexes.computeIfAbsent(key.substring(0, key.indexOf('-')), k -> new BitSet());
+            assertFalse("More than one issue for index " + index + ", " + key, projectIndexes.get(index));
+            projectIndexes.set(index);
+            assertEquals(key + " with index " + index,
+                    IssueDistributions.DEFAULT.getState(index), (int) server.getIssueStatus(key));
+        }
+        assertEquals(new HashSet<>(Arrays.asList(PROJECTS)), indexes.keySet());
+        for (BitSet projectIndexes : indexes.values()) {
+            assertEquals(ISSUES_PER_PROJECT, projectIndexes.cardinality());
+            assertEquals(ISSUES_PER_PROJECT, projectIndexes.nextClearBit(0));
+        }
+    }
+}
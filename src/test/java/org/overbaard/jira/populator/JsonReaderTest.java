@@ -0,0 +1,181 @@
+package org.overbaard.jira.populator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jboss.dmr.ModelNode;
+import org.junit.Test;
+
+/**
+ * Reads what {@link JsonWriter} wrote, and what jboss-dmr writes, back with {@link JsonReader}.
+ *
+ * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
+ */
+public class JsonReaderTest {
+    private static final String[] STRINGS = {
+            "",
+            "plain",
+            "quote \" and backslash \\ and slash /",
+            "control \n\r\t\b\f \u0000 \u001f",
+            "two bytes éø߿",
+            "three bytes €中￮",
+            "four bytes 😀 𐐷",
+            // The whole buffer, so that characters get split across refills
+            JsonWriterTest.repeat("é€😀x", 3000)
+    };
+
+    @Test
+    public void testStringsRoundTrip() throws IOException {
+        byte[] json = JsonWriterTest.write(writer -> {
+            writer.beginArray();
+            for (String string : STRINGS) {
+                writer.value(string);
+            }
+            writer.endArray();
+        });
+        List<String> read = read(json, reader -> {
+            List<String> strings = new ArrayList<>();
+            reader.beginArray();
+            while (reader.hasNext()) {
+                strings.add(reader.nextString());
+            }
+            reader.endArray();
+            return strings;
+        });
+        assertArrayEquals(STRINGS, read.toArray());
+    }
+
+    @Test
+    public void testValuesRoundTrip() throws IOException {
+        byte[] json = JsonWriterTest.write(writer -> writer.beginObject()
+                .name("long").value(Long.MIN_VALUE)
+                .name("zero").value(0)
+                .name("true").value(true)
+                .name("false").value(false)
+                .name("null").value((String) null)
+                .name("raw").rawValue("1.5e3")
+                .reference("transition", "id", "21")
+                .name("empty").beginObject().endObject()
+                .name("nested").beginArray().beginArray().endArray().beginObject().name("a").value(1).endObject().endArray()
+                .name("last").value(Long.MAX_VALUE)
+                .endObject());
+        read(json, reader -> {
+            reader.beginObject();
+            assertEquals("long", reader.nextName());
+            assertEquals(Long.MIN_VALUE, Long.parseLong(reader.nextString()));
+            assertEquals("zero", reader.nextName());
+            assertEquals(0, reader.nextInt());
+            assertEquals("true", reader.nextName());
+            assertEquals(JsonReader.Token.BOOLEAN, reader.peek());
+            assertEquals("true", reader.nextString());
+            assertEquals("false", reader.nextName());
+            assertEquals("false", reader.nextString());
+            assertEquals("null", reader.nextName());
+            assertEquals(JsonReader.Token.NULL, reader.peek());
+            assertNull(reader.nextString());
+            assertEquals("raw", reader.nextName());
+            assertEquals(JsonReader.Token.NUMBER, reader.peek());
+            assertEquals("1.5e3", reader.nextString());
+            assertEquals("transition", reader.nextName());
+            assertEquals("21", ResponseReader.field("id").read(reader));
+            reader.endObject();
+            // Skips the nested values without looking at them
+            assertTrue(reader.findName("last"));
+            assertEquals(Long.MAX_VALUE, Long.parseLong(reader.nextString()));
+            assertFalse(reader.hasNext());
+            reader.endObject();
+            assertEquals(JsonReader.Token.END_DOCUMENT, reader.peek());
+            return null;
+        });
+    }
+
+    @Test
+    public void testReadsWhitespace() throws IOException {
+        ModelNode node = new ModelNode();
+        node.get("issues").add().get("key").set("UP-1");
+        node.get("issues").add().get("key").set("UP-2");
+        node.get("errors").setEmptyList();
+        // jboss-dmr pretty prints, with spaces and new lines between the tokens
+        byte[] json = node.toJSONString(false).getBytes(StandardCharsets.UTF_8);
+        List<String> keys = read(json, reader -> {
+            List<String> read = new ArrayList<>();
+            reader.beginObject();
+            assertTrue(reader.findName("issues"));
+            reader.beginArray();
+            while (reader.hasNext()) {
+                read.add(ResponseReader.field("key").read(reader));
+                reader.skipRestOfObject();
+            }
+            reader.endArray();
+            assertEquals("errors", reader.nextName());
+            reader.skipValue();
+            reader.endObject();
+            return read;
+        });
+        assertEquals(Arrays.asList("UP-1", "UP-2"), keys);
+    }
+
+    @Test
+    public void testCounts() throws IOException {
+        String big = JsonWriterTest.repeat("abc", 10000);
+        JsonPayload payload = writer -> writer.beginObject().name("big").value(big).name("key").value("UP-1").endObject();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long written = JsonWriter.write(payload, out);
+        assertEquals(out.size(), written);
+
+        // Only reads up to the key, but still counts the whole stream
+        long[] counter = new long[1];
+        String key = JsonReader.read(new ByteArrayInputStream(out.toByteArray()), reader -> {
+            reader.beginObject();
+            assertTrue(reader.findName("key"));
+            return reader.nextString();
+        }, counter);
+        assertEquals("UP-1", key);
+        assertEquals(written, counter[0]);
+    }
+
+    @Test(expected = IOException.class)
+    public void testMissingField() throws IOException {
+        read(JsonWriterTest.write(writer -> writer.beginObject().name("id").value("1").endObject()), ResponseReader.field("key"));
+    }
+
+    @Test
+    public void testConcurrentReads() throws Exception {
+        // More readers than the pool keeps buffers for, each reading more than a buffer holds
+        ExecutorService executor = Executors.newFixedThreadPool(100);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                String string = JsonWriterTest.repeat(String.valueOf(i), 5000);
+                byte[] json = JsonWriterTest.write(writer -> writer.value(string));
+                futures.add(executor.submit(() -> {
+                    assertEquals(string, read(json, JsonReader::nextString));
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static <T> T read(byte[] json, ResponseReader<T> reader) throws IOException {
+        return JsonReader.read(new ByteArrayInputStream(json), reader, null);
+    }
+}
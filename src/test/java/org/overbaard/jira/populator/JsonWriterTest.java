@@ -0,0 +1,120 @@
+package org.overbaard.jira.populator;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jboss.dmr.ModelNode;
+import org.junit.Test;
+
+/**
+ * Checks the bytes {@link JsonWriter} writes, and that jboss-dmr reads back what it was given.
+ *
+ * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
+ */
+public class JsonWriterTest {
+
+    @Test
+    public void testValues() throws IOException {
+        String json = writeString(writer -> writer.beginObject()
+                .name("long").value(Long.MIN_VALUE)
+                .name("true").value(true)
+                .name("null").value((String) null)
+                .name("raw").rawValue("1.5e3")
+                .reference("transition", "id", "21")
+                .name("empty").beginObject().endObject()
+                .name("nested").beginArray().beginArray().endArray().beginObject().name("a").value(1).endObject().endArray()
+                .endObject());
+        assertEquals("{\"long\":-9223372036854775808,\"true\":true,\"null\":null,\"raw\":1.5e3," +
+                "\"transition\":{\"id\":\"21\"},\"empty\":{},\"nested\":[[],{\"a\":1}]}", json);
+    }
+
+    @Test
+    public void testEscapes() throws IOException {
+        assertEquals("\"quote \\\" and backslash \\\\ and slash /\"",
+                writeString(writer -> writer.value("quote \" and backslash \\ and slash /")));
+        assertEquals("\"\\n\\r\\t\\b\\f\\u0000\\u001f\"", writeString(writer -> writer.value("\n\r\t\b\f\u0000\u001f")));
+    }
+
+    @Test
+    public void testUtf8() throws IOException {
+        for (String string : new String[]{"éø߿", "€中￮", "😀 𐐷", repeat("é€😀x", 3000)}) {
+            assertEquals(string, new String(write(writer -> writer.value(string)), StandardCharsets.UTF_8),
+                    "\"" + string + "\"");
+        }
+        // An unpaired surrogate can't be encoded
+        assertEquals("\"a?b\"", writeString(writer -> writer.value("a\ud800b")));
+    }
+
+    @Test
+    public void testModelNode() throws IOException {
+        ModelNode node = new ModelNode();
+        node.get("fields", "project", "id").set(10001);
+        node.get("fields", "summary").set("Implement \"it\", and test");
+        node.get("fields", "labels").add("a").add("b");
+        node.get("fields", "components").setEmptyList();
+        // jboss-dmr reads decimals back as big decimals
+        node.get("fields", "estimate").set(new BigDecimal("2.5"));
+        node.get("fields", "flag").set(true);
+        node.get("fields", "none");
+        node.get("update", "comment").add().get("add", "body").set("line\nbreak");
+
+        // jboss-dmr decodes with the platform charset, so this only has ASCII
+        assertEquals(node, ModelNode.fromJSONString(writeString(JsonPayload.of(node))));
+    }
+
+    @Test
+    public void testCountsBytesWritten() throws IOException {
+        String big = repeat("abc€", 10000);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long written = JsonWriter.write(writer -> writer.beginObject().name("big").value(big).endObject(), out);
+        assertEquals(out.size(), written);
+    }
+
+    @Test
+    public void testConcurrentWrites() throws Exception {
+        // More writers than the pool keeps buffers for, each writing more than a buffer holds
+        ExecutorService executor = Executors.newFixedThreadPool(100);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                String string = repeat(String.valueOf(i), 5000);
+                futures.add(executor.submit(() -> {
+                    assertEquals("\"" + string + "\"", writeString(writer -> writer.value(string)));
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    static byte[] write(JsonPayload payload) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonWriter.write(payload, out);
+        return out.toByteArray();
+    }
+
+    private static String writeString(JsonPayload payload) throws IOException {
+        return new String(write(payload), StandardCharsets.UTF_8);
+    }
+
+    static String repeat(String string, int times) {
+        StringBuilder sb = new StringBuilder(string.length() * times);
+        for (int i = 0; i < times; i++) {
+            sb.append(string);
+        }
+        return sb.toString();
+    }
+}
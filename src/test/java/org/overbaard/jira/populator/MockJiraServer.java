@@ -0,0 +1,668 @@
+package org.overbaard.jira.populator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.jboss.dmr.ModelNode;
+
+/**
+ * An in-memory stand-in for the parts of the Jira REST API which the populator uses, so that it can be run and
+ * benchmarked without a real Jira. It keeps just enough state to answer the way Jira would: the projects, users and
+ * issues created, and the status of each issue in the default four state workflow.
+ * <p>
+ * Each request can be delayed by a fixed latency, and a proportion of them can be failed with a 429 to exercise the
+ * throttling and retries. It is also used by the tests, which can have it reject chosen issues from bulk creates and
+ * look at what it holds. To start one on its own and point the populator at it:
+ * <pre>
+ *     mvn test-compile exec:java -Dexec.classpathScope=test \
+ *         -Dexec.mainClass=org.overbaard.jira.populator.MockJiraServer -Dob.mock.latency=5
+ * </pre>
+ *
+ * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
+ */
+class MockJiraServer implements AutoCloseable {
+    final static String PORT_PROP_NAME = "ob.mock.port";
+    final static String LATENCY_PROP_NAME = "ob.mock.latency";
+    final static String ERROR_RATE_PROP_NAME = "ob.mock.error.rate";
+    final static String RETRY_AFTER_PROP_NAME = "ob.mock.retry.after";
+
+    private static final Logger LOG = Logger.getLogger(MockJiraServer.class.getName());
+
+    private static final String CONTEXT = "/jira";
+    private static final String REST_PATH = CONTEXT + "/rest/api/2/";
+    private static final String[] STATUSES = {"Backlog", "Selected for Development", "In Progress", "Done"};
+    private static final Pattern PROJECT_JQL = Pattern.compile("project\\s*=\\s*\"?([A-Z]+)\"?(\\s+ORDER BY key)?");
+    private static final int[] AVATARS = {10122, 10123, 10124, 10125, 10126, 10127};
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final long latencyMs;
+    private final double errorRate;
+    private final int retryAfterSeconds;
+
+    private final Map<String, Project> projectsByKey = new ConcurrentHashMap<>();
+    private final Map<Integer, Project> projectsById = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger(10000);
+    // Sorted, so that the user search pages through them in a stable order
+    private final Set<String> users = new ConcurrentSkipListSet<>();
+    // Issue key to the index of its status in STATUSES
+    private final Map<String, Integer> issueStatuses = new ConcurrentHashMap<>();
+    // Issue key to the index stored in its IssuePopulator.INDEX_PROPERTY
+    private final Map<String, Integer> issueIndexes = new ConcurrentHashMap<>();
+    // Issue key to the keys of the issues linked to it
+    private final Map<String, Set<String>> issueLinks = new ConcurrentHashMap<>();
+    private final AtomicInteger transitions = new AtomicInteger();
+    private final AtomicInteger links = new AtomicInteger();
+    // Edits, reassignments, comments and worklogs
+    private final AtomicInteger updates = new AtomicInteger();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger injectedErrors = new AtomicInteger();
+    // The issue indexes to reject when they are part of a bulk create
+    private volatile IntPredicate bulkRejects = index -> false;
+    private volatile boolean linearWorkflow;
+
+    private MockJiraServer(int port, long latencyMs, double errorRate, int retryAfterSeconds) throws IOException {
+        this.latencyMs = latencyMs;
+        this.errorRate = errorRate;
+        this.retryAfterSeconds = retryAfterSeconds;
+        server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        // Unbounded, so that the injected latency does not also limit how many requests we can handle at once
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "mock-jira");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext(CONTEXT, this::handle);
+        server.start();
+    }
+
+    /**
+     * @param port the port to listen on, or 0 for any free one
+     * @param latencyMs how long to wait before answering each request
+     * @param errorRate the proportion of requests, between 0 and 1, to answer with a 429
+     * @param retryAfterSeconds the Retry-After to send with the 429s, or 0 for none
+     */
+    static MockJiraServer start(int port, long latencyMs, double errorRate, int retryAfterSeconds) {
+        try {
+            return new MockJiraServer(port, latencyMs, errorRate, retryAfterSeconds);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not start the mock Jira server", e);
+        }
+    }
+
+    static MockJiraServer startFromSystemProperties(int defaultPort) {
+        return start(Integer.getInteger(PORT_PROP_NAME, defaultPort),
+                Long.getLong(LATENCY_PROP_NAME, 0),
+                Double.parseDouble(System.getProperty(ERROR_RATE_PROP_NAME, "0")),
+                Integer.getInteger(RETRY_AFTER_PROP_NAME, 0));
+    }
+
+    public static void main(String[] args) throws Exception {
+        PopulatorLogging.configure(PopulatorLogging.DEFAULT_LEVEL);
+        MockJiraServer server = startFromSystemProperties(2990);
+        LOG.info("Mock Jira running at " + server.getJiraUrl());
+        Thread.currentThread().join();
+    }
+
+    String getJiraUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + CONTEXT;
+    }
+
+    int getProjectCount() {
+        return projectsByKey.size();
+    }
+
+    int getUserCount() {
+        return users.size();
+    }
+
+    int getIssueCount() {
+        return issueStatuses.size();
+    }
+
+    int getTransitionCount() {
+        return transitions.get();
+    }
+
+    int getLinkCount() {
+        return links.get();
+    }
+
+    int getUpdateCount() {
+        return updates.get();
+    }
+
+    int getRequestCount() {
+        return requests.get();
+    }
+
+    int getInjectedErrorCount() {
+        return injectedErrors.get();
+    }
+
+    /**
+     * Makes bulk creates reject the issues whose index matches, the way Jira reports an issue it could not create.
+     * They can still be created on their own.
+     */
+    void setBulkRejects(IntPredicate bulkRejects) {
+        this.bulkRejects = bulkRejects;
+    }
+
+    Set<String> getIssueKeys() {
+        return Collections.unmodifiableSet(issueStatuses.keySet());
+    }
+
+    /**
+     * @return the index the populator stored in the issue, or {@code null} if there was none
+     */
+    Integer getIssueIndex(String issueKey) {
+        return issueIndexes.get(issueKey);
+    }
+
+    /**
+     * @return the index of the issue's status in the workflow, or {@code null} if there is no such issue
+     */
+    Integer getIssueStatus(String issueKey) {
+        return issueStatuses.get(issueKey);
+    }
+
+    /**
+     * Makes issues which have left the first status only able to move on to the next one, or back to the first. The
+     * first one still has transitions to all of them, so the populator can tell which status is which state.
+     */
+    void setLinearWorkflow(boolean linearWorkflow) {
+        this.linearWorkflow = linearWorkflow;
+    }
+
+    /**
+     * Moves an issue to a status without a transition, like someone else working on it would.
+     */
+    void setIssueStatus(String issueKey, int status) {
+        if (issueStatuses.replace(issueKey, status) == null) {
+            throw new IllegalArgumentException("No issue " + issueKey);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            requests.incrementAndGet();
+            byte[] body = readFully(exchange.getRequestBody());
+            if (latencyMs > 0) {
+                TimeUnit.MILLISECONDS.sleep(latencyMs);
+            }
+            if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                injectedErrors.incrementAndGet();
+                if (retryAfterSeconds > 0) {
+                    exchange.getResponseHeaders().add("Retry-After", String.valueOf(retryAfterSeconds));
+                }
+                send(exchange, 429, null);
+                return;
+            }
+            String path = exchange.getRequestURI().getPath();
+            if (!path.startsWith(REST_PATH)) {
+                send(exchange, 404, error("No such resource " + path));
+                return;
+            }
+            ModelNode payload = body.length == 0 ? null : ModelNode.fromJSONString(new String(body, StandardCharsets.UTF_8));
+            route(exchange, exchange.getRequestMethod(), path.substring(REST_PATH.length()).split("/"), payload);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            LOG.log(Level.WARNING, "Mock Jira failed to handle " + exchange.getRequestURI(), e);
+            send(exchange, 500, error(e.toString()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void route(HttpExchange exchange, String method, String[] path, ModelNode payload) throws IOException {
+        String resource = path[0];
+        if (resource.equals("avatar") && path.length == 3 && method.equals("GET")) {
+            send(exchange, 200, getSystemAvatars());
+        } else if (resource.equals("user") && path.length == 1) {
+            String username = getQueryParameter(exchange, "username");
+            if (method.equals("GET") && username == null) {
+                send(exchange, 400, error("The username query parameter is required"));
+            } else if (method.equals("GET")) {
+                send(exchange, users.contains(username) ? 200 : 404,
+                        users.contains(username) ? user(username) : error("The user named '" + username + "' does not exist"));
+            } else {
+                String name = payload.get("name").asString();
+                users.add(name);
+                send(exchange, 201, user(name));
+            }
+        } else if (resource.equals("user") && path.length == 2 && path[1].equals("search")) {
+            String username = getQueryParameter(exchange, "username");
+            if (username == null) {
+                send(exchange, 400, error("The username query parameter is required"));
+            } else {
+                send(exchange, 200, searchUsers(username,
+                        getIntQueryParameter(exchange, "startAt", 0), getIntQueryParameter(exchange, "maxResults", 50)));
+            }
+        } else if (resource.equals("user") && path.length == 2 && path[1].equals("avatar")) {
+            send(exchange, 204, null);
+        } else if (resource.equals("project") && path.length == 1) {
+            if (method.equals("GET")) {
+                ModelNode projects = new ModelNode();
+                projects.setEmptyList();
+                for (Project project : projectsByKey.values()) {
+                    projects.add(project.toModelNode());
+                }
+                send(exchange, 200, projects);
+            } else {
+                send(exchange, 201, createProject(payload));
+            }
+        } else if (resource.equals("project") && (path.length == 2 || (path.length == 3 && path[2].equals("delete")))) {
+            Project project = projectsByKey.get(path[1]);
+            if (project == null) {
+                send(exchange, 404, error("No project could be found with key '" + path[1] + "'."));
+            } else if (method.equals("DELETE") || path.length == 3) {
+                deleteProject(project);
+                if (path.length == 3) {
+                    // Jira deletes it in a background task; ours is always already done
+                    exchange.getResponseHeaders().add("Location", getJiraUrl() + REST_PATH.substring(CONTEXT.length()) +
+                            "task/" + nextId.incrementAndGet());
+                    send(exchange, 303, null);
+                } else {
+                    send(exchange, 204, null);
+                }
+            } else {
+                send(exchange, 200, project.toModelNode());
+            }
+        } else if (resource.equals("project") && path.length == 4 && path[2].equals("properties")) {
+            Project project = projectsByKey.get(path[1]);
+            ModelNode value = project == null ? null : project.properties.get(path[3]);
+            if (project == null) {
+                send(exchange, 404, error("No project could be found with key '" + path[1] + "'."));
+            } else if (method.equals("PUT")) {
+                project.properties.put(path[3], payload);
+                send(exchange, 200, null);
+            } else if (value == null) {
+                send(exchange, 404, error("Property with key not found"));
+            } else {
+                ModelNode property = new ModelNode();
+                property.get("key").set(path[3]);
+                property.get("value").set(value);
+                send(exchange, 200, property);
+            }
+        } else if (resource.equals("task") && path.length == 2) {
+            ModelNode task = new ModelNode();
+            task.get("id").set(path[1]);
+            task.get("status").set("COMPLETE");
+            send(exchange, 200, task);
+        } else if (resource.equals("search")) {
+            send(exchange, 200, searchIssues(getQueryParameter(exchange, "jql"),
+                    getIntQueryParameter(exchange, "startAt", 0), getIntQueryParameter(exchange, "maxResults", 50)));
+        } else if (resource.equals("project") && path.length == 3 && (path[2].equals("components") || path[2].equals("versions"))) {
+            Project project = projectsByKey.get(path[1]);
+            if (project == null) {
+                send(exchange, 404, error("No project could be found with key '" + path[1] + "'."));
+            } else {
+                ModelNode names = new ModelNode();
+                names.setEmptyList();
+                for (String name : path[2].equals("components") ? project.components : project.versions) {
+                    names.add().get("name").set(name);
+                }
+                send(exchange, 200, names);
+            }
+        } else if (resource.equals("component") || resource.equals("version")) {
+            Project project = projectsByKey.get(payload.get("project").asString());
+            if (project != null) {
+                (resource.equals("component") ? project.components : project.versions).add(payload.get("name").asString());
+            }
+            ModelNode created = new ModelNode();
+            created.get("id").set(String.valueOf(nextId.incrementAndGet()));
+            created.get("name").set(payload.get("name"));
+            send(exchange, 201, created);
+        } else if (resource.equals("issue") && path.length == 1) {
+            ModelNode created = createIssue(payload);
+            send(exchange, created.has("errors") ? 400 : 201, created);
+        } else if (resource.equals("issue") && path.length == 2 && method.equals("GET")) {
+            Integer status = issueStatuses.get(path[1]);
+            if (status == null) {
+                send(exchange, 404, error("Issue Does Not Exist"));
+            } else {
+                // Only the fields we ask for
+                ModelNode issue = new ModelNode();
+                issue.get("key").set(path[1]);
+                setStatus(issue, status);
+                send(exchange, 200, issue);
+            }
+        } else if (resource.equals("issue") && path.length == 2 && method.equals("DELETE")) {
+            send(exchange, deleteIssue(path[1]) ? 204 : 404, null);
+        } else if (resource.equals("issue") && path.length == 2 && path[1].equals("bulk")) {
+            send(exchange, 201, createIssues(payload));
+        } else if (resource.equals("issue") && (path.length == 2 && method.equals("PUT") ||
+                path.length == 3 && (path[2].equals("assignee") || path[2].equals("comment") || path[2].equals("worklog")))) {
+            if (!issueStatuses.containsKey(path[1])) {
+                send(exchange, 404, error("Issue Does Not Exist"));
+            } else if (method.equals("PUT")) {
+                updates.incrementAndGet();
+                send(exchange, 204, null);
+            } else {
+                updates.incrementAndGet();
+                ModelNode created = new ModelNode();
+                created.get("id").set(String.valueOf(nextId.getAndIncrement()));
+                send(exchange, 201, created);
+            }
+        } else if (resource.equals("issue") && path.length == 3 && path[2].equals("transitions")) {
+            Integer status = issueStatuses.get(path[1]);
+            if (status == null) {
+                send(exchange, 404, error("Issue Does Not Exist"));
+            } else if (method.equals("GET")) {
+                send(exchange, 200, getTransitions(status));
+            } else {
+                int target = payload.get("transition", "id").asInt() / 10 - 1;
+                issueStatuses.put(path[1], target);
+                transitions.incrementAndGet();
+                send(exchange, 204, null);
+            }
+        } else if (resource.equals("issueLink")) {
+            if (!issueStatuses.containsKey(payload.get("inwardIssue", "key").asString()) ||
+                    !issueStatuses.containsKey(payload.get("outwardIssue", "key").asString())) {
+                send(exchange, 404, error("Issue Does Not Exist"));
+            } else {
+                String inward = payload.get("inwardIssue", "key").asString();
+                String outward = payload.get("outwardIssue", "key").asString();
+                issueLinks.computeIfAbsent(inward, k -> ConcurrentHashMap.newKeySet()).add(outward);
+                issueLinks.computeIfAbsent(outward, k -> ConcurrentHashMap.newKeySet()).add(inward);
+                links.incrementAndGet();
+                send(exchange, 201, null);
+            }
+        } else {
+            send(exchange, 404, error("No such resource " + exchange.getRequestURI()));
+        }
+    }
+
+    private ModelNode getSystemAvatars() {
+        ModelNode avatars = new ModelNode();
+        avatars.get("system").setEmptyList();
+        for (int id : AVATARS) {
+            ModelNode avatar = new ModelNode();
+            avatar.get("id").set(String.valueOf(id));
+            avatar.get("isSystemAvatar").set(true);
+            avatars.get("system").add(avatar);
+        }
+        return avatars;
+    }
+
+    private ModelNode createProject(ModelNode payload) {
+        Project project = new Project(nextId.incrementAndGet(), payload.get("key").asString());
+        projectsByKey.put(project.key, project);
+        projectsById.put(project.id, project);
+        return project.toModelNode();
+    }
+
+    private void deleteProject(Project project) {
+        projectsByKey.remove(project.key);
+        projectsById.remove(project.id);
+        for (String key : issueStatuses.keySet()) {
+            if (key.startsWith(project.key + "-")) {
+                deleteIssue(key);
+            }
+        }
+    }
+
+    /**
+     * @return whether there was such an issue
+     */
+    boolean deleteIssue(String key) {
+        if (issueStatuses.remove(key) == null) {
+            return false;
+        }
+        issueIndexes.remove(key);
+        Set<String> linked = issueLinks.remove(key);
+        if (linked != null) {
+            for (String other : linked) {
+                issueLinks.getOrDefault(other, Collections.emptySet()).remove(key);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Only understands the {@code project = "KEY"} queries we send.
+     */
+    private ModelNode searchIssues(String jql, int startAt, int maxResults) {
+        // Only 'project = "KEY"', which may be followed by 'ORDER BY key'. The keys are always in order anyway
+        Matcher matcher = PROJECT_JQL.matcher(jql);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Unsupported JQL: " + jql);
+        }
+        String projectKey = matcher.group(1);
+        ModelNode found = new ModelNode();
+        found.get("startAt").set(startAt);
+        found.get("issues").setEmptyList();
+        issueStatuses.keySet().stream()
+                .filter(key -> key.startsWith(projectKey + "-"))
+                .sorted(Comparator.comparingInt(MockJiraServer::getIssueNumber))
+                .skip(startAt)
+                .limit(Math.min(maxResults, 1000))
+                .forEach(key -> {
+                    ModelNode issue = found.get("issues").add();
+                    issue.get("key").set(key);
+                    setStatus(issue, issueStatuses.getOrDefault(key, 0));
+                    issue.get("fields", "issuelinks").setEmptyList();
+                    for (String linked : issueLinks.getOrDefault(key, Collections.emptySet())) {
+                        issue.get("fields", "issuelinks").add().get("outwardIssue", "key").set(linked);
+                    }
+                    Integer index = issueIndexes.get(key);
+                    issue.get("properties").setEmptyObject();
+                    if (index != null) {
+                        issue.get("properties", IssuePopulator.INDEX_PROPERTY, "index").set(index);
+                    }
+                });
+        return found;
+    }
+
+    private static void setStatus(ModelNode issue, int status) {
+        issue.get("fields", "status", "id").set(String.valueOf(status + 1));
+        issue.get("fields", "status", "name").set(STATUSES[status]);
+    }
+
+    private ModelNode createIssue(ModelNode payload) {
+        Project project = projectsById.get(payload.get("fields", "project", "id").asInt());
+        if (project == null) {
+            ModelNode error = new ModelNode();
+            error.get("errors", "project").set("project is required");
+            return error;
+        }
+        String key = project.key + "-" + project.issueCounter.incrementAndGet();
+        issueStatuses.put(key, 0);
+        Integer index = getIndex(payload);
+        if (index != null) {
+            issueIndexes.put(key, index);
+        }
+        ModelNode created = new ModelNode();
+        created.get("id").set(String.valueOf(nextId.incrementAndGet()));
+        created.get("key").set(key);
+        return created;
+    }
+
+    private static Integer getIndex(ModelNode issue) {
+        if (issue.hasDefined("properties")) {
+            for (ModelNode property : issue.get("properties").asList()) {
+                if (property.get("key").asString().equals(IssuePopulator.INDEX_PROPERTY)) {
+                    return property.get("value", "index").asInt();
+                }
+            }
+        }
+        return null;
+    }
+
+    private static ModelNode rejected() {
+        ModelNode error = new ModelNode();
+        error.get("errors", "summary").set("Rejected by the test");
+        return error;
+    }
+
+    private ModelNode createIssues(ModelNode payload) {
+        ModelNode result = new ModelNode();
+        result.get("issues").setEmptyList();
+        result.get("errors").setEmptyList();
+        int element = 0;
+        for (ModelNode issue : payload.get("issueUpdates").asList()) {
+            Integer index = getIndex(issue);
+            ModelNode created = index != null && bulkRejects.test(index) ? rejected() : createIssue(issue);
+            if (created.has("errors")) {
+                ModelNode error = new ModelNode();
+                error.get("status").set(400);
+                error.get("elementErrors").set(created);
+                error.get("failedElementNumber").set(element);
+                result.get("errors").add(error);
+            } else {
+                result.get("issues").add(created);
+            }
+            element++;
+        }
+        return result;
+    }
+
+    /**
+     * The default Jira workflow lets an issue move from any status to any other one
+     */
+    private ModelNode getTransitions(int status) {
+        ModelNode transitions = new ModelNode();
+        transitions.get("transitions").setEmptyList();
+        for (int i = 0; i < STATUSES.length; i++) {
+            if (linearWorkflow && status > 0 && i != 0 && i != status + 1) {
+                continue;
+            }
+            ModelNode transition = new ModelNode();
+            transition.get("id").set(String.valueOf((i + 1) * 10 + 1));
+            transition.get("name").set(STATUSES[i]);
+            transition.get("to", "id").set(String.valueOf(i + 1));
+            transition.get("to", "name").set(STATUSES[i]);
+            transitions.get("transitions").add(transition);
+        }
+        return transitions;
+    }
+
+    /**
+     * Like Jira, '.' matches every user, and a page holds at most 1000 of them.
+     */
+    private ModelNode searchUsers(String username, int startAt, int maxResults) {
+        ModelNode found = new ModelNode();
+        found.setEmptyList();
+        int index = 0;
+        int count = 0;
+        for (String user : users) {
+            if (count >= Math.min(maxResults, 1000)) {
+                break;
+            }
+            if ((username.equals(".") || user.startsWith(username)) && index++ >= startAt) {
+                found.add(user(user));
+                count++;
+            }
+        }
+        return found;
+    }
+
+    private static ModelNode user(String username) {
+        ModelNode user = new ModelNode();
+        user.get("name").set(username);
+        return user;
+    }
+
+    private static int getIssueNumber(String issueKey) {
+        return Integer.parseInt(issueKey.substring(issueKey.lastIndexOf('-') + 1));
+    }
+
+    private static ModelNode error(String message) {
+        ModelNode error = new ModelNode();
+        error.get("errorMessages").add(message);
+        return error;
+    }
+
+    private static int getIntQueryParameter(HttpExchange exchange, String name, int defaultValue) throws IOException {
+        String value = getQueryParameter(exchange, name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    private static String getQueryParameter(HttpExchange exchange, String name) throws IOException {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                int index = parameter.indexOf('=');
+                if (index > 0 && parameter.substring(0, index).equals(name)) {
+                    return URLDecoder.decode(parameter.substring(index + 1), "UTF-8");
+                }
+            }
+        }
+        return null;
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static void send(HttpExchange exchange, int status, ModelNode body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        byte[] bytes = body.toJSONString(true).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json;charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static class Project {
+        private final int id;
+        private final String key;
+        private final AtomicInteger issueCounter = new AtomicInteger();
+        private final Set<String> components = ConcurrentHashMap.newKeySet();
+        private final Set<String> versions = ConcurrentHashMap.newKeySet();
+        private final Map<String, ModelNode> properties = new ConcurrentHashMap<>();
+
+        Project(int id, String key) {
+            this.id = id;
+            this.key = key;
+        }
+
+        ModelNode toModelNode() {
+            ModelNode project = new ModelNode();
+            project.get("id").set(String.valueOf(id));
+            project.get("key").set(key);
+            return project;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package org.overbaard.jira.populator;
+
+import static org.overbaard.jira.populator.JiraPopulatorMain.BULK_SIZE_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.CONCURRENCY_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.DATASET_ISSUES_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.DATASET_PROJECTS_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.JIRA_URL_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.LOG_LEVEL_PROP_NAME;
+import static org.overbaard.jira.populator.JiraPopulatorMain.PROGRESS_INTERVAL_PROP_NAME;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jboss.dmr.ModelNode;
+
+/**
+ * Measures end to end issues/sec of a populate run against a {@link MockJiraServer}, for each combination of the
+ * concurrency and bulk sizes given, so that throughput regressions show up without needing a real Jira:
+ * <pre>
+ *     mvn test-compile exec:java -Dexec.classpathScope=test \
+ *         -Dexec.mainClass=org.overbaard.jira.populator.PopulatorBenchmark \
+ *         -Dob.benchmark.concurrency=1,8 -Dob.benchmark.bulk.size=1,50 -Dob.mock.latency=5
+ * </pre>
+ * Every run gets a fresh server. The usual {@code ob.setup.*} settings apply to the runs, except that by default a
+ * larger generated dataset is used and only warnings are logged. The {@code ob.mock.*} settings of the server apply
+ * too.
+ * <p>
+ * The results can be written to a JSON file, and compared against the file written by an earlier run, in which case
+ * the benchmark fails if any combination got slower by more than the tolerance.
+ *
+ * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
+ */
+class PopulatorBenchmark {
+    final static String CONCURRENCY_LIST_PROP_NAME = "ob.benchmark.concurrency";
+    final static String BULK_SIZE_LIST_PROP_NAME = "ob.benchmark.bulk.size";
+    final static String WARMUP_PROP_NAME = "ob.benchmark.warmup";
+    final static String ITERATIONS_PROP_NAME = "ob.benchmark.iterations";
+    final static String REPORT_PROP_NAME = "ob.benchmark.report";
+    final static String BASELINE_PROP_NAME = "ob.benchmark.baseline";
+    final static String TOLERANCE_PROP_NAME = "ob.benchmark.tolerance";
+
+    private static final Logger LOG = Logger.getLogger(PopulatorBenchmark.class.getName());
+
+    private final PopulatorConfig config;
+    private final int warmup;
+    private final int iterations;
+
+    private PopulatorBenchmark(PopulatorConfig config, int warmup, int iterations) {
+        this.config = config;
+        this.warmup = warmup;
+        this.iterations = Math.max(iterations, 1);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Properties defaults = new Properties();
+        defaults.setProperty(DATASET_PROJECTS_PROP_NAME, "4");
+        defaults.setProperty(DATASET_ISSUES_PROP_NAME, "250");
+        defaults.setProperty(LOG_LEVEL_PROP_NAME, "WARNING");
+        PopulatorConfig config = PopulatorConfig.fromSystemProperties(defaults);
+        config.configureLogging();
+        // We still want to see our own results
+        LOG.setLevel(Level.INFO);
+
+        PopulatorBenchmark benchmark = new PopulatorBenchmark(config,
+                Integer.getInteger(WARMUP_PROP_NAME, 1), Integer.getInteger(ITERATIONS_PROP_NAME, 3));
+        ModelNode results = new ModelNode();
+        results.setEmptyList();
+        for (int concurrency : parseList(System.getProperty(CONCURRENCY_LIST_PROP_NAME, "1,4,16"))) {
+            for (int bulkSize : parseList(System.getProperty(BULK_SIZE_LIST_PROP_NAME, "1,50"))) {
+                results.add(benchmark.measure(concurrency, bulkSize));
+            }
+        }
+
+        String report = System.getProperty(REPORT_PROP_NAME);
+        if (report != null) {
+            Files.write(Paths.get(report), results.toJSONString(false).getBytes(StandardCharsets.UTF_8));
+            LOG.info("Wrote results to " + report);
+        }
+        String baseline = System.getProperty(BASELINE_PROP_NAME);
+        if (baseline != null) {
+            compare(results, baseline, Double.parseDouble(System.getProperty(TOLERANCE_PROP_NAME, "0.2")));
+        }
+    }
+
+    private ModelNode measure(int concurrency, int bulkSize) {
+        for (int i = 0; i < warmup; i++) {
+            run(concurrency, bulkSize);
+        }
+        double[] rates = new double[iterations];
+        ModelNode runs = new ModelNode();
+        runs.setEmptyList();
+        for (int i = 0; i < iterations; i++) {
+            rates[i] = run(concurrency, bulkSize);
+            runs.add(rates[i]);
+        }
+        Arrays.sort(rates);
+        double median = rates[rates.length / 2];
+        LOG.info(String.format("concurrency %3d  bulk size %3d  %8.1f issues/s (min %.1f, max %.1f)",
+                concurrency, bulkSize, median, rates[0], rates[rates.length - 1]));
+
+        ModelNode result = new ModelNode();
+        result.get("concurrency").set(concurrency);
+        result.get("bulk-size").set(bulkSize);
+        result.get("issues-per-second").set(median);
+        result.get("runs").set(runs);
+        return result;
+    }
+
+    /**
+     * @return the issues created per second
+     */
+    private double run(int concurrency, int bulkSize) {
+        try (MockJiraServer server = MockJiraServer.startFromSystemProperties(0)) {
+            Properties overrides = new Properties();
+            overrides.setProperty(JIRA_URL_PROP_NAME, server.getJiraUrl());
+            overrides.setProperty(CONCURRENCY_PROP_NAME, String.valueOf(concurrency));
+            overrides.setProperty(BULK_SIZE_PROP_NAME, String.valueOf(bulkSize));
+            overrides.setProperty(PROGRESS_INTERVAL_PROP_NAME, "0");
+            long start = System.nanoTime();
+            RequestMetrics metrics = JiraPopulatorMain.populate(config.with(overrides));
+            double seconds = (System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1);
+            if (server.getIssueCount() != metrics.getIssuesCreated()) {
+                throw new RuntimeException("The server has " + server.getIssueCount() + " issues but " +
+                        metrics.getIssuesCreated() + " were created");
+            }
+            return metrics.getIssuesCreated() / seconds;
+        }
+    }
+
+    private static void compare(ModelNode results, String baselineFile, double tolerance) throws IOException {
+        ModelNode baseline = ModelNode.fromJSONString(
+                new String(Files.readAllBytes(Paths.get(baselineFile)), StandardCharsets.UTF_8));
+        List<String> regressions = new ArrayList<>();
+        for (ModelNode result : results.asList()) {
+            for (ModelNode previous : baseline.asList()) {
+                if (previous.get("concurrency").asInt() == result.get("concurrency").asInt() &&
+                        previous.get("bulk-size").asInt() == result.get("bulk-size").asInt()) {
+                    double before = previous.get("issues-per-second").asDouble();
+                    double now = result.get("issues-per-second").asDouble();
+                    if (now < before * (1 - tolerance)) {
+                        regressions.add(String.format("concurrency %d, bulk size %d: %.1f issues/s, was %.1f",
+                                result.get("concurrency").asInt(), result.get("bulk-size").asInt(), now, before));
+                    }
+                }
+            }
+        }
+        if (!regressions.isEmpty()) {
+            throw new RuntimeException("Throughput regressed compared to " + baselineFile + ": " + regressions);
+        }
+        LOG.info("No regressions compared to " + baselineFile);
+    }
+
+    private static int[] parseList(String value) {
+        String[] values = value.split(",");
+        int[] ints = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            ints[i] = Integer.parseInt(values[i].trim());
+        }
+        return ints;
+    }
+}
@@ -0,0 +1,123 @@
+package org.overbaard.jira.populator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
+ */
+public class ProgressJournalTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testResume() throws IOException {
+        String file = folder.newFile().getPath();
+        // Nothing gets synced until it is closed
+        try (ProgressJournal journal = ProgressJournal.open(file, 1000, 60000)) {
+            assertTrue(journal.isEnabled());
+            assertNull(journal.getProjectId("UP"));
+            journal.projectCreated("UP", 10000);
+            journal.componentCreated("FEAT", "Core Component");
+            journal.versionCreated("UP", "1.0.0");
+            journal.issueCreated("UP", 0, "UP-1");
+            journal.issueCreated("UP", 7, "UP-2");
+            journal.issueTransitioned("UP-1");
+            journal.issuesLinked("UP-1", "FEAT-3");
+        }
+
+        try (ProgressJournal journal = ProgressJournal.open(file, 1000, 60000)) {
+            assertEquals(Integer.valueOf(10000), journal.getProjectId("UP"));
+            assertNull(journal.getProjectId("FEAT"));
+            assertTrue(journal.hasComponent("FEAT", "Core Component"));
+            assertFalse(journal.hasComponent("UP", "Core Component"));
+            assertTrue(journal.hasVersion("UP", "1.0.0"));
+            assertFalse(journal.hasVersion("UP", "2.0.0"));
+            Map<Integer, String> keys = new HashMap<>();
+            keys.put(0, "UP-1");
+            keys.put(7, "UP-2");
+            assertEquals(keys, journal.getIssueKeys("UP"));
+            assertTrue(journal.getIssueKeys("FEAT").isEmpty());
+            assertTrue(journal.isTransitioned("UP-1"));
+            assertFalse(journal.isTransitioned("UP-2"));
+            assertTrue(journal.isLinked("UP-1", "FEAT-3"));
+            assertFalse(journal.isLinked("FEAT-3", "UP-1"));
+
+            // Appended to what is there
+            journal.issueTransitioned("UP-2");
+        }
+
+        try (ProgressJournal journal = ProgressJournal.open(file, 1, 60000)) {
+            assertTrue(journal.isTransitioned("UP-1"));
+            assertTrue(journal.isTransitioned("UP-2"));
+            assertEquals(2, journal.getIssueKeys("UP").size());
+        }
+    }
+
+    @Test
+    public void testSyncsOnceEnoughRecordsArePending() throws IOException {
+        Path file = folder.newFile().toPath();
+        try (ProgressJournal journal = ProgressJournal.open(file.toString(), 2, 60000)) {
+            journal.issueCreated("UP", 0, "UP-1");
+            assertEquals(0, Files.size(file));
+            journal.issueCreated("UP", 1, "UP-2");
+            assertEquals("I\tUP\t0\tUP-1\nI\tUP\t1\tUP-2\n", new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testDropsIncompleteRecord() throws IOException {
+        Path file = folder.newFile().toPath();
+        // A crash part way through writing the last record
+        Files.write(file, "I\tUP\t0\tUP-1\nI\tUP\t1\tUP-".getBytes(StandardCharsets.UTF_8));
+
+        try (ProgressJournal journal = ProgressJournal.open(file.toString(), 1000, 60000)) {
+            assertEquals("UP-1", journal.getIssueKeys("UP").get(0));
+            assertFalse(journal.getIssueKeys("UP").containsKey(1));
+            journal.issueCreated("UP", 1, "UP-2");
+        }
+
+        try (ProgressJournal journal = ProgressJournal.open(file.toString(), 1000, 60000)) {
+            assertEquals("UP-1", journal.getIssueKeys("UP").get(0));
+            assertEquals("UP-2", journal.getIssueKeys("UP").get(1));
+        }
+        assertEquals("I\tUP\t0\tUP-1\nI\tUP\t1\tUP-2\n", new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testIgnoresBadRecords() throws IOException {
+        Path file = folder.newFile().toPath();
+        Files.write(file, "P\tUP\tnot-a-number\nX\tsomething\nI\tUP\n\nT\tUP-1\n".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        try (ProgressJournal journal = ProgressJournal.open(file.toString(), 1000, 60000)) {
+            assertNull(journal.getProjectId("UP"));
+            assertTrue(journal.getIssueKeys("UP").isEmpty());
+            assertTrue(journal.isTransitioned("UP-1"));
+        }
+    }
+
+    @Test
+    public void testNone() {
+        assertSame(ProgressJournal.NONE, ProgressJournal.open(null, 1000, 1000));
+        assertFalse(ProgressJournal.NONE.isEnabled());
+        ProgressJournal.NONE.issueTransitioned("UP-1");
+        assertFalse(ProgressJournal.NONE.isTransitioned("UP-1"));
+        ProgressJournal.NONE.close();
+    }
+}
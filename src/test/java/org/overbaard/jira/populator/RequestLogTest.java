@@ -0,0 +1,109 @@
+package org.overbaard.jira.populator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
+ */
+public class RequestLogTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        String file = folder.newFile().getPath();
+        byte[] issue = "{\"fields\":{\"summary\":\"€\"}}".getBytes(StandardCharsets.UTF_8);
+        byte[] bulk = "{\"issues\":[{\"id\":\"10002\",\"key\":\"UP-2\",\"self\":\"x\"},{\"id\":\"10003\",\"key\":\"UP-3\"}],\"errors\":[]}"
+                .getBytes(StandardCharsets.UTF_8);
+        // Big enough to go through several buffers
+        byte[] large = new byte[200000];
+        Arrays.fill(large, (byte) 'x');
+
+        long before = System.nanoTime();
+        try (RequestLog.Writer writer = RequestLog.create(file)) {
+            long start = System.nanoTime() + 5000000;
+            writer.write(start, "POST", "issue", issue, 201, RequestLog.readCreated("{\"id\":\"10001\",\"key\":\"UP-1\"}".getBytes()));
+            writer.write(start, "POST", "issue/bulk", large, 201, RequestLog.readCreated(bulk));
+            writer.write(start, "GET", "issue/UP-1/transitions?expand=transitions.fields", null, 200, RequestLog.Created.NONE);
+            writer.write(start, "DELETE", "issue/UP-3", null, 204, RequestLog.Created.NONE);
+            // Sent before the log was started
+            writer.write(before, "PUT", "issue/UP-2", new byte[0], 429, RequestLog.Created.NONE);
+        }
+
+        try (RequestLog.Reader reader = RequestLog.open(file)) {
+            RequestLog.Entry entry = reader.next();
+            assertEquals("POST", entry.method);
+            assertEquals("issue", entry.path);
+            assertArrayEquals(issue, entry.body);
+            assertEquals(201, entry.status);
+            assertEquals(Collections.singletonList("UP-1"), entry.created.keys);
+            assertEquals(Collections.singletonList("10001"), entry.created.ids);
+            long offset = entry.offsetNanos;
+            assertTrue(offset >= 5000000);
+
+            entry = reader.next();
+            assertEquals("issue/bulk", entry.path);
+            assertArrayEquals(large, entry.body);
+            assertEquals(Arrays.asList("UP-2", "UP-3"), entry.created.keys);
+            assertEquals(Arrays.asList("10002", "10003"), entry.created.ids);
+            assertEquals(offset, entry.offsetNanos);
+
+            entry = reader.next();
+            assertEquals("GET", entry.method);
+            assertEquals("issue/UP-1/transitions?expand=transitions.fields", entry.path);
+            assertNull(entry.body);
+            assertEquals(200, entry.status);
+            assertSame(RequestLog.Created.NONE, entry.created);
+
+            entry = reader.next();
+            assertEquals("DELETE", entry.method);
+            assertEquals(204, entry.status);
+
+            entry = reader.next();
+            assertEquals("PUT", entry.method);
+            assertArrayEquals(new byte[0], entry.body);
+            assertEquals(429, entry.status);
+            assertEquals(0, entry.offsetNanos);
+
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    public void testReadCreated() {
+        assertTrue(RequestLog.readCreated(null).keys.isEmpty());
+        assertTrue(RequestLog.readCreated("not json".getBytes()).keys.isEmpty());
+        assertTrue(RequestLog.readCreated("[{\"key\":\"UP-1\"}]".getBytes()).keys.isEmpty());
+
+        RequestLog.Created created = RequestLog.readCreated("{\"id\":\"10000\",\"name\":\"1.0.0\"}".getBytes());
+        assertEquals(Collections.emptyList(), created.keys);
+        assertEquals(Collections.singletonList("10000"), created.ids);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testNotALog() throws IOException {
+        File file = folder.newFile();
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(0x12345678);
+            out.writeInt(1);
+        }
+        RequestLog.open(file.getPath());
+    }
+}
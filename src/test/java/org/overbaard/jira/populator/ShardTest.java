@@ -0,0 +1,74 @@
+package org.overbaard.jira.populator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * The owner of each issue must be the shard whose range it is in, since the merge run works out which links the
+ * shards made from {@link Shard#getOwner(int, int, int)}, while the shards create the issues from their ranges.
+ *
+ * @author <a href="mailto:kabir.khan@jboss.com">Kabir Khan</a>
+ */
+public class ShardTest {
+
+    @Test
+    public void testRangesCoverTheIssues() {
+        for (int numberIssues = 0; numberIssues <= 100; numberIssues++) {
+            for (int count = 1; count <= 12; count++) {
+                int expectedStart = 0;
+                for (int index = 0; index < count; index++) {
+                    Shard shard = new Shard(index, count);
+                    assertEquals(shard + " of " + numberIssues, expectedStart, shard.getStart(numberIssues));
+                    assertTrue(shard + " of " + numberIssues, shard.getEnd(numberIssues) >= shard.getStart(numberIssues));
+                    expectedStart = shard.getEnd(numberIssues);
+                }
+                assertEquals(numberIssues, expectedStart);
+            }
+        }
+    }
+
+    @Test
+    public void testOwnerAgreesWithRanges() {
+        for (int numberIssues = 1; numberIssues <= 100; numberIssues++) {
+            for (int count = 1; count <= 12; count++) {
+                checkOwners(numberIssues, count, 0, numberIssues);
+            }
+        }
+    }
+
+    @Test
+    public void testOwnerAgreesWithRangesOfLargeProjects() {
+        // Big enough for the index times the count to overflow an int
+        int numberIssues = Integer.MAX_VALUE - 1;
+        for (int count : new int[]{2, 3, 7, 64}) {
+            for (int index = 0; index < count; index++) {
+                int start = new Shard(index, count).getStart(numberIssues);
+                checkOwners(numberIssues, count, Math.max(start - 2, 0), Math.min(start + 2, numberIssues));
+            }
+            checkOwners(numberIssues, count, numberIssues - 2, numberIssues);
+        }
+    }
+
+    private static void checkOwners(int numberIssues, int count, int from, int to) {
+        for (int issue = from; issue < to; issue++) {
+            int owner = Shard.getOwner(numberIssues, issue, count);
+            String message = "issue " + issue + " of " + numberIssues + " with " + count + " shards, owned by " + owner;
+            assertTrue(message, owner >= 0 && owner < count);
+            Shard shard = new Shard(owner, count);
+            assertTrue(message, shard.getStart(numberIssues) <= issue);
+            assertTrue(message, issue < shard.getEnd(numberIssues));
+            assertTrue(message, shard.contains(numberIssues, issue));
+            if (owner > 0) {
+                assertFalse(message, new Shard(owner - 1, count).contains(numberIssues, issue));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIndexMustBeBelowCount() {
+        new Shard(2, 2);
+    }
+}